@@ -0,0 +1,83 @@
+/**
+ * Copyright 2014 Thomas Feng
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.tfeng.play.avro.benchmark;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.avro.specific.SpecificRecord;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+import me.tfeng.play.avro.AvroHelper;
+
+/**
+ * @author Thomas Feng (huining.feng@gmail.com)
+ */
+@BenchmarkMode(Mode.AverageTime)
+@Fork(1)
+@Measurement(iterations = 10)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+public class AvroHelperBenchmark {
+
+  @Benchmark
+  public String convertFromSimpleRecord(RecordState state) throws IOException {
+    return AvroHelper.convertFromSimpleRecord(state.schema, state.json);
+  }
+
+  @Benchmark
+  public String convertToSimpleRecord(RecordState state) throws IOException {
+    return AvroHelper.convertToSimpleRecord(state.schema, state.avroJson);
+  }
+
+  @Benchmark
+  public Object decodeRecord(RecordState state) throws IOException {
+    return AvroHelper.decodeRecord(state.recordClass, state.binary);
+  }
+
+  @Benchmark
+  @SuppressWarnings("unchecked")
+  public Object decodeRecordWithReuse(RecordState state) throws IOException {
+    return AvroHelper.decodeRecord((Class<SpecificRecord>) state.recordClass, state.binary,
+        state.reuse);
+  }
+
+  @Benchmark
+  public byte[] encodeRecord(RecordState state) throws IOException {
+    return AvroHelper.encodeRecord(state.record);
+  }
+
+  @Benchmark
+  public String toJson(RecordState state) throws IOException {
+    return AvroHelper.toJson(state.record);
+  }
+
+  @Benchmark
+  public Object toRecord(RecordState state) throws IOException {
+    return AvroHelper.toRecord(state.recordClass, state.json);
+  }
+}
@@ -0,0 +1,120 @@
+/**
+ * Copyright 2014 Thomas Feng
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.tfeng.play.avro.benchmark;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.avro.io.BinaryDecoder;
+import org.apache.avro.io.BinaryEncoder;
+import org.apache.avro.io.DatumReader;
+import org.apache.avro.io.DatumWriter;
+import org.apache.avro.io.DecoderFactory;
+import org.apache.avro.io.EncoderFactory;
+import org.apache.avro.specific.SpecificData;
+import org.apache.avro.specific.SpecificDatumReader;
+import org.apache.avro.specific.SpecificDatumWriter;
+import org.apache.avro.util.ByteBufferOutputStream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import me.tfeng.play.avro.codec.SpecializedDatumReader;
+import me.tfeng.play.avro.codec.SpecializedDatumWriter;
+
+/**
+ * @author Thomas Feng (huining.feng@gmail.com)
+ */
+@BenchmarkMode(Mode.AverageTime)
+@Fork(1)
+@Measurement(iterations = 10)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+public class CodecBenchmark {
+
+  @State(Scope.Thread)
+  public static class CodecState {
+
+    private BinaryDecoder decoder;
+
+    private BinaryEncoder encoder;
+
+    private DatumReader<Object> specializedReader;
+
+    private DatumWriter<Object> specializedWriter;
+
+    private DatumReader<Object> specificReader;
+
+    private DatumWriter<Object> specificWriter;
+
+    @Setup
+    public void setUp(RecordState state) {
+      SpecificData data = SpecificData.get();
+      specificReader = new SpecificDatumReader<>(state.schema, state.schema, data);
+      specificWriter = new SpecificDatumWriter<>(state.schema, data);
+      specializedReader = new SpecializedDatumReader<>(state.schema, data);
+      specializedWriter = new SpecializedDatumWriter<>(state.schema, data);
+    }
+  }
+
+  @Benchmark
+  public Object decodeSpecialized(RecordState state, CodecState codecState) throws IOException {
+    return decode(state, codecState, codecState.specializedReader);
+  }
+
+  @Benchmark
+  public Object decodeSpecific(RecordState state, CodecState codecState) throws IOException {
+    return decode(state, codecState, codecState.specificReader);
+  }
+
+  @Benchmark
+  public Object encodeSpecialized(RecordState state, CodecState codecState) throws IOException {
+    return encode(state, codecState, codecState.specializedWriter);
+  }
+
+  @Benchmark
+  public Object encodeSpecific(RecordState state, CodecState codecState) throws IOException {
+    return encode(state, codecState, codecState.specificWriter);
+  }
+
+  private Object decode(RecordState state, CodecState codecState, DatumReader<Object> reader)
+      throws IOException {
+    codecState.decoder =
+        DecoderFactory.get().binaryDecoder(state.binary, codecState.decoder);
+    return reader.read(null, codecState.decoder);
+  }
+
+  private Object encode(RecordState state, CodecState codecState, DatumWriter<Object> writer)
+      throws IOException {
+    ByteBufferOutputStream stream = new ByteBufferOutputStream();
+    codecState.encoder = EncoderFactory.get().binaryEncoder(stream, codecState.encoder);
+    writer.write(state.record, codecState.encoder);
+    codecState.encoder.flush();
+    return stream.getBufferList();
+  }
+}
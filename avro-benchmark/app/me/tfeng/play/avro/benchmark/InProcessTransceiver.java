@@ -0,0 +1,78 @@
+/**
+ * Copyright 2014 Thomas Feng
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.tfeng.play.avro.benchmark;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.List;
+
+import org.apache.avro.ipc.AsyncHttpTransceiver;
+import org.apache.avro.ipc.Transceiver;
+
+import me.tfeng.play.avro.AsyncResponder;
+import me.tfeng.play.avro.AsyncTransceiver;
+import me.tfeng.play.http.RequestPreparer;
+import play.libs.F.Promise;
+
+/**
+ * @author Thomas Feng (huining.feng@gmail.com)
+ */
+public class InProcessTransceiver extends Transceiver implements AsyncTransceiver {
+
+  private final AsyncResponder responder;
+
+  public InProcessTransceiver(AsyncResponder responder) {
+    this.responder = responder;
+  }
+
+  @Override
+  public String getRemoteName() throws IOException {
+    return "in-process";
+  }
+
+  @Override
+  public List<ByteBuffer> readBuffers() throws IOException {
+    throw new UnsupportedOperationException("In-process transceiver only transceives "
+        + "asynchronously; call transceive(List, RequestPreparer) instead");
+  }
+
+  @Override
+  public Promise<List<ByteBuffer>> transceive(List<ByteBuffer> request,
+      RequestPreparer postRequestPreparer) throws IOException {
+    // Frame both ways as the HTTP transport does, without going through the network.
+    List<ByteBuffer> buffers =
+        AsyncHttpTransceiver.readBuffers(AsyncHttpTransceiver.toByteArray(request));
+    try {
+      return responder.asyncRespond(buffers).map(response ->
+          AsyncHttpTransceiver.readBuffers(AsyncHttpTransceiver.toByteArray(response)));
+    } catch (IOException e) {
+      throw e;
+    } catch (Exception e) {
+      throw new IOException("Unable to respond in process", e);
+    }
+  }
+
+  @Override
+  public void writeBuffers(List<ByteBuffer> buffers) throws IOException {
+    throw new UnsupportedOperationException("In-process transceiver only transceives "
+        + "asynchronously; call transceive(List, RequestPreparer) instead");
+  }
+}
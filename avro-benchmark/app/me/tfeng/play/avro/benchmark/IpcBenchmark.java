@@ -0,0 +1,140 @@
+/**
+ * Copyright 2014 Thomas Feng
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.tfeng.play.avro.benchmark;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import org.apache.avro.Protocol;
+import org.apache.avro.Protocol.Message;
+import org.apache.avro.io.BinaryEncoder;
+import org.apache.avro.io.EncoderFactory;
+import org.apache.avro.ipc.HandshakeRequest;
+import org.apache.avro.ipc.IpcRequestor;
+import org.apache.avro.ipc.MD5;
+import org.apache.avro.specific.SpecificDatumWriter;
+import org.apache.avro.specific.SpecificRecord;
+import org.apache.avro.util.ByteBufferOutputStream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import me.tfeng.play.avro.AsyncResponder;
+import me.tfeng.play.plugins.AvroPlugin;
+import play.test.FakeApplication;
+import play.test.Helpers;
+
+/**
+ * @author Thomas Feng (huining.feng@gmail.com)
+ */
+@BenchmarkMode(Mode.AverageTime)
+@Fork(1)
+@Measurement(iterations = 10)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+public class IpcBenchmark {
+
+  @State(Scope.Benchmark)
+  public static class IpcState {
+
+    private FakeApplication application;
+
+    private Object[] args;
+
+    private String message;
+
+    private List<ByteBuffer> request;
+
+    private IpcRequestor requestor;
+
+    private AsyncResponder responder;
+
+    @Param({"small", "medium", "large"})
+    public String size;
+
+    public List<ByteBuffer> newRequest() {
+      // The responder consumes the buffers it reads from.
+      return request.stream().map(ByteBuffer::duplicate).collect(Collectors.toList());
+    }
+
+    @Setup
+    public void setUp() throws IOException {
+      application = Helpers.fakeApplication();
+      Helpers.start(application);
+
+      SpecificRecord record = RecordState.createRecord(size);
+      message = "echo" + Character.toUpperCase(size.charAt(0)) + size.substring(1);
+      args = new Object[] { record };
+      responder = AvroPlugin.getInstance().getResponder(BenchmarkProtocol.class.getName());
+      requestor = new IpcRequestor(BenchmarkProtocol.class, new InProcessTransceiver(responder));
+      request = encodeRequest(responder.getLocal(), message, record);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+      Helpers.stop(application);
+    }
+
+    private List<ByteBuffer> encodeRequest(Protocol protocol, String messageName,
+        SpecificRecord record) throws IOException {
+      ByteBufferOutputStream stream = new ByteBufferOutputStream();
+      BinaryEncoder encoder = EncoderFactory.get().binaryEncoder(stream, null);
+      MD5 hash = new MD5(protocol.getMD5());
+      new SpecificDatumWriter<>(HandshakeRequest.class).write(
+          new HandshakeRequest(hash, null, hash, null), encoder);
+      encoder.writeMapStart();
+      encoder.setItemCount(0);
+      encoder.writeMapEnd();
+      encoder.writeString(messageName);
+      Message message = protocol.getMessages().get(messageName);
+      new SpecificDatumWriter<>(message.getRequest().getFields().get(0).schema())
+          .write(record, encoder);
+      encoder.flush();
+      return Collections.unmodifiableList(stream.getBufferList());
+    }
+  }
+
+  private static final long TIMEOUT = 10000;
+
+  @Benchmark
+  public List<ByteBuffer> asyncRespond(IpcState state) throws Exception {
+    return state.responder.asyncRespond(state.newRequest()).get(TIMEOUT);
+  }
+
+  @Benchmark
+  public Object request(IpcState state) throws Exception {
+    return state.requestor.request(state.message, state.args).get(TIMEOUT);
+  }
+}
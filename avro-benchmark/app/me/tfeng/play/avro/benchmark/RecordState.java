@@ -0,0 +1,89 @@
+/**
+ * Copyright 2014 Thomas Feng
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.tfeng.play.avro.benchmark;
+
+import java.io.ByteArrayOutputStream;
+
+import org.apache.avro.Schema;
+import org.apache.avro.io.Encoder;
+import org.apache.avro.io.EncoderFactory;
+import org.apache.avro.specific.SpecificDatumWriter;
+import org.apache.avro.specific.SpecificRecord;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import me.tfeng.play.avro.AvroHelper;
+import me.tfeng.play.common.Constants;
+
+/**
+ * @author Thomas Feng (huining.feng@gmail.com)
+ */
+@State(Scope.Benchmark)
+public class RecordState {
+
+  public String avroJson;
+
+  public byte[] binary;
+
+  public String json;
+
+  public SpecificRecord record;
+
+  public Class<? extends SpecificRecord> recordClass;
+
+  public SpecificRecord reuse;
+
+  public Schema schema;
+
+  @Param({"small", "medium", "large"})
+  public String size;
+
+  @Setup
+  public void setUp() throws Exception {
+    record = createRecord(size);
+    recordClass = record.getClass();
+    reuse = recordClass.newInstance();
+    schema = record.getSchema();
+    binary = AvroHelper.encodeRecord(record);
+    json = AvroHelper.toJson(record);
+
+    ByteArrayOutputStream stream = new ByteArrayOutputStream();
+    Encoder encoder = EncoderFactory.get().jsonEncoder(schema, stream);
+    new SpecificDatumWriter<SpecificRecord>(schema).write(record, encoder);
+    encoder.flush();
+    avroJson = new String(stream.toByteArray(), Constants.UTF8);
+  }
+
+  public static SpecificRecord createRecord(String size) {
+    switch (size) {
+    case "small":
+      return Records.createSmall();
+    case "medium":
+      return Records.createMedium(1L);
+    case "large":
+      return Records.createLarge();
+    default:
+      throw new RuntimeException("Unknown record size " + size);
+    }
+  }
+}
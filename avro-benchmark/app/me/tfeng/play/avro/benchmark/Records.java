@@ -0,0 +1,78 @@
+/**
+ * Copyright 2014 Thomas Feng
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.tfeng.play.avro.benchmark;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * @author Thomas Feng (huining.feng@gmail.com)
+ */
+public class Records {
+
+  public static Large createLarge() {
+    List<Medium> items = new ArrayList<>();
+    for (int i = 0; i < 100; i++) {
+      items.add(createMedium(i));
+    }
+    Map<String, String> attributes = new HashMap<>();
+    for (int i = 0; i < 50; i++) {
+      attributes.put("attribute" + i, "value of attribute " + i);
+    }
+    byte[] payload = new byte[4096];
+    for (int i = 0; i < payload.length; i++) {
+      payload[i] = (byte) i;
+    }
+    return Large.newBuilder()
+        .setId(1L)
+        .setTitle("A large record with nested records, a map and a binary payload")
+        .setItems(items)
+        .setAttributes(attributes)
+        .setPayload(ByteBuffer.wrap(payload))
+        .build();
+  }
+
+  public static Medium createMedium(long id) {
+    List<Integer> values = new ArrayList<>();
+    for (int i = 0; i < 20; i++) {
+      values.add(i * i);
+    }
+    Map<String, Long> counters = new HashMap<>();
+    for (int i = 0; i < 10; i++) {
+      counters.put("counter" + i, id * i);
+    }
+    return Medium.newBuilder()
+        .setId(id)
+        .setName("medium" + id)
+        .setDescription(id % 2 == 0 ? "A medium record with an optional description" : null)
+        .setKind(Kind.MEDIUM)
+        .setValues(values)
+        .setCounters(counters)
+        .build();
+  }
+
+  public static Small createSmall() {
+    return Small.newBuilder().setId(1).setName("small").build();
+  }
+}
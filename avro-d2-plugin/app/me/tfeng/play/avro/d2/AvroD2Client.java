@@ -38,10 +38,14 @@ import org.apache.zookeeper.ZooKeeper;
 import com.google.common.collect.Lists;
 
 import me.tfeng.play.avro.AvroHelper;
+import me.tfeng.play.avro.RequestCoalescer;
 import me.tfeng.play.avro.RequestPreparerChain;
+import me.tfeng.play.avro.ResponseCache;
+import me.tfeng.play.avro.metrics.MetricsRegistry;
 import me.tfeng.play.common.Constants;
 import me.tfeng.play.http.RequestPreparer;
 import me.tfeng.play.plugins.AvroD2Plugin;
+import me.tfeng.play.plugins.AvroPlugin;
 import play.Logger;
 import play.Logger.ALogger;
 import play.libs.F.Promise;
@@ -66,14 +70,20 @@ public class AvroD2Client implements Watcher, InvocationHandler {
 
   private volatile boolean refreshed;
 
+  private RequestCoalescer requestCoalescer;
+
+  private ResponseCache responseCache;
+
   private final AvroD2ResponseProcessor responseProcessor = new AvroD2ResponseProcessor();
 
   private final List<URL> serverUrls = Lists.newArrayList();
 
+  private boolean sharedStateCreated;
+
   private boolean useGenericRecord;
 
   public AvroD2Client(Class<?> interfaceClass) {
-    this(interfaceClass, new SpecificData(interfaceClass.getClassLoader()));
+    this(interfaceClass, AvroHelper.getSpecificData(interfaceClass.getClassLoader()));
   }
 
   public AvroD2Client(Class<?> interfaceClass, SpecificData data) {
@@ -107,11 +117,25 @@ public class AvroD2Client implements Watcher, InvocationHandler {
     return protocol;
   }
 
+  public synchronized RequestCoalescer getRequestCoalescer() {
+    createSharedState();
+    return requestCoalescer;
+  }
+
+  public synchronized ResponseCache getResponseCache() {
+    createSharedState();
+    return responseCache;
+  }
+
   @Override
   public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
     return setupRequest().invoke(proxy, method, args);
   }
 
+  public IpcRequestor.Batch newBatch() throws Exception {
+    return setupRequest().newBatch();
+  }
+
   @Override
   public void process(WatchedEvent event) {
     refresh();
@@ -164,6 +188,11 @@ public class AvroD2Client implements Watcher, InvocationHandler {
     return setupRequest().request(message, request);
   }
 
+  public <T> Promise<IpcRequestor.ResponseIterator<T>> requestStreaming(String message,
+      Object[] args) throws Exception {
+    return setupRequest().requestStreaming(message, args);
+  }
+
   public synchronized void setUseGenericRecord(boolean useGenericRecord) {
     this.useGenericRecord = useGenericRecord;
   }
@@ -172,6 +201,15 @@ public class AvroD2Client implements Watcher, InvocationHandler {
     return useGenericRecord;
   }
 
+  private void createSharedState() {
+    // The cache and coalescer are shared by the requestors that are created for each call.
+    if (!sharedStateCreated) {
+      requestCoalescer = AvroPlugin.getInstance().createRequestCoalescer(protocol);
+      responseCache = AvroPlugin.getInstance().createResponseCache(protocol, data);
+      sharedStateCreated = true;
+    }
+  }
+
   private void scheduleRefresh() {
     AvroD2Plugin.getInstance().getScheduler().schedule(this::refresh,
         AvroD2Plugin.getInstance().getClientRefreshRetryDelay(), TimeUnit.MILLISECONDS);
@@ -189,10 +227,19 @@ public class AvroD2Client implements Watcher, InvocationHandler {
       isVersionRegistered = true;
     }
 
-    IpcRequestor requestor = new IpcRequestor(protocol, new AvroD2Transceiver(this), data);
+    AvroD2Transceiver transceiver = new AvroD2Transceiver(this);
+    transceiver.setCompressionThreshold(AvroPlugin.getInstance().getCompressionThreshold(
+        MetricsRegistry.getProtocolName(protocol)));
+    transceiver.setInlineFraming(AvroPlugin.getInstance().isInlineFraming());
+    transceiver.setMaxResponseSize(AvroPlugin.getInstance().getMaxResponseSize());
+    IpcRequestor requestor = new IpcRequestor(protocol, transceiver, data);
     requestor.setUseGenericRecord(useGenericRecord);
     requestor.addRequestPreparer(postRequestPreparerChain);
     requestor.setResponseProcessor(responseProcessor);
+    requestor.setRequestCoalescer(getRequestCoalescer());
+    requestor.setResponseCache(getResponseCache());
+    AvroPlugin.getInstance().addMetricsPlugin(requestor);
+    AvroPlugin.getInstance().addTracingPlugin(requestor);
     return requestor;
   }
 }
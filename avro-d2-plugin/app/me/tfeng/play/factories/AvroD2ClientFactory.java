@@ -25,6 +25,7 @@ import org.springframework.beans.factory.FactoryBean;
 
 import com.google.common.base.MoreObjects;
 
+import me.tfeng.play.avro.AvroHelper;
 import me.tfeng.play.plugins.AvroD2Plugin;
 
 /**
@@ -37,8 +38,8 @@ public class AvroD2ClientFactory implements FactoryBean<Object> {
 
   @Override
   public Object getObject() throws Exception {
-    return AvroD2Plugin.client(interfaceClass,
-        MoreObjects.firstNonNull(specificData, new SpecificData(interfaceClass.getClassLoader())));
+    return AvroD2Plugin.client(interfaceClass, MoreObjects.firstNonNull(specificData,
+        AvroHelper.getSpecificData(interfaceClass.getClassLoader())));
   }
 
   @Override
@@ -61,7 +61,7 @@ public class AvroD2Plugin extends AbstractPlugin implements Watcher {
   private static final ALogger LOG = Logger.of(AvroD2Plugin.class);
 
   public static <T> T client(Class<T> interfaceClass, RequestPreparer... postRequestPreparers) {
-    return client(interfaceClass, new SpecificData(interfaceClass.getClassLoader()),
+    return client(interfaceClass, AvroHelper.getSpecificData(interfaceClass.getClassLoader()),
         postRequestPreparers);
   }
 
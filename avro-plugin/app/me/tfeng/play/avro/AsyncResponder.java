@@ -21,9 +21,19 @@
 package me.tfeng.play.avro;
 
 import java.io.IOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
 import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
 
 import org.apache.avro.AvroRuntimeException;
 import org.apache.avro.Protocol;
@@ -31,7 +41,10 @@ import org.apache.avro.Protocol.Message;
 import org.apache.avro.Schema;
 import org.apache.avro.generic.GenericDatumReader;
 import org.apache.avro.generic.GenericDatumWriter;
+import org.apache.avro.generic.IndexedRecord;
 import org.apache.avro.io.BinaryEncoder;
+import org.apache.avro.io.DatumReader;
+import org.apache.avro.io.DatumWriter;
 import org.apache.avro.io.Decoder;
 import org.apache.avro.io.DecoderFactory;
 import org.apache.avro.io.Encoder;
@@ -44,17 +57,25 @@ import org.apache.avro.ipc.specific.SpecificResponder;
 import org.apache.avro.specific.SpecificData;
 import org.apache.avro.util.ByteBufferInputStream;
 import org.apache.avro.util.ByteBufferOutputStream;
+import org.apache.avro.util.Utf8;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContextHolder;
 
 import me.tfeng.play.plugins.AvroPlugin;
+import play.libs.F.Function0;
 import play.libs.F.Promise;
+import play.libs.HttpExecution;
+import scala.concurrent.ExecutionContext;
 
 /**
  * @author Thomas Feng (huining.feng@gmail.com)
  */
 public class AsyncResponder extends SpecificResponder {
 
+  private static final MethodHandle GET_FIELD;
+
+  private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+
   private static final Schema META = Schema.createMap(Schema.create(Schema.Type.BYTES));
 
   private static final GenericDatumReader<Map<String,ByteBuffer>> META_READER =
@@ -63,117 +84,400 @@ public class AsyncResponder extends SpecificResponder {
   private static final GenericDatumWriter<Map<String,ByteBuffer>> META_WRITER =
       new GenericDatumWriter<>(META);
 
+  private static final MethodType REQUEST_TYPE =
+      MethodType.methodType(Object.class, IndexedRecord.class);
+
+  static {
+    try {
+      GET_FIELD = LOOKUP.findVirtual(IndexedRecord.class, "get",
+          MethodType.methodType(Object.class, int.class));
+    } catch (NoSuchMethodException | IllegalAccessException e) {
+      throw new RuntimeException("Unable to find method to get fields from requests", e);
+    }
+  }
+
+  private volatile ConcurrencyLimiter concurrencyLimiter;
+
+  private volatile ExecutionContext executionContext;
+
+  private final Map<String, MethodHandle> handles;
+
   private final Object impl;
 
+  private final boolean isAvroClient;
+
+  private final Map<String, ExecutionContext> messageExecutionContexts =
+      new ConcurrentHashMap<>();
+
   public AsyncResponder(Class<?> iface, Object impl) {
     super(iface, impl);
     this.impl = impl;
+    isAvroClient = AvroHelper.isAvroClient(iface) || AvroHelper.isAvroClient(impl.getClass());
+    handles = createHandles();
   }
 
   public AsyncResponder(Class<?> iface, Object impl, SpecificData data) {
     super(iface, impl, data);
     this.impl = impl;
+    isAvroClient = AvroHelper.isAvroClient(iface) || AvroHelper.isAvroClient(impl.getClass());
+    handles = createHandles();
   }
 
   public AsyncResponder(Protocol protocol, Object impl) {
     super(protocol, impl);
     this.impl = impl;
+    isAvroClient = AvroHelper.isAvroClient(impl.getClass());
+    handles = createHandles();
   }
 
   public AsyncResponder(Protocol protocol, Object impl, SpecificData data) {
     super(protocol, impl, data);
     this.impl = impl;
+    isAvroClient = AvroHelper.isAvroClient(impl.getClass());
+    handles = createHandles();
   }
 
   public Promise<List<ByteBuffer>> asyncRespond(List<ByteBuffer> buffers) throws Exception {
+    return asyncRespond(buffers, null, 0, StreamingResponse::getBuffers);
+  }
+
+  public Promise<StreamingResponse> asyncRespond(List<ByteBuffer> buffers, int chunkSize)
+      throws Exception {
+    // Array results are streamed if chunkSize is positive.
+    return asyncRespond(buffers, null, chunkSize, Function.identity());
+  }
+
+  public Promise<List<ByteBuffer>> asyncRespond(List<ByteBuffer> buffers, Transceiver connection)
+      throws Exception {
+    // Stateful connections keep the remote protocol after their first handshakes.
+    return asyncRespond(buffers, connection, 0, StreamingResponse::getBuffers);
+  }
+
+  public ConcurrencyLimiter getConcurrencyLimiter() {
+    return concurrencyLimiter;
+  }
+
+  public ExecutionContext getExecutionContext(String message) {
+    ExecutionContext context = messageExecutionContexts.get(message);
+    if (context == null) {
+      context = executionContext;
+    }
+    if (context == null) {
+      return AvroPlugin.getInstance().getExecutionContext();
+    } else {
+      return HttpExecution.fromThread(context);
+    }
+  }
+
+  public List<RPCPlugin> getRPCPlugins() {
+    return Collections.unmodifiableList(rpcMetaPlugins);
+  }
+
+  public boolean isAvroClient() {
+    return isAvroClient;
+  }
+
+  @Override
+  public Object respond(Message message, Object request) throws Exception {
+    MethodHandle handle = handles.get(message.getName());
+    if (handle == null || !(request instanceof IndexedRecord)) {
+      return super.respond(message, request);
+    }
+    try {
+      return (Object) handle.invokeExact((IndexedRecord) request);
+    } catch (Exception e) {
+      throw e;
+    } catch (Throwable t) {
+      throw new Exception(t);
+    }
+  }
+
+  public void setConcurrencyLimiter(ConcurrencyLimiter concurrencyLimiter) {
+    this.concurrencyLimiter = concurrencyLimiter;
+  }
+
+  public void setExecutionContext(ExecutionContext executionContext) {
+    this.executionContext = executionContext;
+  }
+
+  public void setExecutionContext(String message, ExecutionContext executionContext) {
+    if (executionContext == null) {
+      messageExecutionContexts.remove(message);
+    } else {
+      messageExecutionContexts.put(message, executionContext);
+    }
+  }
+
+  List<ByteBuffer> getSystemErrorBuffers(Exception error) throws Exception {
+    // Responses on connections with completed handshakes carry no handshakes.
+    return processSystemError(new CallContext(), Collections.emptyList(), error, false)
+        .getBuffers();
+  }
+
+  @Override
+  protected DatumReader<Object> getDatumReader(Schema actual, Schema expected) {
+    return AvroPlugin.getInstance().getDatumCache().getDatumReader(actual, expected,
+        getSpecificData());
+  }
+
+  @Override
+  protected DatumWriter<Object> getDatumWriter(Schema schema) {
+    return AvroPlugin.getInstance().getDatumCache().getDatumWriter(schema, getSpecificData());
+  }
+
+  protected Protocol handshake(Decoder in, Encoder out, Transceiver connection) throws IOException {
+    return AvroPlugin.getInstance().getProtocolVersionResolver().resolve(this, in, out, connection);
+  }
+
+  private <T> Promise<T> asyncRespond(List<ByteBuffer> buffers, Transceiver connection,
+      int chunkSize, Function<StreamingResponse, T> converter) throws Exception {
     Decoder in = DecoderFactory.get().binaryDecoder(new ByteBufferInputStream(buffers), null);
     ByteBufferOutputStream bbo = new ByteBufferOutputStream();
     BinaryEncoder out = EncoderFactory.get().binaryEncoder(bbo, null);
-    RPCContext context = new RPCContext();
-    List<ByteBuffer> payload = null;
+    CallContext context = new CallContext();
     List<ByteBuffer> handshake = null;
-    Protocol remote = handshake(in, out, null);
+    Protocol remote = handshake(in, out, connection);
     out.flush();
     if (remote == null) {
       // handshake failed
-      return Promise.pure(bbo.getBufferList());
+      return Promise.pure(converter.apply(new StreamingResponse(bbo.getBufferList())));
     }
     handshake = bbo.getBufferList();
 
-    // read request using remote protocol specification
-    RPCContextHelper.setResponseCallMeta(context, META_READER.read(null, in));
-    String messageName = in.readString(null).toString();
-    if (messageName.equals("")) {
-      // a handshake ping
-      return Promise.pure(handshake);
-    }
-    Message rm = remote.getMessages().get(messageName);
-    if (rm == null) {
-      throw new AvroRuntimeException("No such remote message: " + messageName);
+    Message m;
+    Object request;
+    try {
+      // read request using remote protocol specification
+      RPCContextHelper.setResponseCallMeta(context, META_READER.read(null, in));
+      String messageName = in.readString(null).toString();
+      if (messageName.equals("")) {
+        // a handshake ping
+        return Promise.pure(converter.apply(new StreamingResponse(handshake)));
+      }
+      Message rm = remote.getMessages().get(messageName);
+      if (rm == null) {
+        throw new AvroRuntimeException("No such remote message: " + messageName);
+      }
+      m = getLocal().getMessages().get(messageName);
+      if (m == null) {
+        throw new AvroRuntimeException("No message named " + messageName + " in " + getLocal());
+      }
+
+      request = readRequest(rm.getRequest(), m.getRequest(), in);
+
+      context.setMessage(rm);
+      context.setRequestPayload(buffers);
+      for (RPCPlugin plugin : rpcMetaPlugins) {
+        plugin.serverReceiveRequest(context);
+      }
+    } catch (Exception e) {
+      if (connection == null) {
+        throw e;
+      }
+      return Promise.pure(converter.apply(processSystemError(context, handshake, e, false)));
     }
-    Message m = getLocal().getMessages().get(messageName);
-    if (m == null) {
-      throw new AvroRuntimeException("No message named " + messageName + " in " + getLocal());
+
+    Promise<T> promise;
+    try {
+      promise = processRequest(bbo, out, context, m, request, handshake, chunkSize, converter);
+    } catch (Exception e) {
+      promise = Promise.throwing(e);
     }
+    List<ByteBuffer> finalHandshake = handshake;
+    return promise.recover(t -> {
+      // Plugins are told about calls that fail without responses, so that they see every call end.
+      Exception error = t instanceof Exception ? (Exception) t : new AvroRuntimeException(t);
+      RPCContextHelper.setError(context, error);
+      if (connection == null) {
+        for (RPCPlugin plugin : rpcMetaPlugins) {
+          plugin.serverSendResponse(context);
+        }
+        throw t;
+      }
+      // Connections have no status codes to report failures, so system errors are sent instead.
+      return converter.apply(processSystemError(context, finalHandshake, error, true));
+    });
+  }
 
-    Object request = readRequest(rm.getRequest(), m.getRequest(), in);
+  private MethodHandle createHandle(Message message) {
+    // The handle takes the request record and passes its fields to the method in place.
+    List<Schema.Field> fields = message.getRequest().getFields();
+    Class<?>[] parameterTypes = new Class<?>[fields.size()];
+    MethodHandle[] getters = new MethodHandle[fields.size()];
+    for (Schema.Field field : fields) {
+      parameterTypes[field.pos()] = getSpecificData().getClass(field.schema());
+      getters[field.pos()] = MethodHandles.insertArguments(GET_FIELD, 1, field.pos());
+    }
+    try {
+      Method method = impl.getClass().getMethod(message.getName(), parameterTypes);
+      method.setAccessible(true);
+      MethodHandle handle = LOOKUP.unreflect(method).bindTo(impl)
+          .asType(MethodType.genericMethodType(fields.size()));
+      handle = MethodHandles.filterArguments(handle, 0, getters);
+      return MethodHandles.permuteArguments(handle, REQUEST_TYPE, new int[fields.size()]);
+    } catch (NoSuchMethodException | IllegalAccessException | SecurityException e) {
+      // Fall back to reflection, which reports the error when the message is called.
+      return null;
+    }
+  }
 
-    context.setMessage(rm);
-    for (RPCPlugin plugin : rpcMetaPlugins) {
-      plugin.serverReceiveRequest(context);
+  private Map<String, MethodHandle> createHandles() {
+    Map<String, MethodHandle> handles = new HashMap<>();
+    for (Message message : getLocal().getMessages().values()) {
+      MethodHandle handle = createHandle(message);
+      if (handle != null) {
+        handles.put(message.getName(), handle);
+      }
     }
+    return handles;
+  }
 
-    List<ByteBuffer> handshakeFinal = handshake;
-    if (AvroHelper.isAvroClient(impl.getClass())) {
-      Promise<?> promise = (Promise<?>) respond(m, request);
+  private <T> Promise<T> dispatch(ByteBufferOutputStream bbo, BinaryEncoder out,
+      CallContext context, Message m, Object request, List<ByteBuffer> handshake,
+      RequestPriority priority, int chunkSize, Function<StreamingResponse, T> converter)
+      throws Exception {
+    String messageName = m.getName();
+    if (isAvroClient) {
+      if (isExpired(context.getDeadline())) {
+        return reject(bbo, out, context, m, handshake, chunkSize, converter,
+            new DeadlineExceededException("Deadline of " + messageName
+                + " expired before dispatch"));
+      }
+      // Calls made by impl inherit from the context, which is current while impl is invoked.
+      Promise<?> promise = context.call(() -> (Promise<?>) respond(m, request));
       return promise.map(result -> {
           RPCContextHelper.setResponse(context, result);
-          processResult(bbo, out, context, m, payload, handshakeFinal, result, null);
-          return bbo.getBufferList();
+          return converter.apply(context.call(() -> processResult(bbo, out, context, m, null,
+              handshake, result, null, chunkSize)));
       }).recover(e -> {
         if (e instanceof Exception) {
           RPCContextHelper.setError(context, (Exception) e);
-          processResult(bbo, out, context, m, payload, handshakeFinal, null, (Exception) e);
-          return bbo.getBufferList();
+          return converter.apply(context.call(() -> processResult(bbo, out, context, m, null,
+              handshake, null, (Exception) e, chunkSize)));
         } else {
           throw e;
         }
       });
     } else {
       Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
-      return Promise.promise(() -> {
+      Function0<T> task = () -> context.call(() -> {
         Authentication currentAuthentication =
             SecurityContextHolder.getContext().getAuthentication();
         SecurityContextHolder.getContext().setAuthentication(authentication);
+        StreamingResponse response;
         try {
+          // Requests may wait in the executor queue long after their callers have given up.
+          if (isExpired(context.getDeadline())) {
+            throw new DeadlineExceededException("Deadline of " + messageName
+                + " expired before dispatch");
+          }
           Object result = respond(m, request);
           RPCContextHelper.setResponse(context, result);
-          processResult(bbo, out, context, m, payload, handshakeFinal, result, null);
+          response = processResult(bbo, out, context, m, null, handshake, result, null,
+              chunkSize);
         } catch (Exception e) {
           RPCContextHelper.setError(context, e);
-          processResult(bbo, out, context, m, payload, handshakeFinal, null, e);
+          response = processResult(bbo, out, context, m, null, handshake, null, e,
+              chunkSize);
         } finally {
           SecurityContextHolder.getContext().setAuthentication(currentAuthentication);
         }
-        return bbo.getBufferList();
-      }, AvroPlugin.getInstance().getExecutionContext());
+        return converter.apply(response);
+      });
+      Promise<T> promise;
+      try {
+        promise = PriorityExecutor.withPriority(priority,
+            () -> Promise.promise(task, getExecutionContext(messageName)));
+      } catch (RejectedExecutionException e) {
+        return reject(bbo, out, context, m, handshake, chunkSize, converter,
+            new RequestRejectedException("Unable to dispatch " + messageName
+                + "; executor is saturated", e));
+      }
+      return promise;
     }
   }
 
-  protected Protocol handshake(Decoder in, Encoder out, Transceiver connection) throws IOException {
-    return AvroPlugin.getInstance().getProtocolVersionResolver().resolve(this, in, out, connection);
+  private boolean isExpired(Long deadline) {
+    return deadline != null && deadline - System.nanoTime() <= 0;
+  }
+
+  private <T> Promise<T> processRequest(ByteBufferOutputStream bbo, BinaryEncoder out,
+      CallContext context, Message m, Object request, List<ByteBuffer> handshake, int chunkSize,
+      Function<StreamingResponse, T> converter) throws Exception {
+    String messageName = m.getName();
+
+    // The caller's remaining time becomes the deadline of downstream calls made by impl.
+    Long timeout = DeadlineHelper.readTimeout(context.requestCallMeta());
+    if (timeout != null) {
+      context.setDeadline(System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout));
+    }
+
+    // A priority hinted by the caller overrides the one declared in the protocol.
+    RequestPriority priority = PriorityHelper.readPriority(context.requestCallMeta());
+    if (priority == null) {
+      priority = PriorityHelper.getPriority(getLocal(), m);
+    }
+    context.setPriority(priority);
+
+    ConcurrencyLimiter limiter = concurrencyLimiter;
+    if (limiter != null && !limiter.tryAcquire()) {
+      // Excess requests are shed immediately instead of waiting until their callers time out.
+      return reject(bbo, out, context, m, handshake, chunkSize, converter,
+          new LimitExceededException("Unable to dispatch " + messageName
+              + "; concurrency limit of " + limiter.getLimit() + " is reached"));
+    }
+
+    if (limiter == null) {
+      return dispatch(bbo, out, context, m, request, handshake,
+          priority == null ? RequestPriority.NORMAL : priority, chunkSize, converter);
+    }
+
+    // A streamed response holds its permit until the stream of its elements is closed. Only
+    // successful calls are sampled for the adaptive limit; rejections and errors are not.
+    long startTime = System.nanoTime();
+    Function<StreamingResponse, T> releasingConverter = response -> {
+      response.onClose(() -> {
+        if (context.isError()) {
+          limiter.release();
+        } else {
+          limiter.release(System.nanoTime() - startTime);
+        }
+      });
+      return converter.apply(response);
+    };
+    Promise<T> promise;
+    try {
+      promise = dispatch(bbo, out, context, m, request, handshake,
+          priority == null ? RequestPriority.NORMAL : priority, chunkSize, releasingConverter);
+    } catch (Exception e) {
+      limiter.release();
+      throw e;
+    }
+    promise.onFailure(t -> limiter.release());
+    return promise;
   }
 
-  private void processResult(ByteBufferOutputStream bbo, BinaryEncoder out, RPCContext context,
-      Message m, List<ByteBuffer> payload, List<ByteBuffer> handshake, Object response,
-      Exception error) throws Exception {
+  private StreamingResponse processResult(ByteBufferOutputStream bbo, BinaryEncoder out,
+      RPCContext context, Message m, List<ByteBuffer> payload, List<ByteBuffer> handshake,
+      Object response, Exception error, int chunkSize) throws Exception {
     out.writeBoolean(error != null);
+    Schema schema = m.getResponse();
+    // Streamed elements are encoded as the response body is read, so plugins only see the header.
+    boolean streamed = error == null && chunkSize > 0 && schema.getType() == Schema.Type.ARRAY
+        && response instanceof Iterable;
     if (error == null) {
-      writeResponse(m.getResponse(), response, out);
+      if (!streamed) {
+        writeResponse(schema, response, out);
+      }
     } else {
       try {
-        writeError(m.getErrors(), error, out);
+        if (error instanceof RequestRejectedException) {
+          writeError(Protocol.SYSTEM_ERRORS, new Utf8(error.toString()), out);
+        } else {
+          writeError(m.getErrors(), error, out);
+        }
       } catch (AvroRuntimeException e) {
+        // Undeclared errors fail the call.
         throw error;
       }
     }
@@ -190,5 +494,41 @@ public class AsyncResponder extends SpecificResponder {
     // Prepend handshake and append payload
     bbo.prepend(handshake);
     bbo.append(payload);
+    if (streamed) {
+      return new StreamingResponse(bbo.getBufferList(), getDatumWriter(schema.getElementType()),
+          ((Iterable<?>) response).iterator(), chunkSize);
+    } else {
+      return new StreamingResponse(bbo.getBufferList());
+    }
+  }
+
+  private StreamingResponse processSystemError(RPCContext context, List<ByteBuffer> handshake,
+      Exception error, boolean notifyPlugins) throws Exception {
+    ByteBufferOutputStream bbo = new ByteBufferOutputStream();
+    BinaryEncoder out = EncoderFactory.get().binaryEncoder(bbo, null);
+    out.writeBoolean(true);
+    writeError(Protocol.SYSTEM_ERRORS, new Utf8(error.toString()), out);
+    out.flush();
+    List<ByteBuffer> payload = bbo.getBufferList();
+
+    RPCContextHelper.setResponsePayload(context, payload);
+    if (notifyPlugins) {
+      for (RPCPlugin plugin : rpcMetaPlugins) {
+        plugin.serverSendResponse(context);
+      }
+    }
+    META_WRITER.write(context.responseCallMeta(), out);
+    out.flush();
+    bbo.prepend(handshake);
+    bbo.append(payload);
+    return new StreamingResponse(bbo.getBufferList());
+  }
+
+  private <T> Promise<T> reject(ByteBufferOutputStream bbo, BinaryEncoder out,
+      RPCContext context, Message m, List<ByteBuffer> handshake, int chunkSize,
+      Function<StreamingResponse, T> converter, RequestRejectedException error) throws Exception {
+    RPCContextHelper.setError(context, error);
+    return Promise.pure(converter.apply(processResult(bbo, out, context, m, null, handshake, null,
+        error, chunkSize)));
   }
 }
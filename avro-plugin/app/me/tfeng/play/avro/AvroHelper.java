@@ -23,14 +23,18 @@ package me.tfeng.play.avro;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.security.NoSuchAlgorithmException;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map.Entry;
 
+import org.apache.avro.AvroRuntimeException;
 import org.apache.avro.Protocol;
 import org.apache.avro.Schema;
 import org.apache.avro.Schema.Field;
 import org.apache.avro.Schema.Type;
+import org.apache.avro.SchemaNormalization;
+import org.apache.avro.generic.GenericData;
 import org.apache.avro.generic.GenericDatumReader;
 import org.apache.avro.generic.IndexedRecord;
 import org.apache.avro.io.BinaryDecoder;
@@ -38,21 +42,21 @@ import org.apache.avro.io.BinaryEncoder;
 import org.apache.avro.io.DecoderFactory;
 import org.apache.avro.io.EncoderFactory;
 import org.apache.avro.io.JsonDecoder;
-import org.apache.avro.io.JsonEncoder;
 import org.apache.avro.specific.SpecificData;
 import org.apache.avro.specific.SpecificDatumReader;
 import org.apache.avro.specific.SpecificDatumWriter;
+import org.apache.avro.specific.SpecificRecord;
 import org.apache.commons.lang3.ArrayUtils;
-import org.codehaus.jackson.JsonEncoding;
-import org.codehaus.jackson.JsonFactory;
-import org.codehaus.jackson.JsonGenerator;
 
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.node.ArrayNode;
 import com.fasterxml.jackson.databind.node.JsonNodeFactory;
 import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 
 import me.tfeng.play.common.Constants;
+import me.tfeng.play.plugins.AvroPlugin;
 import play.libs.Json;
 
 /**
@@ -60,6 +64,55 @@ import play.libs.Json;
  */
 public class AvroHelper {
 
+  private static final ThreadLocal<BinaryDecoder> BINARY_DECODER = new ThreadLocal<>();
+
+  private static final ThreadLocal<BinaryEncoder> BINARY_ENCODER = new ThreadLocal<>();
+
+  private static final ThreadLocal<ByteArrayOutputStream> ENCODING_STREAM =
+      ThreadLocal.withInitial(() -> new ByteArrayOutputStream(1024));
+
+  // Streams that grew beyond this size are not kept for the next record.
+  private static final int MAX_REUSED_STREAM_SIZE = 1024 * 1024;
+
+  // Keys are held weakly so that classes from a discarded dev-mode class loader can be collected;
+  // clearCaches() drops everything when the application stops.
+  private static final Cache<Class<?>, Protocol> PROTOCOLS =
+      CacheBuilder.newBuilder().weakKeys().build();
+
+  private static final Cache<Class<?>, byte[]> SCHEMA_MD5S =
+      CacheBuilder.newBuilder().weakKeys().build();
+
+  private static final Cache<Class<?>, Schema> SCHEMAS =
+      CacheBuilder.newBuilder().weakKeys().build();
+
+  // A SpecificData references its class loader, so values are held weakly as well; otherwise the
+  // weak keys would never be cleared. A data instance is recreated once all its users are gone.
+  private static final Cache<ClassLoader, SpecificData> SPECIFIC_DATA =
+      CacheBuilder.newBuilder().weakKeys().weakValues().build();
+
+  private static final ClassValue<SpecificDatumReader<?>> SPECIFIC_READERS =
+      new ClassValue<SpecificDatumReader<?>>() {
+        @Override
+        protected SpecificDatumReader<?> computeValue(Class<?> type) {
+          return new SpecificDatumReader<>(type);
+        }
+      };
+
+  private static final ClassValue<SpecificDatumWriter<IndexedRecord>> SPECIFIC_WRITERS =
+      new ClassValue<SpecificDatumWriter<IndexedRecord>>() {
+        @Override
+        protected SpecificDatumWriter<IndexedRecord> computeValue(Class<?> type) {
+          return new SpecificDatumWriter<>(getSchema(type));
+        }
+      };
+
+  public static void clearCaches() {
+    PROTOCOLS.invalidateAll();
+    SCHEMA_MD5S.invalidateAll();
+    SCHEMAS.invalidateAll();
+    SPECIFIC_DATA.invalidateAll();
+  }
+
   public static JsonNode convertFromSimpleRecord(Schema schema, JsonNode json) throws IOException {
     return convertFromSimpleRecord(schema, json, new JsonNodeFactory(false));
   }
@@ -100,32 +153,84 @@ public class AvroHelper {
   }
 
   public static <T> T decodeRecord(Class<T> recordClass, byte[] data) throws IOException {
-    DecoderFactory decoderFactory = DecoderFactory.get();
-    BinaryDecoder binaryDecoder = decoderFactory.binaryDecoder(data, null);
-    SpecificDatumReader<T> datumReader = new SpecificDatumReader<>(getSchema(recordClass));
-    return datumReader.read(null, binaryDecoder);
+    return decodeRecord(recordClass, data, null);
   }
 
-  public static byte[] encodeRecord(IndexedRecord record) throws IOException {
+  @SuppressWarnings("unchecked")
+  public static <T> T decodeRecord(Class<T> recordClass, byte[] data, T reuse)
+      throws IOException {
+    BinaryDecoder binaryDecoder =
+        DecoderFactory.get().binaryDecoder(data, BINARY_DECODER.get());
+    BINARY_DECODER.set(binaryDecoder);
+    return ((SpecificDatumReader<T>) SPECIFIC_READERS.get(recordClass)).read(reuse, binaryDecoder);
+  }
+
+  public static byte[] encodeArguments(Schema requestSchema, Object[] args, GenericData data)
+      throws IOException {
     ByteArrayOutputStream stream = new ByteArrayOutputStream();
-    try {
-      EncoderFactory encoderFactory = EncoderFactory.get();
-      BinaryEncoder binaryEncoder = encoderFactory.binaryEncoder(stream, null);
-      SpecificDatumWriter<IndexedRecord> datumWriter = new SpecificDatumWriter<>(record.getSchema());
-      datumWriter.write(record, binaryEncoder);
-      binaryEncoder.flush();
-    } finally {
-      stream.close();
+    BinaryEncoder encoder = EncoderFactory.get().directBinaryEncoder(stream, null);
+    DatumCache datumCache = AvroPlugin.getInstance().getDatumCache();
+    int i = 0;
+    for (Field field : requestSchema.getFields()) {
+      datumCache.getDatumWriter(field.schema(), data).write(args[i++], encoder);
     }
     return stream.toByteArray();
   }
 
+  public static byte[] encodeRecord(IndexedRecord record) throws IOException {
+    ByteArrayOutputStream stream = ENCODING_STREAM.get();
+    stream.reset();
+    BinaryEncoder binaryEncoder = EncoderFactory.get().binaryEncoder(stream, BINARY_ENCODER.get());
+    BINARY_ENCODER.set(binaryEncoder);
+    SpecificDatumWriter<IndexedRecord> datumWriter;
+    if (record instanceof SpecificRecord) {
+      datumWriter = SPECIFIC_WRITERS.get(record.getClass());
+    } else {
+      datumWriter = new SpecificDatumWriter<>(record.getSchema());
+    }
+    datumWriter.write(record, binaryEncoder);
+    binaryEncoder.flush();
+    byte[] bytes = stream.toByteArray();
+    if (bytes.length > MAX_REUSED_STREAM_SIZE) {
+      ENCODING_STREAM.remove();
+    }
+    return bytes;
+  }
+
   public static Protocol getProtocol(Class<?> interfaceClass) {
-    return new SpecificData(interfaceClass.getClassLoader()).getProtocol(interfaceClass);
+    Protocol protocol = PROTOCOLS.getIfPresent(interfaceClass);
+    if (protocol == null) {
+      protocol = getSpecificData(interfaceClass.getClassLoader()).getProtocol(interfaceClass);
+      PROTOCOLS.put(interfaceClass, protocol);
+    }
+    return protocol;
+  }
+
+  public static byte[] getProtocolMD5(Class<?> interfaceClass) {
+    // Protocol computes its MD5 once and keeps it.
+    return getProtocol(interfaceClass).getMD5();
   }
 
   public static Schema getSchema(Class<?> schemaClass) {
-    return new SpecificData(schemaClass.getClassLoader()).getSchema(schemaClass);
+    Schema schema = SCHEMAS.getIfPresent(schemaClass);
+    if (schema == null) {
+      schema = getSpecificData(schemaClass.getClassLoader()).getSchema(schemaClass);
+      SCHEMAS.put(schemaClass, schema);
+    }
+    return schema;
+  }
+
+  public static byte[] getSchemaMD5(Class<?> schemaClass) {
+    byte[] md5 = SCHEMA_MD5S.getIfPresent(schemaClass);
+    if (md5 == null) {
+      try {
+        md5 = SchemaNormalization.parsingFingerprint("MD5", getSchema(schemaClass));
+      } catch (NoSuchAlgorithmException e) {
+        throw new AvroRuntimeException("Unable to compute MD5 of schema for " + schemaClass, e);
+      }
+      SCHEMA_MD5S.put(schemaClass, md5);
+    }
+    return md5;
   }
 
   public static Schema getSimpleUnionType(Schema union) throws IOException {
@@ -143,6 +248,18 @@ public class AvroHelper {
     return null;
   }
 
+  public static SpecificData getSpecificData(ClassLoader classLoader) {
+    if (classLoader == null) {
+      return SpecificData.get();
+    }
+    SpecificData data = SPECIFIC_DATA.getIfPresent(classLoader);
+    if (data == null) {
+      data = new SpecificData(classLoader);
+      SPECIFIC_DATA.put(classLoader, data);
+    }
+    return data;
+  }
+
   public static boolean isAvroClient(Class<?> clientClass) {
     return clientClass.getAnnotation(AvroClient.class) != null;
   }
@@ -162,29 +279,17 @@ public class AvroHelper {
   }
 
   public static String toJson(Schema schema, Object object) throws IOException {
-    ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
-    JsonGenerator generator =
-        new JsonFactory().createJsonGenerator(outputStream, JsonEncoding.UTF8);
-    generator.useDefaultPrettyPrinter();
-    SpecificDatumWriter<Object> writer = new SpecificDatumWriter<>(schema);
-    JsonEncoder encoder = EncoderFactory.get().jsonEncoder(schema, generator);
-    writer.write(object, encoder);
-    encoder.flush();
-    String json = outputStream.toString();
-    return AvroHelper.convertToSimpleRecord(schema, json);
+    return new SimpleJsonWriter<>(schema, SpecificData.get()).toJson(object);
   }
 
   public static <T> T toRecord(Class<T> recordClass, String json) throws IOException {
     Schema schema = getSchema(recordClass);
-    json = convertFromSimpleRecord(schema, json);
-    SpecificDatumReader<T> reader = new SpecificDatumReader<>(recordClass);
-    return reader.read(null, DecoderFactory.get().jsonDecoder(schema, json));
+    SpecificData data = getSpecificData(recordClass.getClassLoader());
+    return new SimpleJsonReader<T>(schema, data).read(json.getBytes(Constants.UTF8));
   }
 
   public static <T> T toRecord(Schema schema, String json) throws IOException {
-    json = convertFromSimpleRecord(schema, json);
-    SpecificDatumReader<T> reader = new SpecificDatumReader<>(schema);
-    return reader.read(null, DecoderFactory.get().jsonDecoder(schema, json));
+    return new SimpleJsonReader<T>(schema, SpecificData.get()).read(json.getBytes(Constants.UTF8));
   }
 
   private static JsonNode convertFromSimpleRecord(Schema schema, JsonNode json,
@@ -275,7 +380,7 @@ public class AvroHelper {
       while (entries.hasNext()) {
         Entry<String, JsonNode> entry = entries.next();
         JsonNode value = convertToSimpleRecord(valueType, entry.getValue(), factory);
-        if (value.isNull()) {
+        if (!value.isNull()) {
           newNode.put(entry.getKey(), value);
         }
       }
@@ -20,19 +20,27 @@
 
 package me.tfeng.play.avro;
 
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
 import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
+import org.apache.avro.AvroRuntimeException;
 import org.apache.avro.ipc.AsyncHttpTransceiver;
 import org.apache.http.entity.ContentType;
 
 import me.tfeng.play.plugins.AvroPlugin;
-import play.Play;
+import play.Logger;
+import play.Logger.ALogger;
 import play.libs.F.Promise;
 import play.mvc.BodyParser;
 import play.mvc.Controller;
+import play.mvc.Http;
 import play.mvc.Result;
 import play.mvc.Results;
 
@@ -41,33 +49,140 @@ import play.mvc.Results;
  */
 public class BinaryIpcController extends Controller {
 
+  public static final String BATCH_CONTENT_TYPE = AsyncHttpTransceiver.BATCH_CONTENT_TYPE;
+
   public static final String CONTENT_TYPE = "avro/binary";
 
-  @BodyParser.Of(BodyParser.Raw.class)
+  private static final ALogger LOG = Logger.of(BinaryIpcController.class);
+
+  // Without an explicit maxLength, the raw parser stops at the 100KB limit of text bodies. Request
+  // sizes are limited by avro-plugin.max-request-size instead.
+  @BodyParser.Of(value = BodyParser.Raw.class, maxLength = Integer.MAX_VALUE)
   public static Promise<Result> post(String protocol) throws Throwable {
     String contentTypeHeader = request().getHeader("content-type");
     ContentType contentType = ContentType.parse(contentTypeHeader);
-    if (!CONTENT_TYPE.equals(contentType.getMimeType())) {
+    String mimeType = contentType.getMimeType();
+    if (!CONTENT_TYPE.equals(mimeType) && !BATCH_CONTENT_TYPE.equals(mimeType)) {
       throw new RuntimeException("Unable to handle content-type " + contentType + "; "
-          + CONTENT_TYPE + " is expected");
+          + CONTENT_TYPE + " or " + BATCH_CONTENT_TYPE + " is expected");
+    }
+
+    AsyncResponder responder = AvroPlugin.getInstance().getResponder(protocol);
+    String requestEncoding = request().getHeader(PayloadCompression.CONTENT_ENCODING_HEADER);
+    long maxRequestSize = AvroPlugin.getInstance().getMaxRequestSize(protocol);
+    List<ByteBuffer> buffers;
+    try {
+      buffers = readBuffers(request().body().asRaw(), requestEncoding, maxRequestSize);
+    } catch (PayloadTooLargeException e) {
+      LOG.warn("Request to " + protocol + " is too large; returning request entity too large", e);
+      return Promise.pure(Results.status(REQUEST_ENTITY_TOO_LARGE));
+    }
+
+    Http.Response httpResponse = response();
+    httpResponse.setHeader(PayloadCompression.ACCEPT_ENCODING_HEADER,
+        PayloadCompression.getAcceptEncoding());
+    String acceptEncoding = request().getHeader(PayloadCompression.ACCEPT_ENCODING_HEADER);
+    int threshold = AvroPlugin.getInstance().getCompressionThreshold(protocol);
+    int chunkSize = AvroPlugin.getInstance().getStreamingChunkSize();
+
+    if (BATCH_CONTENT_TYPE.equals(mimeType)) {
+      boolean sharedHandshake = AsyncHttpTransceiver.SHARED_HANDSHAKE.equals(
+          request().getHeader(AsyncHttpTransceiver.BATCH_HANDSHAKE_HEADER));
+      return respondBatch(responder, buffers, request().remoteAddress(), sharedHandshake)
+          .map(result -> createResult(httpResponse, result, acceptEncoding, threshold, chunkSize));
+    } else if (request().getHeader(StreamingResponse.ACCEPT_STREAMING_HEADER) != null) {
+      return responder.asyncRespond(buffers, chunkSize).map(response -> {
+        if (response.isStreamed()) {
+          return Results.ok(response.openStream(), chunkSize);
+        } else {
+          return createResult(httpResponse, response.getBuffers(), acceptEncoding, threshold,
+              chunkSize);
+        }
+      });
+    } else {
+      return responder.asyncRespond(buffers).map(result ->
+          createResult(httpResponse, result, acceptEncoding, threshold, chunkSize));
+    }
+  }
+
+  private static Result createResult(Http.Response httpResponse, List<ByteBuffer> buffers,
+      String acceptEncoding, int threshold, int chunkSize) throws IOException {
+    int length = AsyncHttpTransceiver.getFramedLength(buffers);
+    String encoding = null;
+    if (threshold >= 0 && length >= threshold) {
+      encoding = PayloadCompression.selectEncoding(acceptEncoding);
+    }
+    if (encoding != null) {
+      byte[] body =
+          PayloadCompression.compress(encoding, AsyncHttpTransceiver.toByteArray(buffers));
+      httpResponse.setHeader(PayloadCompression.CONTENT_ENCODING_HEADER, encoding);
+      return Results.ok(body);
+    } else if (length > chunkSize) {
+      // Large responses are sent in chunks read from their buffers, so they are never copied into a
+      // single array. Smaller ones are sent in one piece with a content length.
+      return Results.ok(AsyncHttpTransceiver.toInputStream(buffers), chunkSize);
+    } else {
+      return Results.ok(AsyncHttpTransceiver.toByteArray(buffers));
+    }
+  }
+
+  private static ByteBuffer map(File file) throws IOException {
+    try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+      if (channel.size() > Integer.MAX_VALUE) {
+        throw new PayloadTooLargeException("Request of " + channel.size()
+            + " bytes is too large to be mapped");
+      }
+      return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+    }
+  }
+
+  private static List<ByteBuffer> readBuffers(Http.RawBuffer raw, String encoding,
+      long maxSize) throws IOException {
+    if (maxSize >= 0 && raw.size() > maxSize) {
+      throw new PayloadTooLargeException("Request of " + raw.size()
+          + " bytes is larger than the limit of " + maxSize + " bytes");
     }
 
-    AvroPlugin plugin = AvroPlugin.getInstance();
-    Class<?> protocolClass = Play.application().classloader().loadClass(protocol);
-    Object implementation = plugin.getProtocolImplementations().get(protocolClass);
-    byte[] bytes = request().body().asRaw().asBytes();
-
-    List<ByteBuffer> buffers = AsyncHttpTransceiver.readBuffers(new ByteArrayInputStream(bytes));
-    AsyncResponder responder = new AsyncResponder(protocolClass, implementation);
-    Promise<List<ByteBuffer>> response = responder.asyncRespond(buffers);
-    return response.map(result -> {
-      ByteArrayOutputStream outStream = new ByteArrayOutputStream();
-      try {
-        AsyncHttpTransceiver.writeBuffers(result, outStream);
-      } finally {
-        outStream.close();
+    // Bodies beyond the memory threshold of the raw parser are spilled to temporary files, which
+    // are mapped instead of being read onto the heap.
+    byte[] bytes = raw.asBytes();
+    ByteBuffer body = bytes == null ? map(raw.asFile()) : ByteBuffer.wrap(bytes);
+    if (encoding == null) {
+      return AsyncHttpTransceiver.readBuffers(body);
+    }
+    try (InputStream in = PayloadCompression.decompress(encoding, body, maxSize)) {
+      return AsyncHttpTransceiver.readBuffers(in, maxSize);
+    }
+  }
+
+  private static Promise<List<ByteBuffer>> respondBatch(AsyncResponder responder,
+      List<ByteBuffer> buffers, String remoteAddress, boolean sharedHandshake) throws IOException {
+    List<Promise<List<ByteBuffer>>> responses = new ArrayList<>();
+    ResponderConnection connection = null;
+    for (List<ByteBuffer> request : AsyncHttpTransceiver.readBatch(buffers)) {
+      // Calls are answered through connections so that their failures are returned as Avro errors.
+      // With a shared handshake, the connection of the first call is used for the others.
+      Promise<List<ByteBuffer>> response;
+      if (connection == null || !sharedHandshake) {
+        connection = new ResponderConnection(remoteAddress);
+      }
+      if (sharedHandshake && !responses.isEmpty() && !connection.isConnected()) {
+        response = Promise.throwing(new AvroRuntimeException("Unable to process batched request "
+            + "because handshake of the batch failed"));
+      } else {
+        try {
+          response = responder.asyncRespond(request, connection);
+        } catch (Exception e) {
+          response = Promise.throwing(e);
+        }
       }
-      return Results.ok(outStream.toByteArray());
-    });
+      responses.add(response.recover(e -> {
+        // Calls without usable handshakes cannot be answered in Avro. An empty response tells the
+        // client that this call failed without failing the others.
+        LOG.warn("Exception thrown while processing batched request", e);
+        return Collections.singletonList(ByteBuffer.allocate(0));
+      }));
+    }
+    return Promise.sequence(responses).map(AsyncHttpTransceiver::writeBatch);
   }
 }
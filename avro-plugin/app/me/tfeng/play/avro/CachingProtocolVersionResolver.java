@@ -0,0 +1,198 @@
+/**
+ * Copyright 2014 Thomas Feng
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.tfeng.play.avro;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.stream.Collectors;
+
+import org.apache.avro.AvroRuntimeException;
+import org.apache.avro.Protocol;
+import org.apache.avro.Schema;
+import org.apache.avro.generic.GenericDatumReader;
+import org.apache.avro.io.BinaryEncoder;
+import org.apache.avro.io.Decoder;
+import org.apache.avro.io.Encoder;
+import org.apache.avro.io.EncoderFactory;
+import org.apache.avro.ipc.HandshakeMatch;
+import org.apache.avro.ipc.HandshakeRequest;
+import org.apache.avro.ipc.HandshakeResponse;
+import org.apache.avro.ipc.MD5;
+import org.apache.avro.ipc.RPCContext;
+import org.apache.avro.ipc.RPCPlugin;
+import org.apache.avro.ipc.Responder;
+import org.apache.avro.ipc.Transceiver;
+import org.apache.avro.specific.SpecificDatumWriter;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.collect.ImmutableList;
+
+/**
+ * @author Thomas Feng (huining.feng@gmail.com)
+ */
+public class CachingProtocolVersionResolver implements ProtocolVersionResolver {
+
+  private static final SpecificDatumWriter<HandshakeResponse> HANDSHAKE_RESPONSE_WRITER =
+      new SpecificDatumWriter<>(HandshakeResponse.class);
+
+  private static final GenericDatumReader<Map<String, ByteBuffer>> META_READER =
+      new GenericDatumReader<>(Schema.createMap(Schema.create(Schema.Type.BYTES)));
+
+  // Only plugins that override serverConnecting can change a handshake response.
+  private static final ClassValue<Boolean> OVERRIDES_SERVER_CONNECTING = new ClassValue<Boolean>() {
+    @Override
+    protected Boolean computeValue(Class<?> type) {
+      try {
+        return type.getMethod("serverConnecting", RPCContext.class).getDeclaringClass()
+            != RPCPlugin.class;
+      } catch (NoSuchMethodException e) {
+        return true;
+      }
+    }
+  };
+
+  private final ProtocolVersionResolver fallbackResolver = new HandshakingProtocolVersionResolver();
+
+  private final Cache<MD5, Protocol> remoteProtocols;
+
+  private final Cache<List<Object>, byte[]> responses;
+
+  public CachingProtocolVersionResolver(long maximumSize) {
+    remoteProtocols = CacheBuilder.newBuilder().maximumSize(maximumSize).recordStats().build();
+    responses = CacheBuilder.newBuilder().maximumSize(maximumSize).recordStats().build();
+  }
+
+  public CacheStats getRemoteProtocolStats() {
+    return remoteProtocols.stats();
+  }
+
+  public CacheStats getResponseStats() {
+    return responses.stats();
+  }
+
+  public void invalidateAll() {
+    remoteProtocols.invalidateAll();
+    responses.invalidateAll();
+  }
+
+  @Override
+  public Protocol resolve(Responder responder, Decoder in, Encoder out, Transceiver connection)
+      throws IOException {
+    if (!(responder instanceof AsyncResponder)) {
+      return fallbackResolver.resolve(responder, in, out, connection);
+    }
+
+    if (connection != null && connection.isConnected()) {
+      return connection.getRemote();
+    }
+
+    Protocol local = responder.getLocal();
+    List<RPCPlugin> plugins = ((AsyncResponder) responder).getRPCPlugins().stream()
+        .filter(plugin -> OVERRIDES_SERVER_CONNECTING.get(plugin.getClass()))
+        .collect(Collectors.toList());
+    MD5 clientHash = new MD5();
+    in.readFixed(clientHash.bytes());
+    Protocol remote;
+    if (Arrays.equals(local.getMD5(), clientHash.bytes())) {
+      remote = local;
+    } else {
+      remote = remoteProtocols.getIfPresent(clientHash);
+    }
+    String clientProtocol = null;
+    if (in.readIndex() == 1) {
+      if (remote == null || !plugins.isEmpty()) {
+        clientProtocol = in.readString();
+      } else {
+        in.skipString();
+      }
+    }
+    if (remote == null && clientProtocol != null) {
+      remote = Protocol.parse(clientProtocol);
+      remoteProtocols.put(clientHash, remote);
+    }
+    MD5 serverHash = new MD5();
+    in.readFixed(serverHash.bytes());
+    Map<String, ByteBuffer> meta = null;
+    if (in.readIndex() == 1) {
+      meta = META_READER.read(null, in);
+    }
+
+    boolean serverHashMatches = Arrays.equals(local.getMD5(), serverHash.bytes());
+    if (remote != null && plugins.isEmpty()) {
+      Protocol resolvedRemote = remote;
+      try {
+        out.writeFixed(responses.get(
+            ImmutableList.of(new MD5(local.getMD5()), clientHash, serverHashMatches),
+            () -> serialize(createResponse(local, resolvedRemote, serverHashMatches))));
+      } catch (ExecutionException e) {
+        throw new AvroRuntimeException("Unable to serialize handshake response", e.getCause());
+      }
+    } else {
+      // Handshakes that fail or that plugins may modify are not cached.
+      HandshakeResponse response = createResponse(local, remote, serverHashMatches);
+      RPCContext context = new RPCContext();
+      context.setHandshakeRequest(
+          new HandshakeRequest(clientHash, clientProtocol, serverHash, meta));
+      context.setHandshakeResponse(response);
+      for (RPCPlugin plugin : plugins) {
+        plugin.serverConnecting(context);
+      }
+      HANDSHAKE_RESPONSE_WRITER.write(response, out);
+    }
+
+    if (connection != null && remote != null) {
+      connection.setRemote(remote);
+    }
+    return remote;
+  }
+
+  private HandshakeResponse createResponse(Protocol local, Protocol remote,
+      boolean serverHashMatches) {
+    HandshakeResponse response = new HandshakeResponse();
+    if (remote == null) {
+      response.setMatch(HandshakeMatch.NONE);
+    } else if (serverHashMatches) {
+      response.setMatch(HandshakeMatch.BOTH);
+    } else {
+      response.setMatch(HandshakeMatch.CLIENT);
+    }
+    if (response.getMatch() != HandshakeMatch.BOTH) {
+      response.setServerProtocol(local.toString());
+      response.setServerHash(new MD5(local.getMD5()));
+    }
+    return response;
+  }
+
+  private byte[] serialize(HandshakeResponse response) throws IOException {
+    ByteArrayOutputStream stream = new ByteArrayOutputStream();
+    BinaryEncoder encoder = EncoderFactory.get().directBinaryEncoder(stream, null);
+    HANDSHAKE_RESPONSE_WRITER.write(response, encoder);
+    encoder.flush();
+    return stream.toByteArray();
+  }
+}
@@ -0,0 +1,109 @@
+/**
+ * Copyright 2014 Thomas Feng
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.tfeng.play.avro;
+
+import java.util.concurrent.Callable;
+
+import org.apache.avro.ipc.RPCContext;
+
+import me.tfeng.play.avro.tracing.Span;
+
+/**
+ * @author Thomas Feng (huining.feng@gmail.com)
+ */
+public class CallContext extends RPCContext {
+
+  private static final ThreadLocal<CallContext> CURRENT = new ThreadLocal<>();
+
+  /**
+   * Returns the context of the call that impl is handling on the current thread, or null if there
+   * is none. Calls made in it inherit its deadline and priority, and belong to its trace. Code
+   * that continues the call on other threads should capture the context and run there with
+   * {@link #call(Callable)}.
+   */
+  public static CallContext current() {
+    return CURRENT.get();
+  }
+
+  private Long deadline;
+
+  private RequestPriority priority;
+
+  private Span span;
+
+  private Long startTime;
+
+  public <T> T call(Callable<T> task) throws Exception {
+    CallContext previous = CURRENT.get();
+    CURRENT.set(this);
+    try {
+      return task.call();
+    } finally {
+      if (previous == null) {
+        CURRENT.remove();
+      } else {
+        CURRENT.set(previous);
+      }
+    }
+  }
+
+  /**
+   * Returns the deadline of the call in {@link System#nanoTime()} units, or null if there is none.
+   */
+  public Long getDeadline() {
+    return deadline;
+  }
+
+  /**
+   * Returns the priority of the call, which calls made in it inherit, or null if there is none.
+   */
+  public RequestPriority getPriority() {
+    return priority;
+  }
+
+  /**
+   * Returns the span of the call if it is traced, which is the parent of calls made in it, or null
+   * if there is none.
+   */
+  public Span getSpan() {
+    return span;
+  }
+
+  public Long getStartTime() {
+    return startTime;
+  }
+
+  public void setDeadline(Long deadline) {
+    this.deadline = deadline;
+  }
+
+  public void setPriority(RequestPriority priority) {
+    this.priority = priority;
+  }
+
+  public void setSpan(Span span) {
+    this.span = span;
+  }
+
+  public void setStartTime(Long startTime) {
+    this.startTime = startTime;
+  }
+}
@@ -0,0 +1,66 @@
+/**
+ * Copyright 2014 Thomas Feng
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.tfeng.play.avro;
+
+import java.nio.ByteBuffer;
+import java.util.Map;
+
+import org.apache.avro.util.Utf8;
+
+import me.tfeng.play.common.Constants;
+
+/**
+ * @author Thomas Feng (huining.feng@gmail.com)
+ */
+public class CallMetaHelper {
+
+  public static ByteBuffer get(Map<String, ByteBuffer> callMeta, String key) {
+    ByteBuffer buffer = callMeta.get(key);
+    if (buffer == null) {
+      // Keys of call meta decoded by a generic reader are Utf8.
+      buffer = callMeta.get(new Utf8(key));
+    }
+    return buffer;
+  }
+
+  public static Long getLong(Map<String, ByteBuffer> callMeta, String key) {
+    ByteBuffer buffer = get(callMeta, key);
+    if (buffer == null || buffer.remaining() < Long.BYTES) {
+      return null;
+    }
+    return buffer.getLong(buffer.position());
+  }
+
+  public static String getString(Map<String, ByteBuffer> callMeta, String key) {
+    ByteBuffer buffer = get(callMeta, key);
+    return buffer == null ? null : Constants.UTF8.decode(buffer.duplicate()).toString();
+  }
+
+  public static void putLong(Map<String, ByteBuffer> callMeta, String key, long value) {
+    ByteBuffer buffer = ByteBuffer.allocate(Long.BYTES);
+    buffer.putLong(0, value);
+    callMeta.put(key, buffer);
+  }
+
+  public static void putString(Map<String, ByteBuffer> callMeta, String key, String value) {
+    callMeta.put(key, ByteBuffer.wrap(value.getBytes(Constants.UTF8)));
+  }
+}
@@ -0,0 +1,125 @@
+/**
+ * Copyright 2014 Thomas Feng
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.tfeng.play.avro;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * @author Thomas Feng (huining.feng@gmail.com)
+ */
+public class ConcurrencyLimiter {
+
+  private static final double BACKOFF_RATIO = 0.9;
+
+  private final LongAdder acceptedCount = new LongAdder();
+
+  private double adaptiveLimit;
+
+  private final AtomicInteger inFlight = new AtomicInteger();
+
+  private final long latencyThreshold;
+
+  private volatile int limit;
+
+  private final int maxLimit;
+
+  private final int minLimit;
+
+  private final LongAdder rejectedCount = new LongAdder();
+
+  public ConcurrencyLimiter(int limit) {
+    this(limit, limit, limit, 0, TimeUnit.NANOSECONDS);
+  }
+
+  /**
+   * Creates an adaptive limiter (AIMD). The limit is increased by one for each request completed
+   * within the latency threshold while the limiter is at least half utilized, and is reduced by
+   * 10% for each request that takes longer, but it is always kept between minLimit and maxLimit.
+   */
+  public ConcurrencyLimiter(int initialLimit, int minLimit, int maxLimit, long latencyThreshold,
+      TimeUnit unit) {
+    if (minLimit < 1 || maxLimit < minLimit) {
+      throw new IllegalArgumentException("Invalid limits " + minLimit + " and " + maxLimit);
+    }
+    this.minLimit = minLimit;
+    this.maxLimit = maxLimit;
+    this.latencyThreshold = unit.toNanos(latencyThreshold);
+    limit = Math.min(Math.max(initialLimit, minLimit), maxLimit);
+    adaptiveLimit = limit;
+  }
+
+  public long getAcceptedCount() {
+    return acceptedCount.sum();
+  }
+
+  public int getInFlight() {
+    return inFlight.get();
+  }
+
+  public int getLimit() {
+    return limit;
+  }
+
+  public long getRejectedCount() {
+    return rejectedCount.sum();
+  }
+
+  public boolean isAdaptive() {
+    return latencyThreshold > 0 && minLimit < maxLimit;
+  }
+
+  public void release() {
+    inFlight.decrementAndGet();
+  }
+
+  public void release(long latencyNanos) {
+    int current = inFlight.getAndDecrement();
+    if (isAdaptive()) {
+      adjustLimit(latencyNanos, current);
+    }
+  }
+
+  public boolean tryAcquire() {
+    while (true) {
+      int current = inFlight.get();
+      if (current >= limit) {
+        rejectedCount.increment();
+        return false;
+      }
+      if (inFlight.compareAndSet(current, current + 1)) {
+        acceptedCount.increment();
+        return true;
+      }
+    }
+  }
+
+  private synchronized void adjustLimit(long latencyNanos, int current) {
+    if (latencyNanos > latencyThreshold) {
+      adaptiveLimit = Math.max(adaptiveLimit * BACKOFF_RATIO, minLimit);
+    } else if (current * 2 >= adaptiveLimit) {
+      // The limit is only raised while it is actually constraining concurrency.
+      adaptiveLimit = Math.min(adaptiveLimit + 1, maxLimit);
+    }
+    limit = (int) adaptiveLimit;
+  }
+}
@@ -0,0 +1,127 @@
+/**
+ * Copyright 2014 Thomas Feng
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.tfeng.play.avro;
+
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+
+import org.apache.avro.AvroRuntimeException;
+import org.apache.avro.Schema;
+import org.apache.avro.generic.GenericData;
+import org.apache.avro.generic.GenericDatumReader;
+import org.apache.avro.generic.GenericDatumWriter;
+import org.apache.avro.io.DatumReader;
+import org.apache.avro.io.DatumWriter;
+import org.apache.avro.specific.SpecificData;
+import org.apache.avro.specific.SpecificDatumReader;
+import org.apache.avro.specific.SpecificDatumWriter;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.collect.ImmutableList;
+
+import me.tfeng.play.avro.codec.SpecializedDatumReader;
+import me.tfeng.play.avro.codec.SpecializedDatumWriter;
+
+/**
+ * @author Thomas Feng (huining.feng@gmail.com)
+ */
+public class DatumCache {
+
+  private final Cache<List<Object>, DatumReader<?>> readers;
+
+  private final boolean specializedCodecs;
+
+  private final Cache<List<Object>, DatumWriter<?>> writers;
+
+  public DatumCache(long maximumSize) {
+    this(maximumSize, false);
+  }
+
+  public DatumCache(long maximumSize, boolean specializedCodecs) {
+    this.specializedCodecs = specializedCodecs;
+    readers = CacheBuilder.newBuilder().maximumSize(maximumSize).recordStats().build();
+    writers = CacheBuilder.newBuilder().maximumSize(maximumSize).recordStats().build();
+  }
+
+  @SuppressWarnings("unchecked")
+  public <T> DatumReader<T> getDatumReader(Schema writer, Schema reader, GenericData data) {
+    try {
+      List<Object> key = ImmutableList.of(writer, reader, getDataKey(data));
+      return (DatumReader<T>) readers.get(key, () -> {
+        if (data instanceof SpecificData) {
+          // Specialized readers do not resolve schemas, so they are only used when both agree.
+          if (specializedCodecs && writer.equals(reader)) {
+            return new SpecializedDatumReader<>(reader, (SpecificData) data);
+          }
+          return new SpecificDatumReader<>(writer, reader, (SpecificData) data);
+        } else {
+          return new GenericDatumReader<>(writer, reader, data);
+        }
+      });
+    } catch (ExecutionException e) {
+      throw new AvroRuntimeException("Unable to create datum reader", e.getCause());
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  public <T> DatumWriter<T> getDatumWriter(Schema schema, GenericData data) {
+    try {
+      return (DatumWriter<T>) writers.get(ImmutableList.of(schema, getDataKey(data)), () -> {
+        if (data instanceof SpecificData) {
+          if (specializedCodecs) {
+            return new SpecializedDatumWriter<>(schema, (SpecificData) data);
+          }
+          return new SpecificDatumWriter<>(schema, (SpecificData) data);
+        } else {
+          return new GenericDatumWriter<>(schema, data);
+        }
+      });
+    } catch (ExecutionException e) {
+      throw new AvroRuntimeException("Unable to create datum writer", e.getCause());
+    }
+  }
+
+  public CacheStats getReaderStats() {
+    return readers.stats();
+  }
+
+  public CacheStats getWriterStats() {
+    return writers.stats();
+  }
+
+  public void invalidateAll() {
+    readers.invalidateAll();
+    writers.invalidateAll();
+  }
+
+  private Object getDataKey(GenericData data) {
+    // Separately constructed data instances for the same class loader resolve classes identically,
+    // so they share their readers and writers.
+    ClassLoader classLoader = data.getClassLoader();
+    if (classLoader == null) {
+      return data;
+    } else {
+      return ImmutableList.of(data.getClass(), classLoader);
+    }
+  }
+}
@@ -0,0 +1,96 @@
+/**
+ * Copyright 2014 Thomas Feng
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.tfeng.play.avro;
+
+import java.nio.ByteBuffer;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import play.mvc.Http;
+
+/**
+ * @author Thomas Feng (huining.feng@gmail.com)
+ */
+public class DeadlineHelper {
+
+  public static final String CALL_META_KEY = "deadline";
+
+  private static final String CONTEXT_ARG = DeadlineHelper.class.getName();
+
+  public static void clearDeadline() {
+    CallContext callContext = CallContext.current();
+    if (callContext != null) {
+      callContext.setDeadline(null);
+      return;
+    }
+    Http.Context context = Http.Context.current.get();
+    if (context != null) {
+      context.args.remove(CONTEXT_ARG);
+    }
+  }
+
+  /**
+   * Returns the deadline in {@link System#nanoTime()} units of the call being handled, or of the
+   * current HTTP context outside of calls, or null if there is none.
+   */
+  public static Long getDeadline() {
+    CallContext callContext = CallContext.current();
+    if (callContext != null) {
+      return callContext.getDeadline();
+    }
+    Http.Context context = Http.Context.current.get();
+    return context == null ? null : (Long) context.args.get(CONTEXT_ARG);
+  }
+
+  public static long getRemainingMillis(Long deadline) {
+    return TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+  }
+
+  public static Long readTimeout(Map<String, ByteBuffer> callMeta) {
+    return CallMetaHelper.getLong(callMeta, CALL_META_KEY);
+  }
+
+  public static void setDeadline(long deadline) {
+    // A nested deadline never extends the one inherited from the caller.
+    CallContext callContext = CallContext.current();
+    if (callContext != null) {
+      callContext.setDeadline(earlier(callContext.getDeadline(), deadline));
+      return;
+    }
+    Http.Context context = Http.Context.current.get();
+    if (context == null) {
+      throw new RuntimeException("Unable to set deadline outside of calls or HTTP contexts");
+    }
+    context.args.put(CONTEXT_ARG, earlier((Long) context.args.get(CONTEXT_ARG), deadline));
+  }
+
+  public static void setTimeout(long timeout, TimeUnit unit) {
+    setDeadline(System.nanoTime() + unit.toNanos(timeout));
+  }
+
+  public static void writeTimeout(Map<String, ByteBuffer> callMeta, long timeoutMillis) {
+    CallMetaHelper.putLong(callMeta, CALL_META_KEY, timeoutMillis);
+  }
+
+  private static long earlier(Long currentDeadline, long deadline) {
+    return currentDeadline == null || deadline - currentDeadline < 0 ? deadline : currentDeadline;
+  }
+}
@@ -20,29 +20,21 @@
 
 package me.tfeng.play.avro;
 
-import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.util.concurrent.RejectedExecutionException;
 
-import org.apache.avro.Protocol;
 import org.apache.avro.Protocol.Message;
-import org.apache.avro.Schema;
-import org.apache.avro.io.DecoderFactory;
-import org.apache.avro.ipc.Responder;
-import org.apache.avro.ipc.specific.SpecificResponder;
 import org.apache.commons.lang3.ArrayUtils;
 import org.apache.http.entity.ContentType;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContextHolder;
 
-import com.fasterxml.jackson.databind.JsonNode;
-
 import me.tfeng.play.common.Constants;
 import me.tfeng.play.plugins.AvroPlugin;
 import play.Logger;
 import play.Logger.ALogger;
-import play.Play;
+import play.libs.F.Function0;
 import play.libs.F.Promise;
-import play.libs.Json;
 import play.mvc.BodyParser;
 import play.mvc.Controller;
 import play.mvc.Result;
@@ -66,16 +58,49 @@ public class JsonIpcController extends Controller {
           + CONTENT_TYPE + " is expected");
     }
 
-    AvroPlugin plugin = AvroPlugin.getInstance();
+    AsyncResponder responder = AvroPlugin.getInstance().getResponder(protocol);
+    ConcurrencyLimiter limiter = responder.getConcurrencyLimiter();
+    if (limiter == null) {
+      return respond(responder, message, protocol);
+    } else if (!limiter.tryAcquire()) {
+      return Promise.pure(Results.status(SERVICE_UNAVAILABLE));
+    }
+
+    long startTime = System.nanoTime();
+    Promise<Result> promise;
+    try {
+      promise = respond(responder, message, protocol);
+    } catch (Throwable t) {
+      limiter.release();
+      throw t;
+    }
+    promise.onRedeem(result -> {
+      // Error results, including those of saturated executors, are not sampled.
+      if (result.toScala().header().status() == OK) {
+        limiter.release(System.nanoTime() - startTime);
+      } else {
+        limiter.release();
+      }
+    });
+    promise.onFailure(t -> limiter.release());
+    return promise;
+  }
 
-    Class<?> protocolClass = Play.application().classloader().loadClass(protocol);
-    Object implementation = plugin.getProtocolImplementations().get(protocolClass);
-    Protocol avroProtocol = AvroHelper.getProtocol(protocolClass);
-    Message avroMessage = avroProtocol.getMessages().get(message);
+  private static Object getRequest(AsyncResponder responder, Message message, byte[] data)
+      throws IOException {
+    if (ArrayUtils.isEmpty(data)) {
+      // The method takes no argument; use empty data.
+      data = "{}".getBytes(Constants.UTF8);
+    }
+    return new SimpleJsonReader<>(message.getRequest(), responder.getSpecificData()).read(data);
+  }
+
+  private static Promise<Result> respond(AsyncResponder responder, String message,
+      String protocol) throws Throwable {
+    Message avroMessage = responder.getLocal().getMessages().get(message);
     byte[] bytes = request().body().asRaw().asBytes();
-    SpecificResponder responder = new SpecificResponder(protocolClass, implementation);
     Object request = getRequest(responder, avroMessage, bytes);
-    if (AvroHelper.isAvroClient(protocolClass)) {
+    if (responder.isAvroClient()) {
       Promise<?> promise = (Promise<?>) responder.respond(avroMessage, request);
       return promise
           .<Result>map(result -> Results.ok(AvroHelper.toJson(avroMessage.getResponse(), result)))
@@ -89,7 +114,7 @@ public class JsonIpcController extends Controller {
           });
     } else {
       Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
-      return Promise.promise(() -> {
+      Function0<Result> task = () -> {
         Authentication currentAuthentication =
             SecurityContextHolder.getContext().getAuthentication();
         SecurityContextHolder.getContext().setAuthentication(authentication);
@@ -106,20 +131,15 @@ public class JsonIpcController extends Controller {
         } finally {
           SecurityContextHolder.getContext().setAuthentication(currentAuthentication);
         }
-      }, AvroPlugin.getInstance().getExecutionContext());
-    }
-  }
-
-  private static Object getRequest(Responder responder, Message message, byte[] data)
-      throws IOException {
-    Schema schema = message.getRequest();
-    if (ArrayUtils.isEmpty(data)) {
-      // The method takes no argument; use empty data.
-      data = "{}".getBytes(Constants.UTF8);
+      };
+      RequestPriority priority = PriorityHelper.getPriority(responder.getLocal(), avroMessage);
+      try {
+        return PriorityExecutor.withPriority(priority == null ? RequestPriority.NORMAL : priority,
+            () -> Promise.promise(task, responder.getExecutionContext(message)));
+      } catch (RejectedExecutionException e) {
+        LOG.warn("Executor of " + protocol + " is saturated; returning service unavailable", e);
+        return Promise.pure(Results.status(SERVICE_UNAVAILABLE));
+      }
     }
-    JsonNode node = Json.parse(new ByteArrayInputStream(data));
-    node = AvroHelper.convertFromSimpleRecord(schema, node);
-    return responder.readRequest(message.getRequest(), message.getRequest(),
-        DecoderFactory.get().jsonDecoder(schema, node.toString()));
   }
 }
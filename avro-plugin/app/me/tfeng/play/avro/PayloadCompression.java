@@ -0,0 +1,202 @@
+/**
+ * Copyright 2014 Thomas Feng
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.tfeng.play.avro;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+import org.apache.avro.util.ByteBufferInputStream;
+import org.xerial.snappy.Snappy;
+
+import play.Logger;
+import play.Logger.ALogger;
+
+/**
+ * @author Thomas Feng (huining.feng@gmail.com)
+ */
+public class PayloadCompression {
+
+  private static class LimitedInputStream extends FilterInputStream {
+
+    private long remaining;
+
+    public LimitedInputStream(InputStream in, long maxLength) {
+      super(in);
+      remaining = maxLength;
+    }
+
+    @Override
+    public int read() throws IOException {
+      int b = super.read();
+      if (b >= 0) {
+        count(1);
+      }
+      return b;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+      int count = super.read(b, off, len);
+      if (count > 0) {
+        count(count);
+      }
+      return count;
+    }
+
+    private void count(int length) throws PayloadTooLargeException {
+      remaining -= length;
+      if (remaining < 0) {
+        throw new PayloadTooLargeException("Decompressed payload is larger than the limit");
+      }
+    }
+  }
+
+  public static final String ACCEPT_ENCODING_HEADER = "Avro-Accept-Encoding";
+
+  public static final String CONTENT_ENCODING_HEADER = "Avro-Content-Encoding";
+
+  public static final String DEFLATE = "deflate";
+
+  public static final String SNAPPY = "snappy";
+
+  private static final ALogger LOG = Logger.of(PayloadCompression.class);
+
+  private static final List<String> SUPPORTED_ENCODINGS;
+
+  static {
+    boolean isSnappyAvailable;
+    try {
+      Snappy.uncompress(Snappy.compress(new byte[0]));
+      isSnappyAvailable = true;
+    } catch (Throwable t) {
+      LOG.info("Snappy is not available; only deflate is used to compress payloads");
+      isSnappyAvailable = false;
+    }
+    // In order of preference.
+    SUPPORTED_ENCODINGS = isSnappyAvailable ? Arrays.asList(SNAPPY, DEFLATE)
+        : Arrays.asList(DEFLATE);
+  }
+
+  public static byte[] compress(String encoding, byte[] data) throws IOException {
+    switch (encoding) {
+    case DEFLATE:
+      Deflater deflater = new Deflater(Deflater.BEST_SPEED, true);
+      try {
+        ByteArrayOutputStream stream = new ByteArrayOutputStream(data.length / 2 + 64);
+        try (DeflaterOutputStream deflaterStream = new DeflaterOutputStream(stream, deflater)) {
+          deflaterStream.write(data);
+        }
+        return stream.toByteArray();
+      } finally {
+        deflater.end();
+      }
+    case SNAPPY:
+      return Snappy.compress(data);
+    default:
+      throw new IOException("Unsupported payload encoding " + encoding);
+    }
+  }
+
+  /**
+   * Returns a stream of the decompressed data, which fails with {@link PayloadTooLargeException}
+   * as soon as more than maxLength bytes are decompressed, unless maxLength is negative.
+   */
+  public static InputStream decompress(String encoding, ByteBuffer data, long maxLength)
+      throws IOException {
+    switch (encoding) {
+    case DEFLATE:
+      InputStream in = new InflaterInputStream(
+          new ByteBufferInputStream(Collections.singletonList(data.duplicate())),
+          new Inflater(true)) {
+        @Override
+        public void close() throws IOException {
+          try {
+            super.close();
+          } finally {
+            inf.end();
+          }
+        }
+      };
+      return maxLength < 0 ? in : new LimitedInputStream(in, maxLength);
+    case SNAPPY:
+      // Snappy blocks are not streamed, but their lengths are known before they are decompressed.
+      if (data.isDirect()) {
+        int length = Snappy.uncompressedLength(data);
+        checkLength(length, maxLength);
+        ByteBuffer uncompressed = ByteBuffer.allocateDirect(length);
+        Snappy.uncompress(data, uncompressed);
+        return new ByteBufferInputStream(Collections.singletonList(uncompressed));
+      }
+      byte[] array;
+      int offset;
+      if (data.hasArray()) {
+        array = data.array();
+        offset = data.arrayOffset() + data.position();
+      } else {
+        array = new byte[data.remaining()];
+        data.duplicate().get(array);
+        offset = 0;
+      }
+      int length = Snappy.uncompressedLength(array, offset, data.remaining());
+      checkLength(length, maxLength);
+      byte[] uncompressed = new byte[length];
+      Snappy.uncompress(array, offset, data.remaining(), uncompressed, 0);
+      return new ByteArrayInputStream(uncompressed);
+    default:
+      throw new IOException("Unsupported payload encoding " + encoding);
+    }
+  }
+
+  public static String getAcceptEncoding() {
+    return String.join(", ", SUPPORTED_ENCODINGS);
+  }
+
+  public static String selectEncoding(String acceptEncoding) {
+    if (acceptEncoding == null) {
+      return null;
+    }
+    List<String> accepted = Arrays.asList(acceptEncoding.trim().split("\\s*,\\s*"));
+    for (String encoding : SUPPORTED_ENCODINGS) {
+      if (accepted.contains(encoding)) {
+        return encoding;
+      }
+    }
+    return null;
+  }
+
+  private static void checkLength(int length, long maxLength) throws PayloadTooLargeException {
+    if (maxLength >= 0 && length > maxLength) {
+      throw new PayloadTooLargeException("Decompressed payload of " + length
+          + " bytes is larger than the limit of " + maxLength + " bytes");
+    }
+  }
+}
@@ -0,0 +1,295 @@
+/**
+ * Copyright 2014 Thomas Feng
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.tfeng.play.avro;
+
+import java.util.AbstractQueue;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * @author Thomas Feng (huining.feng@gmail.com)
+ */
+public class PriorityExecutor extends ThreadPoolExecutor {
+
+  private static class PrioritizedTask implements Runnable {
+
+    private final RequestPriority priority;
+
+    private final Runnable task;
+
+    public PrioritizedTask(Runnable task, RequestPriority priority) {
+      this.task = task;
+      this.priority = priority;
+    }
+
+    @Override
+    public void run() {
+      task.run();
+    }
+  }
+
+  private static class WeightedQueue extends AbstractQueue<Runnable>
+      implements BlockingQueue<Runnable> {
+
+    private final int[] credits = new int[PRIORITIES.length];
+
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private final Condition notEmpty = lock.newCondition();
+
+    private final List<Queue<Runnable>> queues = new ArrayList<>(PRIORITIES.length);
+
+    private int size;
+
+    public WeightedQueue() {
+      for (int i = 0; i < PRIORITIES.length; i++) {
+        queues.add(new ArrayDeque<>());
+      }
+    }
+
+    @Override
+    public int drainTo(Collection<? super Runnable> collection) {
+      return drainTo(collection, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public int drainTo(Collection<? super Runnable> collection, int maxElements) {
+      lock.lock();
+      try {
+        int count = 0;
+        while (count < maxElements && size > 0) {
+          collection.add(dequeue());
+          count++;
+        }
+        return count;
+      } finally {
+        lock.unlock();
+      }
+    }
+
+    @Override
+    public Iterator<Runnable> iterator() {
+      List<Runnable> tasks = new ArrayList<>();
+      lock.lock();
+      try {
+        queues.forEach(tasks::addAll);
+      } finally {
+        lock.unlock();
+      }
+      Iterator<Runnable> iterator = tasks.iterator();
+      return new Iterator<Runnable>() {
+
+        private Runnable current;
+
+        @Override
+        public boolean hasNext() {
+          return iterator.hasNext();
+        }
+
+        @Override
+        public Runnable next() {
+          current = iterator.next();
+          return current;
+        }
+
+        @Override
+        public void remove() {
+          WeightedQueue.this.remove(current);
+        }
+      };
+    }
+
+    @Override
+    public boolean offer(Runnable task) {
+      RequestPriority priority = task instanceof PrioritizedTask
+          ? ((PrioritizedTask) task).priority : RequestPriority.NORMAL;
+      lock.lock();
+      try {
+        queues.get(priority.ordinal()).add(task);
+        size++;
+        notEmpty.signal();
+        return true;
+      } finally {
+        lock.unlock();
+      }
+    }
+
+    @Override
+    public boolean offer(Runnable task, long timeout, TimeUnit unit) {
+      return offer(task);
+    }
+
+    @Override
+    public Runnable peek() {
+      lock.lock();
+      try {
+        for (Queue<Runnable> queue : queues) {
+          if (!queue.isEmpty()) {
+            return queue.peek();
+          }
+        }
+        return null;
+      } finally {
+        lock.unlock();
+      }
+    }
+
+    @Override
+    public Runnable poll() {
+      lock.lock();
+      try {
+        return size == 0 ? null : dequeue();
+      } finally {
+        lock.unlock();
+      }
+    }
+
+    @Override
+    public Runnable poll(long timeout, TimeUnit unit) throws InterruptedException {
+      long nanos = unit.toNanos(timeout);
+      lock.lockInterruptibly();
+      try {
+        while (size == 0) {
+          if (nanos <= 0) {
+            return null;
+          }
+          nanos = notEmpty.awaitNanos(nanos);
+        }
+        return dequeue();
+      } finally {
+        lock.unlock();
+      }
+    }
+
+    @Override
+    public void put(Runnable task) {
+      offer(task);
+    }
+
+    @Override
+    public int remainingCapacity() {
+      return Integer.MAX_VALUE;
+    }
+
+    @Override
+    public boolean remove(Object task) {
+      lock.lock();
+      try {
+        for (Queue<Runnable> queue : queues) {
+          if (queue.remove(task)) {
+            size--;
+            return true;
+          }
+        }
+        return false;
+      } finally {
+        lock.unlock();
+      }
+    }
+
+    @Override
+    public int size() {
+      lock.lock();
+      try {
+        return size;
+      } finally {
+        lock.unlock();
+      }
+    }
+
+    @Override
+    public Runnable take() throws InterruptedException {
+      lock.lockInterruptibly();
+      try {
+        while (size == 0) {
+          notEmpty.await();
+        }
+        return dequeue();
+      } finally {
+        lock.unlock();
+      }
+    }
+
+    private Runnable dequeue() {
+      // Weighted round robin: in each round, a priority takes at most as many tasks as its weight,
+      // so lower priorities are slowed down by higher ones but never starved.
+      while (true) {
+        for (int i = 0; i < PRIORITIES.length; i++) {
+          Queue<Runnable> queue = queues.get(i);
+          if (credits[i] > 0 && !queue.isEmpty()) {
+            credits[i]--;
+            size--;
+            return queue.poll();
+          }
+        }
+        for (int i = 0; i < PRIORITIES.length; i++) {
+          credits[i] = PRIORITIES[i].getWeight();
+        }
+      }
+    }
+  }
+
+  private static final RequestPriority[] PRIORITIES = RequestPriority.values();
+
+  private static final ThreadLocal<RequestPriority> SUBMISSION_PRIORITY = new ThreadLocal<>();
+
+  /**
+   * Runs the submitter, assigning the priority to tasks that it submits to priority executors in
+   * the current thread. Tasks submitted otherwise have {@link RequestPriority#NORMAL} priority.
+   */
+  public static <T> T withPriority(RequestPriority priority, Supplier<T> submitter) {
+    RequestPriority currentPriority = SUBMISSION_PRIORITY.get();
+    SUBMISSION_PRIORITY.set(priority);
+    try {
+      return submitter.get();
+    } finally {
+      if (currentPriority == null) {
+        SUBMISSION_PRIORITY.remove();
+      } else {
+        SUBMISSION_PRIORITY.set(currentPriority);
+      }
+    }
+  }
+
+  public PriorityExecutor(String name, int threads) {
+    super(threads, threads, 0L, TimeUnit.MILLISECONDS, new WeightedQueue(),
+        new ThreadFactoryBuilder().setNameFormat(name + "-%d").setDaemon(true).build());
+  }
+
+  @Override
+  public void execute(Runnable task) {
+    RequestPriority priority = SUBMISSION_PRIORITY.get();
+    super.execute(new PrioritizedTask(task,
+        priority == null ? RequestPriority.NORMAL : priority));
+  }
+}
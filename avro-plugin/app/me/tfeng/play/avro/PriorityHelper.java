@@ -0,0 +1,111 @@
+/**
+ * Copyright 2014 Thomas Feng
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.tfeng.play.avro;
+
+import java.nio.ByteBuffer;
+import java.util.Map;
+
+import org.apache.avro.Protocol;
+import org.apache.avro.Protocol.Message;
+
+import play.mvc.Http;
+
+/**
+ * @author Thomas Feng (huining.feng@gmail.com)
+ */
+public class PriorityHelper {
+
+  public static final String CALL_META_KEY = "priority";
+
+  public static final String PROTOCOL_PROP = "priority";
+
+  private static final String CONTEXT_ARG = PriorityHelper.class.getName();
+
+  public static void clearPriority() {
+    CallContext callContext = CallContext.current();
+    if (callContext != null) {
+      callContext.setPriority(null);
+      return;
+    }
+    Http.Context context = Http.Context.current.get();
+    if (context != null) {
+      context.args.remove(CONTEXT_ARG);
+    }
+  }
+
+  /**
+   * Returns the priority of the call being handled, or of the current HTTP context outside of
+   * calls, or null if there is none.
+   */
+  public static RequestPriority getPriority() {
+    CallContext callContext = CallContext.current();
+    if (callContext != null) {
+      return callContext.getPriority();
+    }
+    Http.Context context = Http.Context.current.get();
+    return context == null ? null : (RequestPriority) context.args.get(CONTEXT_ARG);
+  }
+
+  /**
+   * Returns the priority declared with the "priority" property of the message, or of its protocol
+   * if the message does not declare one.
+   */
+  public static RequestPriority getPriority(Protocol protocol, Message message) {
+    RequestPriority priority = parsePriority(message.getProp(PROTOCOL_PROP));
+    if (priority == null) {
+      priority = parsePriority(protocol.getProp(PROTOCOL_PROP));
+    }
+    return priority;
+  }
+
+  public static RequestPriority readPriority(Map<String, ByteBuffer> callMeta) {
+    return parsePriority(CallMetaHelper.getString(callMeta, CALL_META_KEY));
+  }
+
+  public static void setPriority(RequestPriority priority) {
+    CallContext callContext = CallContext.current();
+    if (callContext != null) {
+      callContext.setPriority(priority);
+      return;
+    }
+    Http.Context context = Http.Context.current.get();
+    if (context == null) {
+      throw new RuntimeException("Unable to set priority outside of calls or HTTP contexts");
+    }
+    context.args.put(CONTEXT_ARG, priority);
+  }
+
+  public static void writePriority(Map<String, ByteBuffer> callMeta, RequestPriority priority) {
+    CallMetaHelper.putString(callMeta, CALL_META_KEY, priority.name());
+  }
+
+  private static RequestPriority parsePriority(String value) {
+    if (value == null) {
+      return null;
+    }
+    try {
+      return RequestPriority.valueOf(value.trim().toUpperCase());
+    } catch (IllegalArgumentException e) {
+      // Unknown priorities are ignored, so that newer clients can talk to older servers.
+      return null;
+    }
+  }
+}
@@ -0,0 +1,128 @@
+/**
+ * Copyright 2014 Thomas Feng
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.tfeng.play.avro;
+
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.avro.Protocol;
+import org.apache.avro.Protocol.Message;
+import org.codehaus.jackson.JsonNode;
+
+import com.google.common.collect.ImmutableList;
+
+import me.tfeng.play.avro.metrics.MessageMetrics;
+import me.tfeng.play.avro.metrics.MessageMetrics.Side;
+import me.tfeng.play.avro.metrics.MetricsRegistry;
+import play.libs.F.Function0;
+import play.libs.F.Promise;
+import play.libs.F.RedeemablePromise;
+
+/**
+ * @author Thomas Feng (huining.feng@gmail.com)
+ */
+public class RequestCoalescer {
+
+  public static final String COALESCE_PROPERTY = "coalesce";
+
+  public static boolean hasCoalescedMessages(Protocol protocol) {
+    return protocol.getMessages().values().stream().anyMatch(RequestCoalescer::isCoalesced);
+  }
+
+  private static boolean isCoalesced(Message message) {
+    // Cacheable messages are coalesced too, so that an empty cache is filled with one request.
+    if (message.isOneWay()) {
+      return false;
+    }
+    JsonNode property = message.getJsonProp(COALESCE_PROPERTY);
+    if (property != null && property.isBoolean()) {
+      return property.getBooleanValue();
+    }
+    return message.getJsonProp(ResponseCache.CACHEABLE_PROPERTY) != null;
+  }
+
+  private final ConcurrentMap<List<Object>, Promise<Object>> inFlight = new ConcurrentHashMap<>();
+
+  private final Set<String> messages = new HashSet<>();
+
+  private final Map<String, MessageMetrics> metrics = new HashMap<>();
+
+  public RequestCoalescer(Protocol protocol, MetricsRegistry registry) {
+    String protocolName = MetricsRegistry.getProtocolName(protocol);
+    for (Message message : protocol.getMessages().values()) {
+      if (isCoalesced(message)) {
+        String name = message.getName();
+        messages.add(name);
+        if (registry != null) {
+          metrics.put(name, registry.getMessageMetrics(Side.CLIENT, protocolName, name));
+        }
+      }
+    }
+  }
+
+  public Promise<Object> coalesce(String message, ByteBuffer request,
+      Function0<Promise<Object>> sender) {
+    List<Object> key = ImmutableList.of(message, request);
+    RedeemablePromise<Object> promise = RedeemablePromise.empty();
+    Promise<Object> existing = inFlight.putIfAbsent(key, promise);
+    if (existing != null) {
+      MessageMetrics messageMetrics = metrics.get(message);
+      if (messageMetrics != null) {
+        messageMetrics.recordCoalesced();
+      }
+      return existing;
+    }
+
+    // The request is removed before the promise is redeemed, so that callers arriving afterwards
+    // send a new request instead of getting a completed response.
+    Promise<Object> response;
+    try {
+      response = sender.apply();
+    } catch (Throwable t) {
+      inFlight.remove(key, promise);
+      promise.failure(t);
+      return promise;
+    }
+    response.onRedeem(result -> {
+      inFlight.remove(key, promise);
+      promise.success(result);
+    });
+    response.onFailure(t -> {
+      inFlight.remove(key, promise);
+      promise.failure(t);
+    });
+    return promise;
+  }
+
+  public int getInFlightCount() {
+    return inFlight.size();
+  }
+
+  public boolean isCoalesced(String message) {
+    return messages.contains(message);
+  }
+}
@@ -0,0 +1,44 @@
+/**
+ * Copyright 2014 Thomas Feng
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.tfeng.play.avro;
+
+/**
+ * @author Thomas Feng (huining.feng@gmail.com)
+ */
+public enum RequestPriority {
+
+  // Declared from the highest priority to the lowest.
+  INTERACTIVE(8), NORMAL(4), BATCH(1);
+
+  private final int weight;
+
+  private RequestPriority(int weight) {
+    this.weight = weight;
+  }
+
+  /**
+   * Returns the number of tasks of this priority that may be dispatched in each round of a
+   * {@link PriorityExecutor} while tasks of lower priorities are waiting.
+   */
+  public int getWeight() {
+    return weight;
+  }
+}
@@ -0,0 +1,74 @@
+/**
+ * Copyright 2014 Thomas Feng
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.tfeng.play.avro;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.List;
+
+import org.apache.avro.Protocol;
+import org.apache.avro.ipc.Transceiver;
+
+/**
+ * @author Thomas Feng (huining.feng@gmail.com)
+ */
+public class ResponderConnection extends Transceiver {
+
+  private volatile Protocol remote;
+
+  private final String remoteName;
+
+  public ResponderConnection(String remoteName) {
+    this.remoteName = remoteName;
+  }
+
+  @Override
+  public Protocol getRemote() {
+    return remote;
+  }
+
+  @Override
+  public String getRemoteName() throws IOException {
+    return remoteName;
+  }
+
+  @Override
+  public boolean isConnected() {
+    return remote != null;
+  }
+
+  @Override
+  public List<ByteBuffer> readBuffers() throws IOException {
+    throw new UnsupportedOperationException("Connection from " + remoteName
+        + " only keeps the handshake for AsyncResponder; it does not transfer data");
+  }
+
+  @Override
+  public void setRemote(Protocol remote) {
+    this.remote = remote;
+  }
+
+  @Override
+  public void writeBuffers(List<ByteBuffer> buffers) throws IOException {
+    throw new UnsupportedOperationException("Connection from " + remoteName
+        + " only keeps the handshake for AsyncResponder; it does not transfer data");
+  }
+}
@@ -0,0 +1,151 @@
+/**
+ * Copyright 2014 Thomas Feng
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.tfeng.play.avro;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.avro.Protocol;
+import org.apache.avro.Protocol.Message;
+import org.apache.avro.Schema;
+import org.apache.avro.generic.GenericData;
+import org.codehaus.jackson.JsonNode;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+
+import me.tfeng.play.avro.metrics.MessageMetrics;
+import me.tfeng.play.avro.metrics.MessageMetrics.Side;
+import me.tfeng.play.avro.metrics.MetricsRegistry;
+
+/**
+ * @author Thomas Feng (huining.feng@gmail.com)
+ */
+public class ResponseCache {
+
+  public static final String CACHEABLE_PROPERTY = "cacheable";
+
+  public static boolean hasCacheableMessages(Protocol protocol) {
+    return protocol.getMessages().values().stream().anyMatch(message ->
+        getTtl(message, 0) > 0);
+  }
+
+  private static long getTtl(Message message, long defaultTtl) {
+    // A message is cacheable with @cacheable(true), or @cacheable(<ttl in milliseconds>).
+    if (message.isOneWay()) {
+      return 0;
+    }
+    JsonNode property = message.getJsonProp(CACHEABLE_PROPERTY);
+    if (property == null) {
+      return 0;
+    } else if (property.isBoolean()) {
+      return property.getBooleanValue() ? Math.max(defaultTtl, 1) : 0;
+    } else if (property.isNumber()) {
+      return property.getLongValue();
+    } else {
+      throw new IllegalArgumentException("Invalid value of " + CACHEABLE_PROPERTY
+          + " property for message " + message.getName() + ": " + property);
+    }
+  }
+
+  private final Map<String, Cache<ByteBuffer, Object>> caches = new HashMap<>();
+
+  private final GenericData data;
+
+  private final Map<String, MessageMetrics> metrics = new HashMap<>();
+
+  private final Protocol protocol;
+
+  public ResponseCache(Protocol protocol, GenericData data, long maximumSize, long defaultTtl,
+      MetricsRegistry registry) {
+    this.protocol = protocol;
+    this.data = data;
+    String protocolName = MetricsRegistry.getProtocolName(protocol);
+    for (Message message : protocol.getMessages().values()) {
+      long ttl = getTtl(message, defaultTtl);
+      if (ttl > 0) {
+        String name = message.getName();
+        caches.put(name, CacheBuilder.newBuilder().maximumSize(maximumSize)
+            .expireAfterWrite(ttl, TimeUnit.MILLISECONDS).recordStats().build());
+        if (registry != null) {
+          metrics.put(name, registry.getMessageMetrics(Side.CLIENT, protocolName, name));
+        }
+      }
+    }
+  }
+
+  public Object getIfPresent(String message, ByteBuffer request) {
+    Cache<ByteBuffer, Object> cache = caches.get(message);
+    if (cache == null) {
+      return null;
+    }
+    Object response = cache.getIfPresent(request);
+    MessageMetrics messageMetrics = metrics.get(message);
+    if (messageMetrics != null) {
+      messageMetrics.recordCacheLookup(response != null);
+    }
+    return response;
+  }
+
+  public ByteBuffer getKey(String message, Object[] args) throws IOException {
+    // The key is the binary encoding of the arguments, which is the same for equal requests.
+    Schema requestSchema = protocol.getMessages().get(message).getRequest();
+    return ByteBuffer.wrap(AvroHelper.encodeArguments(requestSchema, args, data));
+  }
+
+  public CacheStats getStats(String message) {
+    Cache<ByteBuffer, Object> cache = caches.get(message);
+    return cache == null ? null : cache.stats();
+  }
+
+  public void invalidate(String message) {
+    Cache<ByteBuffer, Object> cache = caches.get(message);
+    if (cache != null) {
+      cache.invalidateAll();
+    }
+  }
+
+  public void invalidate(String message, Object[] args) throws IOException {
+    Cache<ByteBuffer, Object> cache = caches.get(message);
+    if (cache != null) {
+      cache.invalidate(getKey(message, args));
+    }
+  }
+
+  public void invalidateAll() {
+    caches.values().forEach(Cache::invalidateAll);
+  }
+
+  public boolean isCacheable(String message) {
+    return caches.containsKey(message);
+  }
+
+  public void put(String message, ByteBuffer request, Object response) {
+    Cache<ByteBuffer, Object> cache = caches.get(message);
+    if (cache != null && response != null) {
+      cache.put(request, response);
+    }
+  }
+}
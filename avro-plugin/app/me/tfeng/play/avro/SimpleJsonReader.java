@@ -0,0 +1,226 @@
+/**
+ * Copyright 2014 Thomas Feng
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.tfeng.play.avro;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.avro.AvroTypeException;
+import org.apache.avro.Schema;
+import org.apache.avro.Schema.Field;
+import org.apache.avro.generic.GenericData;
+import org.apache.avro.util.Utf8;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+/**
+ * Reads data in the "simple" JSON format (union values without type wrappers when the union has
+ * only one non-null type, and missing fields filled with defaults) in a single pass over Jackson's
+ * streaming parser.
+ *
+ * @author Thomas Feng (huining.feng@gmail.com)
+ */
+public class SimpleJsonReader<T> {
+
+  private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+  private static final String STRING_PROP = "avro.java.string";
+
+  private final GenericData data;
+
+  private final Schema schema;
+
+  public SimpleJsonReader(Schema schema, GenericData data) {
+    this.schema = schema;
+    this.data = data;
+  }
+
+  public T read(byte[] bytes) throws IOException {
+    JsonParser parser = JSON_FACTORY.createParser(bytes);
+    try {
+      parser.nextToken();
+      return read(parser);
+    } finally {
+      parser.close();
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  public T read(JsonParser parser) throws IOException {
+    return (T) read(schema, parser);
+  }
+
+  private void expect(JsonToken expected, JsonParser parser) throws IOException {
+    if (parser.getCurrentToken() != expected) {
+      throw new AvroTypeException("Expected " + expected + "; got " + parser.getCurrentToken());
+    }
+  }
+
+  private boolean isNullable(Schema schema) {
+    switch (schema.getType()) {
+    case NULL:
+      return true;
+    case UNION:
+      return schema.getTypes().stream().anyMatch(type -> type.getType() == Schema.Type.NULL);
+    default:
+      return false;
+    }
+  }
+
+  private Object read(Schema schema, JsonParser parser) throws IOException {
+    JsonToken token = parser.getCurrentToken();
+    switch (schema.getType()) {
+    case RECORD:
+      return readRecord(schema, parser);
+    case UNION:
+      return readUnion(schema, parser);
+    case ARRAY:
+      expect(JsonToken.START_ARRAY, parser);
+      GenericData.Array<Object> array = new GenericData.Array<>(10, schema);
+      while (parser.nextToken() != JsonToken.END_ARRAY) {
+        array.add(read(schema.getElementType(), parser));
+      }
+      return array;
+    case MAP:
+      expect(JsonToken.START_OBJECT, parser);
+      Map<Object, Object> map = new HashMap<>();
+      while (parser.nextToken() == JsonToken.FIELD_NAME) {
+        Object key = readString(schema, parser.getCurrentName());
+        parser.nextToken();
+        map.put(key, read(schema.getValueType(), parser));
+      }
+      expect(JsonToken.END_OBJECT, parser);
+      return map;
+    case ENUM:
+      expect(JsonToken.VALUE_STRING, parser);
+      return data.createEnum(parser.getText(), schema);
+    case FIXED:
+      expect(JsonToken.VALUE_STRING, parser);
+      byte[] fixed = parser.getText().getBytes(StandardCharsets.ISO_8859_1);
+      if (fixed.length != schema.getFixedSize()) {
+        throw new AvroTypeException("Expected fixed length " + schema.getFixedSize() + "; got "
+            + fixed.length);
+      }
+      return data.createFixed(null, fixed, schema);
+    case STRING:
+      expect(JsonToken.VALUE_STRING, parser);
+      return readString(schema, parser.getText());
+    case BYTES:
+      expect(JsonToken.VALUE_STRING, parser);
+      return ByteBuffer.wrap(parser.getText().getBytes(StandardCharsets.ISO_8859_1));
+    case INT:
+      expect(JsonToken.VALUE_NUMBER_INT, parser);
+      return parser.getIntValue();
+    case LONG:
+      expect(JsonToken.VALUE_NUMBER_INT, parser);
+      return parser.getLongValue();
+    case FLOAT:
+      if (token != JsonToken.VALUE_NUMBER_INT) {
+        expect(JsonToken.VALUE_NUMBER_FLOAT, parser);
+      }
+      return parser.getFloatValue();
+    case DOUBLE:
+      if (token != JsonToken.VALUE_NUMBER_INT) {
+        expect(JsonToken.VALUE_NUMBER_FLOAT, parser);
+      }
+      return parser.getDoubleValue();
+    case BOOLEAN:
+      if (token != JsonToken.VALUE_TRUE) {
+        expect(JsonToken.VALUE_FALSE, parser);
+      }
+      return parser.getBooleanValue();
+    case NULL:
+      expect(JsonToken.VALUE_NULL, parser);
+      return null;
+    default:
+      throw new AvroTypeException("Unsupported schema type " + schema.getType());
+    }
+  }
+
+  private Object readRecord(Schema schema, JsonParser parser) throws IOException {
+    expect(JsonToken.START_OBJECT, parser);
+    List<Field> fields = schema.getFields();
+    Object record = data.newRecord(null, schema);
+    boolean[] isSet = new boolean[fields.size()];
+    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+      Field field = schema.getField(parser.getCurrentName());
+      parser.nextToken();
+      if (field == null) {
+        parser.skipChildren();
+      } else {
+        data.setField(record, field.name(), field.pos(), read(field.schema(), parser));
+        isSet[field.pos()] = true;
+      }
+    }
+    expect(JsonToken.END_OBJECT, parser);
+    for (Field field : fields) {
+      if (!isSet[field.pos()]) {
+        Object value;
+        if (field.defaultValue() != null) {
+          value = data.deepCopy(field.schema(), data.getDefaultValue(field));
+        } else if (isNullable(field.schema())) {
+          value = null;
+        } else {
+          throw new AvroTypeException("Expected field name not found: " + field.name() + " in "
+              + schema.getFullName());
+        }
+        data.setField(record, field.name(), field.pos(), value);
+      }
+    }
+    return record;
+  }
+
+  private Object readString(Schema schema, String text) {
+    return "String".equals(schema.getProp(STRING_PROP)) ? text : new Utf8(text);
+  }
+
+  private Object readUnion(Schema schema, JsonParser parser) throws IOException {
+    if (parser.getCurrentToken() == JsonToken.VALUE_NULL) {
+      return null;
+    }
+
+    Schema type = AvroHelper.getSimpleUnionType(schema);
+    if (type != null) {
+      return read(type, parser);
+    }
+
+    expect(JsonToken.START_OBJECT, parser);
+    parser.nextToken();
+    expect(JsonToken.FIELD_NAME, parser);
+    String typeName = parser.getCurrentName();
+    for (Schema unionType : schema.getTypes()) {
+      if (unionType.getFullName().equals(typeName)) {
+        parser.nextToken();
+        Object value = read(unionType, parser);
+        parser.nextToken();
+        expect(JsonToken.END_OBJECT, parser);
+        return value;
+      }
+    }
+    throw new IOException("Unable to get schema for type " + typeName + " in union");
+  }
+}
@@ -0,0 +1,155 @@
+/**
+ * Copyright 2014 Thomas Feng
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.tfeng.play.avro;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import org.apache.avro.AvroTypeException;
+import org.apache.avro.Schema;
+import org.apache.avro.Schema.Field;
+import org.apache.avro.Schema.Type;
+import org.apache.avro.generic.GenericData;
+import org.apache.avro.generic.GenericFixed;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+
+/**
+ * Writes data in the "simple" JSON format (null fields omitted, and union values without type
+ * wrappers when the union has only one non-null type) in a single pass to Jackson's streaming
+ * generator.
+ *
+ * @author Thomas Feng (huining.feng@gmail.com)
+ */
+public class SimpleJsonWriter<T> {
+
+  private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+  private final GenericData data;
+
+  private final Schema schema;
+
+  public SimpleJsonWriter(Schema schema, GenericData data) {
+    this.schema = schema;
+    this.data = data;
+  }
+
+  public String toJson(T datum) throws IOException {
+    StringWriter writer = new StringWriter();
+    JsonGenerator generator = JSON_FACTORY.createGenerator(writer);
+    try {
+      write(datum, generator);
+    } finally {
+      generator.close();
+    }
+    return writer.toString();
+  }
+
+  public void write(T datum, JsonGenerator generator) throws IOException {
+    write(schema, datum, generator);
+  }
+
+  private void write(Schema schema, Object datum, JsonGenerator generator) throws IOException {
+    switch (schema.getType()) {
+    case RECORD:
+      generator.writeStartObject();
+      for (Field field : schema.getFields()) {
+        Object value = data.getField(datum, field.name(), field.pos());
+        if (value != null) {
+          generator.writeFieldName(field.name());
+          write(field.schema(), value, generator);
+        }
+      }
+      generator.writeEndObject();
+      break;
+    case UNION:
+      Schema type = schema.getTypes().get(data.resolveUnion(schema, datum));
+      if (type.getType() == Type.NULL) {
+        generator.writeNull();
+      } else if (AvroHelper.getSimpleUnionType(schema) != null) {
+        write(type, datum, generator);
+      } else {
+        generator.writeStartObject();
+        generator.writeFieldName(type.getFullName());
+        write(type, datum, generator);
+        generator.writeEndObject();
+      }
+      break;
+    case ARRAY:
+      generator.writeStartArray();
+      for (Object element : (Collection<?>) datum) {
+        write(schema.getElementType(), element, generator);
+      }
+      generator.writeEndArray();
+      break;
+    case MAP:
+      generator.writeStartObject();
+      for (Entry<?, ?> entry : ((Map<?, ?>) datum).entrySet()) {
+        if (entry.getValue() != null) {
+          generator.writeFieldName(entry.getKey().toString());
+          write(schema.getValueType(), entry.getValue(), generator);
+        }
+      }
+      generator.writeEndObject();
+      break;
+    case ENUM:
+    case STRING:
+      generator.writeString(datum.toString());
+      break;
+    case FIXED:
+      generator.writeString(new String(((GenericFixed) datum).bytes(),
+          StandardCharsets.ISO_8859_1));
+      break;
+    case BYTES:
+      ByteBuffer buffer = ((ByteBuffer) datum).duplicate();
+      byte[] bytes = new byte[buffer.remaining()];
+      buffer.get(bytes);
+      generator.writeString(new String(bytes, StandardCharsets.ISO_8859_1));
+      break;
+    case INT:
+      generator.writeNumber(((Number) datum).intValue());
+      break;
+    case LONG:
+      generator.writeNumber(((Number) datum).longValue());
+      break;
+    case FLOAT:
+      generator.writeNumber(((Number) datum).floatValue());
+      break;
+    case DOUBLE:
+      generator.writeNumber(((Number) datum).doubleValue());
+      break;
+    case BOOLEAN:
+      generator.writeBoolean((Boolean) datum);
+      break;
+    case NULL:
+      generator.writeNull();
+      break;
+    default:
+      throw new AvroTypeException("Unsupported schema type " + schema.getType());
+    }
+  }
+}
@@ -0,0 +1,137 @@
+/**
+ * Copyright 2014 Thomas Feng
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.tfeng.play.avro;
+
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.List;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelHandlerContext;
+import org.jboss.netty.handler.codec.frame.LengthFieldBasedFrameDecoder;
+import org.jboss.netty.handler.codec.frame.TooLongFrameException;
+import org.jboss.netty.handler.codec.oneone.OneToOneEncoder;
+
+/**
+ * @author Thomas Feng (huining.feng@gmail.com)
+ */
+public class SocketFrame {
+
+  public static class Decoder extends LengthFieldBasedFrameDecoder {
+
+    private volatile long maxLength;
+
+    public Decoder() {
+      this(MAX_FRAME_LENGTH);
+    }
+
+    public Decoder(long maxLength) {
+      super(Integer.MAX_VALUE, 4, 4);
+      this.maxLength = maxLength;
+    }
+
+    public long getMaxLength() {
+      return maxLength;
+    }
+
+    /**
+     * Sets the largest payload accepted in a frame, or a negative value for no limit. Frames with
+     * larger payloads fail the channel as soon as their headers are read.
+     */
+    public void setMaxLength(long maxLength) {
+      this.maxLength = maxLength;
+    }
+
+    @Override
+    protected Object decode(ChannelHandlerContext context, Channel channel, ChannelBuffer buffer)
+        throws Exception {
+      long currentMaxLength = maxLength;
+      if (currentMaxLength >= 0 && buffer.readableBytes() >= 8) {
+        int length = buffer.getInt(buffer.readerIndex() + 4);
+        if (length > currentMaxLength) {
+          throw new TooLongFrameException("Frame of " + length
+              + " bytes is larger than the limit of " + currentMaxLength + " bytes");
+        }
+      }
+      ChannelBuffer frame = (ChannelBuffer) super.decode(context, channel, buffer);
+      if (frame == null) {
+        return null;
+      }
+      int serial = frame.readInt();
+      frame.skipBytes(4);
+      if (frame.readable()) {
+        return new SocketFrame(serial, Collections.singletonList(frame.toByteBuffer()));
+      } else {
+        return new SocketFrame(serial, Collections.emptyList());
+      }
+    }
+  }
+
+  public static class Encoder extends OneToOneEncoder {
+
+    @Override
+    protected Object encode(ChannelHandlerContext context, Channel channel, Object message)
+        throws Exception {
+      if (!(message instanceof SocketFrame)) {
+        return message;
+      }
+      SocketFrame frame = (SocketFrame) message;
+      ByteBuffer[] buffers = new ByteBuffer[frame.buffers.size() + 1];
+      int length = 0;
+      for (int i = 0; i < frame.buffers.size(); i++) {
+        buffers[i + 1] = frame.buffers.get(i);
+        length += buffers[i + 1].remaining();
+      }
+      buffers[0] = ByteBuffer.allocate(8);
+      buffers[0].putInt(0, frame.serial).putInt(4, length);
+      // Payload buffers are written as they are without being copied.
+      return ChannelBuffers.wrappedBuffer(buffers);
+    }
+  }
+
+  // The first frame on a connection carries the name of the protocol it is bound to.
+  public static final int BIND_SERIAL = 0;
+
+  public static final int MAX_FRAME_LENGTH = 64 * 1024 * 1024;
+
+  private final List<ByteBuffer> buffers;
+
+  private final int serial;
+
+  public SocketFrame(int serial, List<ByteBuffer> buffers) {
+    this.serial = serial;
+    this.buffers = buffers;
+  }
+
+  public List<ByteBuffer> getBuffers() {
+    return buffers;
+  }
+
+  public int getSerial() {
+    return serial;
+  }
+
+  public boolean isEmpty() {
+    return buffers.isEmpty();
+  }
+}
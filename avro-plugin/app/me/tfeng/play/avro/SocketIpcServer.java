@@ -0,0 +1,222 @@
+/**
+ * Copyright 2014 Thomas Feng
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.tfeng.play.avro;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.function.BiPredicate;
+import java.util.function.Function;
+import java.util.function.ToLongFunction;
+
+import org.jboss.netty.bootstrap.ServerBootstrap;
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelFactory;
+import org.jboss.netty.channel.ChannelHandlerContext;
+import org.jboss.netty.channel.ChannelStateEvent;
+import org.jboss.netty.channel.Channels;
+import org.jboss.netty.channel.ExceptionEvent;
+import org.jboss.netty.channel.MessageEvent;
+import org.jboss.netty.channel.SimpleChannelUpstreamHandler;
+import org.jboss.netty.channel.group.ChannelGroup;
+import org.jboss.netty.channel.group.DefaultChannelGroup;
+import org.jboss.netty.channel.socket.nio.NioServerSocketChannelFactory;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import me.tfeng.play.common.Constants;
+import play.Logger;
+import play.Logger.ALogger;
+import play.libs.F.Promise;
+import scala.concurrent.ExecutionContext;
+
+/**
+ * @author Thomas Feng (huining.feng@gmail.com)
+ */
+public class SocketIpcServer implements Closeable {
+
+  private class ConnectionHandler extends SimpleChannelUpstreamHandler {
+
+    private ResponderConnection connection;
+
+    private final SocketFrame.Decoder decoder;
+
+    private AsyncResponder responder;
+
+    public ConnectionHandler(SocketFrame.Decoder decoder) {
+      this.decoder = decoder;
+    }
+
+    @Override
+    public void channelOpen(ChannelHandlerContext context, ChannelStateEvent event) {
+      channels.add(event.getChannel());
+      connection =
+          new ResponderConnection(String.valueOf(event.getChannel().getRemoteAddress()));
+    }
+
+    @Override
+    public void exceptionCaught(ChannelHandlerContext context, ExceptionEvent event) {
+      LOG.warn("Exception thrown from connection " + event.getChannel().getRemoteAddress()
+          + "; closing connection", event.getCause());
+      event.getChannel().close();
+    }
+
+    @Override
+    public void messageReceived(ChannelHandlerContext context, MessageEvent event) {
+      SocketFrame frame = (SocketFrame) event.getMessage();
+      Channel channel = event.getChannel();
+      if (responder == null) {
+        bind(channel, frame);
+        return;
+      }
+
+      // Requests are decoded and handled off the I/O thread, which other connections share.
+      int serial = frame.getSerial();
+      AsyncResponder currentResponder = responder;
+      Promise<List<ByteBuffer>> response = Promise.promise(
+          () -> currentResponder.asyncRespond(frame.getBuffers(), connection), executionContext)
+          .flatMap(promise -> promise, executionContext);
+      response.onRedeem(buffers -> channel.write(new SocketFrame(serial, buffers)));
+      response.onFailure(t -> {
+        LOG.warn("Unable to process request from " + channel.getRemoteAddress(), t);
+        channel.write(new SocketFrame(serial, getErrorBuffers(channel, currentResponder, t)));
+      });
+    }
+
+    private void bind(Channel channel, SocketFrame frame) {
+      // Frames are decoded into single buffers.
+      String protocol = frame.isEmpty() ? ""
+          : Constants.UTF8.decode(frame.getBuffers().get(0).duplicate()).toString();
+      try {
+        if (frame.getSerial() != SocketFrame.BIND_SERIAL) {
+          throw new RuntimeException("Connection is not bound to a protocol");
+        }
+        BiPredicate<SocketAddress, String> currentAuthorizer = authorizer;
+        if (currentAuthorizer != null
+            && !currentAuthorizer.test(channel.getRemoteAddress(), protocol)) {
+          throw new RuntimeException("Connection is not authorized to call protocol");
+        }
+        responder = responders.apply(protocol);
+        decoder.setMaxLength(maxRequestSizes.applyAsLong(protocol));
+      } catch (RuntimeException e) {
+        LOG.warn("Unable to bind connection " + channel.getRemoteAddress() + " to protocol "
+            + protocol + "; closing connection", e);
+        channel.close();
+      }
+    }
+
+    private List<ByteBuffer> getErrorBuffers(Channel channel, AsyncResponder responder,
+        Throwable t) {
+      if (!connection.isConnected()) {
+        // Without a completed handshake, the client is unable to read an error response.
+        return Collections.emptyList();
+      }
+      try {
+        Exception error = t instanceof Exception ? (Exception) t : new RuntimeException(t);
+        return responder.getSystemErrorBuffers(error);
+      } catch (Exception e) {
+        LOG.warn("Unable to write error response to " + channel.getRemoteAddress(), e);
+        return Collections.emptyList();
+      }
+    }
+  }
+
+  private static final ALogger LOG = Logger.of(SocketIpcServer.class);
+
+  // Frames received before connections are bound only carry protocol names.
+  private static final int MAX_BIND_LENGTH = 1024;
+
+  private volatile BiPredicate<SocketAddress, String> authorizer;
+
+  private final ChannelFactory channelFactory;
+
+  private final ChannelGroup channels = new DefaultChannelGroup(SocketIpcServer.class.getName());
+
+  private final ExecutionContext executionContext;
+
+  private volatile ToLongFunction<String> maxRequestSizes =
+      protocol -> SocketFrame.MAX_FRAME_LENGTH;
+
+  private final Function<String, AsyncResponder> responders;
+
+  private final Channel serverChannel;
+
+  public SocketIpcServer(InetSocketAddress address, Function<String, AsyncResponder> responders,
+      ExecutionContext executionContext) {
+    this.responders = responders;
+    this.executionContext = executionContext;
+    channelFactory = new NioServerSocketChannelFactory(
+        Executors.newCachedThreadPool(new ThreadFactoryBuilder()
+            .setNameFormat("avro-socket-server-boss-%d").setDaemon(true).build()),
+        Executors.newCachedThreadPool(new ThreadFactoryBuilder()
+            .setNameFormat("avro-socket-server-worker-%d").setDaemon(true).build()));
+    ServerBootstrap bootstrap = new ServerBootstrap(channelFactory);
+    bootstrap.setPipelineFactory(() -> {
+      SocketFrame.Decoder decoder = new SocketFrame.Decoder(MAX_BIND_LENGTH);
+      return Channels.pipeline(decoder, new SocketFrame.Encoder(), new ConnectionHandler(decoder));
+    });
+    bootstrap.setOption("child.tcpNoDelay", true);
+    bootstrap.setOption("child.keepAlive", true);
+    serverChannel = bootstrap.bind(address);
+    channels.add(serverChannel);
+  }
+
+  @Override
+  public void close() {
+    channels.close().awaitUninterruptibly();
+    channelFactory.releaseExternalResources();
+  }
+
+  public BiPredicate<SocketAddress, String> getAuthorizer() {
+    return authorizer;
+  }
+
+  public ToLongFunction<String> getMaxRequestSizes() {
+    return maxRequestSizes;
+  }
+
+  public int getPort() {
+    return ((InetSocketAddress) serverChannel.getLocalAddress()).getPort();
+  }
+
+  /**
+   * Sets the predicate that decides, from their remote addresses and the names of the protocols
+   * that they bind to, which connections are accepted. Socket calls carry no HTTP headers and
+   * therefore no OAuth tokens, so without an authorizer the port must only be reachable from
+   * trusted hosts.
+   */
+  public void setAuthorizer(BiPredicate<SocketAddress, String> authorizer) {
+    this.authorizer = authorizer;
+  }
+
+  /**
+   * Sets the function that returns the largest request accepted on connections bound to each
+   * protocol, or a negative value for no limit. Connections that send larger requests are closed.
+   */
+  public void setMaxRequestSizes(ToLongFunction<String> maxRequestSizes) {
+    this.maxRequestSizes = maxRequestSizes;
+  }
+}
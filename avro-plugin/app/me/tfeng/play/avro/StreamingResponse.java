@@ -0,0 +1,224 @@
+/**
+ * Copyright 2014 Thomas Feng
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.tfeng.play.avro;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.avro.io.BinaryData;
+import org.apache.avro.io.BinaryEncoder;
+import org.apache.avro.io.DatumWriter;
+import org.apache.avro.io.EncoderFactory;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+
+import play.mvc.Http;
+
+/**
+ * @author Thomas Feng (huining.feng@gmail.com)
+ */
+public class StreamingResponse {
+
+  private class FrameInputStream extends InputStream {
+
+    private ByteBuffer current = ByteBuffer.allocate(0);
+
+    private final Iterator<ByteBuffer> headIterator = buffers.iterator();
+
+    private boolean finished;
+
+    @Override
+    public void close() {
+      finished = true;
+      finish();
+    }
+
+    @Override
+    public int read() throws IOException {
+      if (!ensureAvailable()) {
+        return -1;
+      }
+      return current.get() & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+      if (len == 0) {
+        return 0;
+      }
+      if (!ensureAvailable()) {
+        return -1;
+      }
+      int length = Math.min(len, current.remaining());
+      current.get(b, off, length);
+      return length;
+    }
+
+    private boolean ensureAvailable() throws IOException {
+      while (!current.hasRemaining()) {
+        if (finished) {
+          return false;
+        }
+        current = nextFrame();
+      }
+      return true;
+    }
+
+    private ByteBuffer nextFrame() throws IOException {
+      while (headIterator.hasNext()) {
+        ByteBuffer buffer = headIterator.next();
+        if (buffer.hasRemaining()) {
+          ByteBuffer frame = ByteBuffer.allocate(4 + buffer.remaining());
+          frame.putInt(buffer.remaining()).put(buffer.duplicate()).flip();
+          return frame;
+        }
+      }
+
+      if (elements == null || !elements.hasNext()) {
+        // The end of the array, followed by the end of the frames.
+        finished = true;
+        finish();
+        ByteBuffer frame = ByteBuffer.allocate(9);
+        if (elements == null) {
+          frame.limit(4);
+        } else {
+          frame.putInt(1).put((byte) 0);
+        }
+        frame.putInt(0).flip();
+        return frame;
+      }
+
+      // Elements may be produced lazily by impl, so they are encoded in the scope of the call.
+      ByteArrayOutputStream stream = new ByteArrayOutputStream(chunkSize + 1024);
+      encoder = EncoderFactory.get().binaryEncoder(stream, encoder);
+      Authentication currentAuthentication =
+          SecurityContextHolder.getContext().getAuthentication();
+      Http.Context currentHttpContext = Http.Context.current.get();
+      SecurityContextHolder.getContext().setAuthentication(authentication);
+      Http.Context.current.set(httpContext);
+      long count;
+      try {
+        count = callContext == null ? writeElements(stream)
+            : callContext.call(() -> writeElements(stream));
+      } catch (Exception e) {
+        finished = true;
+        finish();
+        throw new IOException("Unable to stream response", e);
+      } finally {
+        SecurityContextHolder.getContext().setAuthentication(currentAuthentication);
+        Http.Context.current.set(currentHttpContext);
+      }
+
+      byte[] countBytes = new byte[10];
+      int countLength = BinaryData.encodeLong(count, countBytes, 0);
+      int length = countLength + stream.size();
+      ByteBuffer frame = ByteBuffer.allocate(4 + length);
+      frame.putInt(length).put(countBytes, 0, countLength).put(stream.toByteArray()).flip();
+      return frame;
+    }
+
+    private long writeElements(ByteArrayOutputStream stream) throws IOException {
+      long count = 0;
+      do {
+        elementWriter.write(elements.next(), encoder);
+        encoder.flush();
+        count++;
+      } while (stream.size() < chunkSize && elements.hasNext());
+      return count;
+    }
+  }
+
+  public static final String ACCEPT_STREAMING_HEADER = "Avro-Accept-Streaming";
+
+  private final Authentication authentication;
+
+  private final List<ByteBuffer> buffers;
+
+  private final CallContext callContext;
+
+  private final int chunkSize;
+
+  private final AtomicReference<Runnable> closeHandler = new AtomicReference<>();
+
+  private volatile boolean done;
+
+  private final DatumWriter<Object> elementWriter;
+
+  private final Iterator<?> elements;
+
+  private BinaryEncoder encoder;
+
+  private final Http.Context httpContext;
+
+  public StreamingResponse(List<ByteBuffer> buffers) {
+    this(buffers, null, null, 0);
+  }
+
+  public StreamingResponse(List<ByteBuffer> head, DatumWriter<Object> elementWriter,
+      Iterator<?> elements, int chunkSize) {
+    this.buffers = head;
+    this.elementWriter = elementWriter;
+    this.elements = elements;
+    this.chunkSize = chunkSize;
+    authentication = SecurityContextHolder.getContext().getAuthentication();
+    callContext = CallContext.current();
+    httpContext = Http.Context.current.get();
+  }
+
+  public List<ByteBuffer> getBuffers() {
+    return buffers;
+  }
+
+  public boolean isStreamed() {
+    return elements != null;
+  }
+
+  public void onClose(Runnable handler) {
+    // Streamed responses are done when their streams are closed or exhausted; others right away.
+    closeHandler.set(handler);
+    if (!isStreamed() || done) {
+      runCloseHandler();
+    }
+  }
+
+  public InputStream openStream() {
+    // Frames are produced as the stream is read; array elements are encoded in blocks of about
+    // chunkSize bytes, which is a valid encoding of the whole array for any Avro decoder.
+    return new FrameInputStream();
+  }
+
+  private void finish() {
+    done = true;
+    runCloseHandler();
+  }
+
+  private void runCloseHandler() {
+    Runnable handler = closeHandler.getAndSet(null);
+    if (handler != null) {
+      handler.run();
+    }
+  }
+}
@@ -0,0 +1,686 @@
+/**
+ * Copyright 2014 Thomas Feng
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.tfeng.play.avro.codec;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.nio.ByteBuffer;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import org.apache.avro.AvroRuntimeException;
+import org.apache.avro.Schema;
+import org.apache.avro.generic.GenericData;
+import org.apache.avro.generic.IndexedRecord;
+import org.apache.avro.io.Decoder;
+import org.apache.avro.io.Encoder;
+import org.apache.avro.specific.SpecificData;
+import org.apache.avro.specific.SpecificDatumReader;
+import org.apache.avro.specific.SpecificDatumWriter;
+import org.apache.avro.specific.SpecificRecord;
+import org.apache.avro.util.Utf8;
+
+import com.google.common.base.Throwables;
+
+/**
+ * @author Thomas Feng (huining.feng@gmail.com)
+ */
+public class Codecs {
+
+  private static class ArrayCodec extends Codec {
+
+    private final Codec elementCodec;
+
+    private final Schema schema;
+
+    public ArrayCodec(Schema schema, Codec elementCodec) {
+      this.schema = schema;
+      this.elementCodec = elementCodec;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public Object read(Object reuse, Decoder in) throws IOException {
+      long count = in.readArrayStart();
+      GenericData.Array<Object> array;
+      if (reuse instanceof GenericData.Array) {
+        array = (GenericData.Array<Object>) reuse;
+        array.clear();
+      } else {
+        array = new GenericData.Array<>((int) count, schema);
+      }
+      while (count > 0) {
+        for (long i = 0; i < count; i++) {
+          array.add(elementCodec.read(null, in));
+        }
+        count = in.arrayNext();
+      }
+      return array;
+    }
+
+    @Override
+    public void write(Object datum, Encoder out) throws IOException {
+      try {
+        Collection<?> collection = (Collection<?>) datum;
+        out.writeArrayStart();
+        out.setItemCount(collection.size());
+        for (Object element : collection) {
+          out.startItem();
+          elementCodec.write(element, out);
+        }
+        out.writeArrayEnd();
+      } catch (NullPointerException e) {
+        throw npe(e, schema);
+      }
+    }
+  }
+
+  private static class EnumCodec extends Codec {
+
+    private final Object[] constants;
+
+    private final Schema schema;
+
+    public EnumCodec(Schema schema, Class<?> enumClass) {
+      this.schema = schema;
+      constants = enumClass.getEnumConstants();
+    }
+
+    @Override
+    public Object read(Object reuse, Decoder in) throws IOException {
+      return constants[in.readEnum()];
+    }
+
+    @Override
+    public void write(Object datum, Encoder out) throws IOException {
+      try {
+        if (datum instanceof Enum) {
+          out.writeEnum(((Enum<?>) datum).ordinal());
+        } else {
+          out.writeEnum(schema.getEnumOrdinal(datum.toString()));
+        }
+      } catch (NullPointerException e) {
+        throw npe(e, schema);
+      }
+    }
+  }
+
+  private static abstract class FieldCodec {
+
+    private final String name;
+
+    protected FieldCodec(String name) {
+      this.name = name;
+    }
+
+    public abstract void read(Object record, Decoder in) throws IOException;
+
+    public void write(Object record, Encoder out) throws IOException {
+      try {
+        writeValue(record, out);
+      } catch (NullPointerException e) {
+        throw npe(e, " in field " + name);
+      }
+    }
+
+    protected abstract void writeValue(Object record, Encoder out) throws IOException;
+  }
+
+  private static class GenericCodec extends Codec {
+
+    private final SpecificDatumReader<Object> reader;
+
+    private final SpecificDatumWriter<Object> writer;
+
+    public GenericCodec(Schema schema, SpecificData data) {
+      reader = new SpecificDatumReader<>(schema, schema, data);
+      writer = new SpecificDatumWriter<>(schema, data);
+    }
+
+    @Override
+    public Object read(Object reuse, Decoder in) throws IOException {
+      return reader.read(reuse, in);
+    }
+
+    @Override
+    public void write(Object datum, Encoder out) throws IOException {
+      writer.write(datum, out);
+    }
+  }
+
+  private static class IndexedField extends FieldCodec {
+
+    private final Codec codec;
+
+    private final int position;
+
+    public IndexedField(String name, int position, Codec codec) {
+      super(name);
+      this.position = position;
+      this.codec = codec;
+    }
+
+    @Override
+    public void read(Object record, Decoder in) throws IOException {
+      ((IndexedRecord) record).put(position, codec.read(null, in));
+    }
+
+    @Override
+    protected void writeValue(Object record, Encoder out) throws IOException {
+      codec.write(((IndexedRecord) record).get(position), out);
+    }
+  }
+
+  private static class MapCodec extends Codec {
+
+    private final StringCodec keyCodec;
+
+    private final Schema schema;
+
+    private final Codec valueCodec;
+
+    public MapCodec(Schema schema, StringCodec keyCodec, Codec valueCodec) {
+      this.schema = schema;
+      this.keyCodec = keyCodec;
+      this.valueCodec = valueCodec;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public Object read(Object reuse, Decoder in) throws IOException {
+      long count = in.readMapStart();
+      Map<Object, Object> map;
+      if (reuse instanceof HashMap) {
+        map = (Map<Object, Object>) reuse;
+        map.clear();
+      } else {
+        map = new HashMap<>();
+      }
+      while (count > 0) {
+        for (long i = 0; i < count; i++) {
+          Object key = keyCodec.read(null, in);
+          map.put(key, valueCodec.read(null, in));
+        }
+        count = in.mapNext();
+      }
+      return map;
+    }
+
+    @Override
+    public void write(Object datum, Encoder out) throws IOException {
+      try {
+        Map<?, ?> map = (Map<?, ?>) datum;
+        out.writeMapStart();
+        out.setItemCount(map.size());
+        for (Entry<?, ?> entry : map.entrySet()) {
+          out.startItem();
+          keyCodec.write(entry.getKey(), out);
+          valueCodec.write(entry.getValue(), out);
+        }
+        out.writeMapEnd();
+      } catch (NullPointerException e) {
+        throw npe(e, schema);
+      }
+    }
+  }
+
+  private static class ObjectField extends FieldCodec {
+
+    private final Codec codec;
+
+    private final MethodHandle getter;
+
+    private final MethodHandle setter;
+
+    public ObjectField(String name, Field field, Codec codec) {
+      super(name);
+      getter = getter(field, Object.class);
+      setter = setter(field, Object.class);
+      this.codec = codec;
+    }
+
+    @Override
+    public void read(Object record, Decoder in) throws IOException {
+      Object value = codec.read(null, in);
+      try {
+        setter.invokeExact(record, value);
+      } catch (Throwable t) {
+        throw Throwables.propagate(t);
+      }
+    }
+
+    @Override
+    protected void writeValue(Object record, Encoder out) throws IOException {
+      Object value;
+      try {
+        value = (Object) getter.invokeExact(record);
+      } catch (Throwable t) {
+        throw Throwables.propagate(t);
+      }
+      codec.write(value, out);
+    }
+  }
+
+  private static class PrimitiveCodec extends Codec {
+
+    private final Schema schema;
+
+    public PrimitiveCodec(Schema schema) {
+      this.schema = schema;
+    }
+
+    @Override
+    public Object read(Object reuse, Decoder in) throws IOException {
+      switch (schema.getType()) {
+      case BOOLEAN:
+        return in.readBoolean();
+      case BYTES:
+        return in.readBytes(reuse instanceof ByteBuffer ? (ByteBuffer) reuse : null);
+      case DOUBLE:
+        return in.readDouble();
+      case FLOAT:
+        return in.readFloat();
+      case INT:
+        return in.readInt();
+      case LONG:
+        return in.readLong();
+      default:
+        in.readNull();
+        return null;
+      }
+    }
+
+    @Override
+    public void write(Object datum, Encoder out) throws IOException {
+      try {
+        switch (schema.getType()) {
+        case BOOLEAN:
+          out.writeBoolean((Boolean) datum);
+          break;
+        case BYTES:
+          out.writeBytes((ByteBuffer) datum);
+          break;
+        case DOUBLE:
+          out.writeDouble((Double) datum);
+          break;
+        case FLOAT:
+          out.writeFloat((Float) datum);
+          break;
+        case INT:
+          out.writeInt((Integer) datum);
+          break;
+        case LONG:
+          out.writeLong((Long) datum);
+          break;
+        default:
+          out.writeNull();
+        }
+      } catch (NullPointerException e) {
+        throw npe(e, schema);
+      }
+    }
+  }
+
+  private static class PrimitiveField extends FieldCodec {
+
+    private final MethodHandle getter;
+
+    private final MethodHandle setter;
+
+    private final Schema.Type type;
+
+    public PrimitiveField(String name, Field field) {
+      super(name);
+      getter = getter(field, field.getType());
+      setter = setter(field, field.getType());
+      type = getPrimitiveType(field.getType());
+    }
+
+    @Override
+    public void read(Object record, Decoder in) throws IOException {
+      // Calls are exact per type, so that values are never boxed.
+      try {
+        switch (type) {
+        case BOOLEAN:
+          setter.invokeExact(record, in.readBoolean());
+          break;
+        case DOUBLE:
+          setter.invokeExact(record, in.readDouble());
+          break;
+        case FLOAT:
+          setter.invokeExact(record, in.readFloat());
+          break;
+        case INT:
+          setter.invokeExact(record, in.readInt());
+          break;
+        default:
+          setter.invokeExact(record, in.readLong());
+        }
+      } catch (Throwable t) {
+        Throwables.propagateIfInstanceOf(t, IOException.class);
+        throw Throwables.propagate(t);
+      }
+    }
+
+    @Override
+    protected void writeValue(Object record, Encoder out) throws IOException {
+      try {
+        switch (type) {
+        case BOOLEAN:
+          out.writeBoolean((boolean) getter.invokeExact(record));
+          break;
+        case DOUBLE:
+          out.writeDouble((double) getter.invokeExact(record));
+          break;
+        case FLOAT:
+          out.writeFloat((float) getter.invokeExact(record));
+          break;
+        case INT:
+          out.writeInt((int) getter.invokeExact(record));
+          break;
+        default:
+          out.writeLong((long) getter.invokeExact(record));
+        }
+      } catch (Throwable t) {
+        Throwables.propagateIfInstanceOf(t, IOException.class);
+        throw Throwables.propagate(t);
+      }
+    }
+  }
+
+  private static class RecordCodec extends Codec {
+
+    private MethodHandle constructor;
+
+    private FieldCodec[] fields;
+
+    private boolean isSpecific;
+
+    private Class<?> recordClass;
+
+    private Schema schema;
+
+    @Override
+    public Object read(Object reuse, Decoder in) throws IOException {
+      Object record;
+      if (recordClass.isInstance(reuse)
+          && (isSpecific || ((IndexedRecord) reuse).getSchema() == schema)) {
+        record = reuse;
+      } else {
+        try {
+          record = (Object) constructor.invokeExact();
+        } catch (Throwable t) {
+          throw Throwables.propagate(t);
+        }
+      }
+      for (FieldCodec field : fields) {
+        field.read(record, in);
+      }
+      return record;
+    }
+
+    @Override
+    public void write(Object datum, Encoder out) throws IOException {
+      if (datum == null) {
+        throw npe(new NullPointerException(), schema);
+      }
+      try {
+        for (FieldCodec field : fields) {
+          field.write(datum, out);
+        }
+      } catch (NullPointerException e) {
+        throw npe(e, schema);
+      }
+    }
+  }
+
+  private static class StringCodec extends Codec {
+
+    private final boolean isJavaString;
+
+    private final Schema schema;
+
+    public StringCodec(Schema schema) {
+      this.schema = schema;
+      isJavaString = "String".equals(schema.getProp(STRING_PROP));
+    }
+
+    @Override
+    public Object read(Object reuse, Decoder in) throws IOException {
+      if (isJavaString) {
+        return in.readString();
+      } else {
+        return in.readString(reuse instanceof Utf8 ? (Utf8) reuse : null);
+      }
+    }
+
+    @Override
+    public void write(Object datum, Encoder out) throws IOException {
+      try {
+        out.writeString((CharSequence) datum);
+      } catch (NullPointerException e) {
+        throw npe(e, schema);
+      }
+    }
+  }
+
+  private static class UnionCodec extends Codec {
+
+    private final Codec[] branches;
+
+    private final SpecificData data;
+
+    private final Schema schema;
+
+    public UnionCodec(Schema schema, Codec[] branches, SpecificData data) {
+      this.schema = schema;
+      this.branches = branches;
+      this.data = data;
+    }
+
+    @Override
+    public Object read(Object reuse, Decoder in) throws IOException {
+      return branches[in.readIndex()].read(reuse, in);
+    }
+
+    @Override
+    public void write(Object datum, Encoder out) throws IOException {
+      try {
+        int index = data.resolveUnion(schema, datum);
+        out.writeIndex(index);
+        branches[index].write(datum, out);
+      } catch (NullPointerException e) {
+        throw npe(e, schema);
+      }
+    }
+  }
+
+  private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+
+  private static final String STRING_PROP = "avro.java.string";
+
+  public static Codec create(Schema schema, SpecificData data) {
+    return create(schema, data, new IdentityHashMap<>());
+  }
+
+  private static Codec create(Schema schema, SpecificData data,
+      Map<Schema, RecordCodec> records) {
+    // Schemas that customize Java classes are left to the generic datum readers and writers.
+    if (schema.getProp(SpecificData.CLASS_PROP) != null
+        || schema.getProp(SpecificData.KEY_CLASS_PROP) != null
+        || schema.getProp(SpecificData.ELEMENT_PROP) != null) {
+      return new GenericCodec(schema, data);
+    }
+
+    switch (schema.getType()) {
+    case ARRAY:
+      return new ArrayCodec(schema, create(schema.getElementType(), data, records));
+    case BOOLEAN:
+    case BYTES:
+    case DOUBLE:
+    case FLOAT:
+    case INT:
+    case LONG:
+    case NULL:
+      return new PrimitiveCodec(schema);
+    case ENUM:
+      Class<?> enumClass = data.getClass(schema);
+      if (enumClass != null && enumClass.isEnum()) {
+        return new EnumCodec(schema, enumClass);
+      } else {
+        return new GenericCodec(schema, data);
+      }
+    case MAP:
+      return new MapCodec(schema, new StringCodec(schema),
+          create(schema.getValueType(), data, records));
+    case RECORD:
+      RecordCodec codec = records.get(schema);
+      if (codec == null) {
+        codec = new RecordCodec();
+        records.put(schema, codec);
+        initialize(codec, schema, data, records);
+      }
+      return codec;
+    case STRING:
+      return new StringCodec(schema);
+    case UNION:
+      List<Schema> types = schema.getTypes();
+      Codec[] branches = new Codec[types.size()];
+      for (int i = 0; i < branches.length; i++) {
+        branches[i] = create(types.get(i), data, records);
+      }
+      return new UnionCodec(schema, branches, data);
+    default:
+      return new GenericCodec(schema, data);
+    }
+  }
+
+  private static FieldCodec createField(Schema.Field field, Field javaField, Codec codec) {
+    if (javaField == null) {
+      return new IndexedField(field.name(), field.pos(), codec);
+    } else if (getPrimitiveType(javaField.getType()) == field.schema().getType()) {
+      return new PrimitiveField(field.name(), javaField);
+    } else {
+      return new ObjectField(field.name(), javaField, codec);
+    }
+  }
+
+  private static Field getField(Class<?> recordClass, String name) {
+    // Generated classes append "$" to field names that are reserved words.
+    for (String fieldName : new String[] { name, name + "$" }) {
+      try {
+        Field field = recordClass.getDeclaredField(fieldName);
+        if (!Modifier.isStatic(field.getModifiers()) && !Modifier.isFinal(field.getModifiers())) {
+          field.setAccessible(true);
+          return field;
+        }
+      } catch (NoSuchFieldException e) {
+        // Try the next name.
+      }
+    }
+    return null;
+  }
+
+  private static Schema.Type getPrimitiveType(Class<?> type) {
+    if (type == boolean.class) {
+      return Schema.Type.BOOLEAN;
+    } else if (type == double.class) {
+      return Schema.Type.DOUBLE;
+    } else if (type == float.class) {
+      return Schema.Type.FLOAT;
+    } else if (type == int.class) {
+      return Schema.Type.INT;
+    } else if (type == long.class) {
+      return Schema.Type.LONG;
+    } else {
+      return null;
+    }
+  }
+
+  private static MethodHandle getter(Field field, Class<?> type) {
+    try {
+      return LOOKUP.unreflectGetter(field).asType(MethodType.methodType(type, Object.class));
+    } catch (IllegalAccessException e) {
+      throw new AvroRuntimeException("Unable to access field " + field, e);
+    }
+  }
+
+  private static void initialize(RecordCodec codec, Schema schema, SpecificData data,
+      Map<Schema, RecordCodec> records) {
+    Class<?> recordClass = data.getClass(schema);
+    boolean isSpecific = recordClass != null && SpecificRecord.class.isAssignableFrom(recordClass);
+    codec.isSpecific = isSpecific;
+    codec.schema = schema;
+    try {
+      if (isSpecific) {
+        Constructor<?> constructor = recordClass.getDeclaredConstructor();
+        constructor.setAccessible(true);
+        codec.constructor = LOOKUP.unreflectConstructor(constructor)
+            .asType(MethodType.methodType(Object.class));
+        codec.recordClass = recordClass;
+      } else {
+        codec.constructor = LOOKUP.findConstructor(GenericData.Record.class,
+            MethodType.methodType(void.class, Schema.class)).bindTo(schema)
+            .asType(MethodType.methodType(Object.class));
+        codec.recordClass = GenericData.Record.class;
+      }
+    } catch (NoSuchMethodException | IllegalAccessException e) {
+      throw new AvroRuntimeException("Unable to create codec for " + schema.getFullName(), e);
+    }
+
+    List<Schema.Field> fields = schema.getFields();
+    codec.fields = new FieldCodec[fields.size()];
+    for (int i = 0; i < codec.fields.length; i++) {
+      Schema.Field field = fields.get(i);
+      Field javaField = isSpecific ? getField(recordClass, field.name()) : null;
+      codec.fields[i] = createField(field, javaField, create(field.schema(), data, records));
+    }
+  }
+
+  private static NullPointerException npe(NullPointerException e, Schema schema) {
+    return npe(e, " of " + schema.getFullName());
+  }
+
+  private static NullPointerException npe(NullPointerException e, String suffix) {
+    // Messages are built as GenericDatumWriter builds them, e.g. "null of int in field x of Y".
+    NullPointerException result = new NullPointerException(e.getMessage() + suffix);
+    result.initCause(e.getCause() == null ? e : e.getCause());
+    return result;
+  }
+
+  private static MethodHandle setter(Field field, Class<?> type) {
+    try {
+      return LOOKUP.unreflectSetter(field)
+          .asType(MethodType.methodType(void.class, Object.class, type));
+    } catch (IllegalAccessException e) {
+      throw new AvroRuntimeException("Unable to access field " + field, e);
+    }
+  }
+}
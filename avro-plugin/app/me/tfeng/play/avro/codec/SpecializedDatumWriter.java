@@ -0,0 +1,57 @@
+/**
+ * Copyright 2014 Thomas Feng
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.tfeng.play.avro.codec;
+
+import java.io.IOException;
+
+import org.apache.avro.Schema;
+import org.apache.avro.io.DatumWriter;
+import org.apache.avro.io.Encoder;
+import org.apache.avro.specific.SpecificData;
+
+/**
+ * @author Thomas Feng (huining.feng@gmail.com)
+ */
+public class SpecializedDatumWriter<T> implements DatumWriter<T> {
+
+  private final Codec codec;
+
+  private final Schema schema;
+
+  public SpecializedDatumWriter(Schema schema, SpecificData data) {
+    this.schema = schema;
+    codec = Codecs.create(schema, data);
+  }
+
+  public Schema getSchema() {
+    return schema;
+  }
+
+  @Override
+  public void setSchema(Schema schema) {
+    throw new UnsupportedOperationException("Schema of specialized datum writer cannot be changed");
+  }
+
+  @Override
+  public void write(T datum, Encoder out) throws IOException {
+    codec.write(datum, out);
+  }
+}
@@ -0,0 +1,103 @@
+/**
+ * Copyright 2014 Thomas Feng
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.tfeng.play.avro.metrics;
+
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import me.tfeng.play.avro.metrics.MessageMetrics.Side;
+import play.libs.Json;
+
+/**
+ * @author Thomas Feng (huining.feng@gmail.com)
+ */
+public class JsonMetricsExporter implements MetricsExporter {
+
+  private static final double[] PERCENTILES = { 50, 90, 99, 99.9 };
+
+  @Override
+  public String export(MetricsRegistry registry) {
+    ObjectNode root = Json.newObject();
+    for (MessageMetrics metrics : registry.getAllMetrics()) {
+      String side = metrics.getSide() == Side.SERVER ? "server" : "client";
+      ObjectNode sideNode = root.has(side) ? (ObjectNode) root.get(side) : root.putObject(side);
+      ObjectNode protocolNode = sideNode.has(metrics.getProtocol())
+          ? (ObjectNode) sideNode.get(metrics.getProtocol())
+          : sideNode.putObject(metrics.getProtocol());
+      ObjectNode node = protocolNode.putObject(metrics.getMessage());
+      node.put("calls", metrics.getCalls());
+      node.put("errors", metrics.getErrors());
+      node.put("inFlight", metrics.getInFlight());
+      node.put("requestBytes", metrics.getRequestBytes());
+      node.put("responseBytes", metrics.getResponseBytes());
+      if (metrics.getCoalesced() > 0) {
+        node.put("coalesced", metrics.getCoalesced());
+      }
+
+      long cacheLookups = metrics.getCacheHits() + metrics.getCacheMisses();
+      if (cacheLookups > 0) {
+        ObjectNode cacheNode = node.putObject("cache");
+        cacheNode.put("hits", metrics.getCacheHits());
+        cacheNode.put("misses", metrics.getCacheMisses());
+        cacheNode.put("hitRate", (double) metrics.getCacheHits() / cacheLookups);
+      }
+
+      LatencyHistogram latency = metrics.getLatency();
+      ObjectNode latencyNode = node.putObject("latencyMicros");
+      latencyNode.put("count", latency.getCount());
+      latencyNode.put("mean", latency.getMean());
+      for (double percentile : PERCENTILES) {
+        latencyNode.put("p" + String.valueOf(percentile).replaceAll("\\.0$", ""),
+            latency.getPercentile(percentile));
+      }
+      latencyNode.put("max", latency.getMax());
+    }
+
+    // Executors are gauges, so they are exported even after the message metrics are reset.
+    for (ExecutorMetrics metrics : registry.getAllExecutorMetrics()) {
+      ObjectNode executorsNode = root.has("executors")
+          ? (ObjectNode) root.get("executors")
+          : root.putObject("executors");
+      ObjectNode node = executorsNode.putObject(metrics.getName());
+      node.put("activeThreads", metrics.getActiveThreads());
+      node.put("poolSize", metrics.getPoolSize());
+      node.put("queueDepth", metrics.getQueueDepth());
+      node.put("queueRemainingCapacity", metrics.getQueueRemainingCapacity());
+      node.put("completedTasks", metrics.getCompletedTasks());
+    }
+
+    for (LimiterMetrics metrics : registry.getAllLimiterMetrics()) {
+      ObjectNode limitersNode = root.has("limiters")
+          ? (ObjectNode) root.get("limiters")
+          : root.putObject("limiters");
+      ObjectNode node = limitersNode.putObject(metrics.getName());
+      node.put("limit", metrics.getLimit());
+      node.put("inFlight", metrics.getInFlight());
+      node.put("accepted", metrics.getAcceptedCount());
+      node.put("rejected", metrics.getRejectedCount());
+    }
+    return root.toString();
+  }
+
+  @Override
+  public String getContentType() {
+    return "application/json";
+  }
+}
@@ -0,0 +1,58 @@
+/**
+ * Copyright 2014 Thomas Feng
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.tfeng.play.avro.metrics;
+
+import me.tfeng.play.avro.ConcurrencyLimiter;
+
+/**
+ * @author Thomas Feng (huining.feng@gmail.com)
+ */
+public class LimiterMetrics {
+
+  private final ConcurrencyLimiter limiter;
+
+  private final String name;
+
+  public LimiterMetrics(String name, ConcurrencyLimiter limiter) {
+    this.name = name;
+    this.limiter = limiter;
+  }
+
+  public long getAcceptedCount() {
+    return limiter.getAcceptedCount();
+  }
+
+  public int getInFlight() {
+    return limiter.getInFlight();
+  }
+
+  public int getLimit() {
+    return limiter.getLimit();
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  public long getRejectedCount() {
+    return limiter.getRejectedCount();
+  }
+}
@@ -0,0 +1,140 @@
+/**
+ * Copyright 2014 Thomas Feng
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.tfeng.play.avro.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * @author Thomas Feng (huining.feng@gmail.com)
+ */
+public class MessageMetrics {
+
+  public enum Side {
+    CLIENT, SERVER
+  }
+
+  private final LongAdder cacheHits = new LongAdder();
+
+  private final LongAdder cacheMisses = new LongAdder();
+
+  private final LongAdder calls = new LongAdder();
+
+  private final LongAdder coalesced = new LongAdder();
+
+  private final LongAdder errors = new LongAdder();
+
+  private final AtomicLong inFlight = new AtomicLong();
+
+  private final LatencyHistogram latency = new LatencyHistogram();
+
+  private final String message;
+
+  private final String protocol;
+
+  private final LongAdder requestBytes = new LongAdder();
+
+  private final LongAdder responseBytes = new LongAdder();
+
+  private final Side side;
+
+  public MessageMetrics(Side side, String protocol, String message) {
+    this.side = side;
+    this.protocol = protocol;
+    this.message = message;
+  }
+
+  public long getCacheHits() {
+    return cacheHits.sum();
+  }
+
+  public long getCacheMisses() {
+    return cacheMisses.sum();
+  }
+
+  public long getCalls() {
+    return calls.sum();
+  }
+
+  public long getCoalesced() {
+    return coalesced.sum();
+  }
+
+  public long getErrors() {
+    return errors.sum();
+  }
+
+  public long getInFlight() {
+    return inFlight.get();
+  }
+
+  public LatencyHistogram getLatency() {
+    return latency;
+  }
+
+  public String getMessage() {
+    return message;
+  }
+
+  public String getProtocol() {
+    return protocol;
+  }
+
+  public long getRequestBytes() {
+    return requestBytes.sum();
+  }
+
+  public long getResponseBytes() {
+    return responseBytes.sum();
+  }
+
+  public Side getSide() {
+    return side;
+  }
+
+  public void recordCacheLookup(boolean isHit) {
+    if (isHit) {
+      cacheHits.increment();
+    } else {
+      cacheMisses.increment();
+    }
+  }
+
+  public void recordCoalesced() {
+    coalesced.increment();
+  }
+
+  public void recordEnd(long nanos, boolean isError, long requestSize, long responseSize) {
+    inFlight.decrementAndGet();
+    latency.record(nanos, TimeUnit.NANOSECONDS);
+    if (isError) {
+      errors.increment();
+    }
+    requestBytes.add(requestSize);
+    responseBytes.add(responseSize);
+  }
+
+  public void recordStart() {
+    calls.increment();
+    inFlight.incrementAndGet();
+  }
+}
@@ -0,0 +1,65 @@
+/**
+ * Copyright 2014 Thomas Feng
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.tfeng.play.avro.metrics;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+
+import org.springframework.security.authentication.AnonymousAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+
+import me.tfeng.play.plugins.AvroPlugin;
+import play.mvc.Controller;
+import play.mvc.Http;
+import play.mvc.Result;
+import play.mvc.Results;
+
+/**
+ * @author Thomas Feng (huining.feng@gmail.com)
+ */
+public class MetricsController extends Controller {
+
+  public static Result get() throws Throwable {
+    AvroPlugin plugin = AvroPlugin.getInstance();
+    // Metrics reveal the protocols and their traffic, so unless avro-plugin.metrics-public is set,
+    // they are only returned to local or authenticated callers.
+    if (!plugin.isMetricsPublic() && !isLocal(request()) && !isAuthenticated()) {
+      return Results.forbidden();
+    }
+    MetricsExporter exporter = plugin.getMetricsExporter();
+    return Results.ok(exporter.export(plugin.getMetricsRegistry())).as(exporter.getContentType());
+  }
+
+  private static boolean isAuthenticated() {
+    Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+    return authentication != null && authentication.isAuthenticated()
+        && !(authentication instanceof AnonymousAuthenticationToken);
+  }
+
+  private static boolean isLocal(Http.Request request) {
+    try {
+      return InetAddress.getByName(request.remoteAddress()).isLoopbackAddress();
+    } catch (UnknownHostException e) {
+      return false;
+    }
+  }
+}
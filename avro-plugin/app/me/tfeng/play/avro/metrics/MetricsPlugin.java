@@ -0,0 +1,97 @@
+/**
+ * Copyright 2014 Thomas Feng
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.tfeng.play.avro.metrics;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+
+import org.apache.avro.ipc.RPCContext;
+import org.apache.avro.ipc.RPCPlugin;
+
+import me.tfeng.play.avro.CallContext;
+import me.tfeng.play.avro.metrics.MessageMetrics.Side;
+
+/**
+ * @author Thomas Feng (huining.feng@gmail.com)
+ */
+public class MetricsPlugin extends RPCPlugin {
+
+  private final String protocol;
+
+  private final MetricsRegistry registry;
+
+  public MetricsPlugin(MetricsRegistry registry, String protocol) {
+    this.registry = registry;
+    this.protocol = protocol;
+  }
+
+  @Override
+  public void clientReceiveResponse(RPCContext context) {
+    end(Side.CLIENT, context);
+  }
+
+  @Override
+  public void clientSendRequest(RPCContext context) {
+    start(Side.CLIENT, context);
+  }
+
+  @Override
+  public void serverReceiveRequest(RPCContext context) {
+    start(Side.SERVER, context);
+  }
+
+  @Override
+  public void serverSendResponse(RPCContext context) {
+    end(Side.SERVER, context);
+  }
+
+  private void end(Side side, RPCContext context) {
+    // Start times are kept in the contexts created by IpcRequestor and AsyncResponder; calls made
+    // with other contexts are not measured.
+    if (context instanceof CallContext) {
+      CallContext callContext = (CallContext) context;
+      Long startTime = callContext.getStartTime();
+      if (startTime != null) {
+        callContext.setStartTime(null);
+        registry.getMessageMetrics(side, protocol, context.getMessage().getName()).recordEnd(
+            System.nanoTime() - startTime, context.isError(),
+            getSize(context.getRequestPayload()), getSize(context.getResponsePayload()));
+      }
+    }
+  }
+
+  private long getSize(List<ByteBuffer> payload) {
+    long size = 0;
+    if (payload != null) {
+      for (ByteBuffer buffer : payload) {
+        size += buffer.limit();
+      }
+    }
+    return size;
+  }
+
+  private void start(Side side, RPCContext context) {
+    if (context instanceof CallContext) {
+      registry.getMessageMetrics(side, protocol, context.getMessage().getName()).recordStart();
+      ((CallContext) context).setStartTime(System.nanoTime());
+    }
+  }
+}
@@ -0,0 +1,88 @@
+/**
+ * Copyright 2014 Thomas Feng
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.tfeng.play.avro.metrics;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadPoolExecutor;
+
+import org.apache.avro.Protocol;
+
+import com.google.common.collect.ImmutableList;
+
+import me.tfeng.play.avro.ConcurrencyLimiter;
+import me.tfeng.play.avro.metrics.MessageMetrics.Side;
+
+/**
+ * @author Thomas Feng (huining.feng@gmail.com)
+ */
+public class MetricsRegistry {
+
+  public static String getProtocolName(Protocol protocol) {
+    if (protocol.getNamespace() == null) {
+      return protocol.getName();
+    } else {
+      return protocol.getNamespace() + "." + protocol.getName();
+    }
+  }
+
+  private final ConcurrentMap<String, ExecutorMetrics> executorMetrics =
+      new ConcurrentHashMap<>();
+
+  private final ConcurrentMap<String, LimiterMetrics> limiterMetrics = new ConcurrentHashMap<>();
+
+  private final ConcurrentMap<List<Object>, MessageMetrics> metrics = new ConcurrentHashMap<>();
+
+  private final ConcurrentMap<String, MetricsPlugin> plugins = new ConcurrentHashMap<>();
+
+  public void addExecutor(String name, ThreadPoolExecutor executor) {
+    executorMetrics.put(name, new ExecutorMetrics(name, executor));
+  }
+
+  public void addLimiter(String name, ConcurrencyLimiter limiter) {
+    limiterMetrics.put(name, new LimiterMetrics(name, limiter));
+  }
+
+  public Collection<ExecutorMetrics> getAllExecutorMetrics() {
+    return new ArrayList<>(executorMetrics.values());
+  }
+
+  public Collection<LimiterMetrics> getAllLimiterMetrics() {
+    return new ArrayList<>(limiterMetrics.values());
+  }
+
+  public Collection<MessageMetrics> getAllMetrics() {
+    return new ArrayList<>(metrics.values());
+  }
+
+  public MessageMetrics getMessageMetrics(Side side, String protocol, String message) {
+    return metrics.computeIfAbsent(ImmutableList.of(side, protocol, message),
+        key -> new MessageMetrics(side, protocol, message));
+  }
+
+  public MetricsPlugin getPlugin(Protocol protocol) {
+    return plugins.computeIfAbsent(getProtocolName(protocol),
+        key -> new MetricsPlugin(this, key));
+  }
+}
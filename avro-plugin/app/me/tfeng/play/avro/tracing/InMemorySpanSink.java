@@ -0,0 +1,63 @@
+/**
+ * Copyright 2014 Thomas Feng
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.tfeng.play.avro.tracing;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * @author Thomas Feng (huining.feng@gmail.com)
+ */
+public class InMemorySpanSink implements SpanSink {
+
+  private final int maxSize;
+
+  private final Deque<Span> spans = new ArrayDeque<>();
+
+  public InMemorySpanSink(int maxSize) {
+    this.maxSize = maxSize;
+  }
+
+  public synchronized void clear() {
+    spans.clear();
+  }
+
+  public synchronized List<Span> getSpans() {
+    return new ArrayList<>(spans);
+  }
+
+  public synchronized List<Span> getSpans(long traceId) {
+    return spans.stream().filter(span -> span.getTraceId() == traceId)
+        .collect(Collectors.toList());
+  }
+
+  @Override
+  public synchronized void record(Span span) {
+    // The oldest spans are dropped once the sink is full.
+    if (spans.size() >= maxSize) {
+      spans.removeFirst();
+    }
+    spans.addLast(span);
+  }
+}
@@ -0,0 +1,139 @@
+/**
+ * Copyright 2014 Thomas Feng
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.tfeng.play.avro.tracing;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * @author Thomas Feng (huining.feng@gmail.com)
+ */
+public class Span {
+
+  public static enum Kind {
+    CLIENT, SERVER
+  }
+
+  private volatile long duration;
+
+  private volatile boolean isError;
+
+  private final AtomicBoolean isFinished = new AtomicBoolean();
+
+  private final Kind kind;
+
+  private final String message;
+
+  private final Long parentSpanId;
+
+  private final Long parentStartTime;
+
+  private final String protocol;
+
+  private final long spanId;
+
+  private final long startNanos = System.nanoTime();
+
+  private final long startTime;
+
+  private final long traceId;
+
+  public Span(Kind kind, String protocol, String message, long traceId, long spanId,
+      Long parentSpanId, Long parentStartTime, long startTime) {
+    this.kind = kind;
+    this.protocol = protocol;
+    this.message = message;
+    this.traceId = traceId;
+    this.spanId = spanId;
+    this.parentSpanId = parentSpanId;
+    this.parentStartTime = parentStartTime;
+    this.startTime = startTime;
+  }
+
+  /**
+   * Returns the duration of this span in microseconds.
+   */
+  public long getDuration() {
+    return duration;
+  }
+
+  public Kind getKind() {
+    return kind;
+  }
+
+  public String getMessage() {
+    return message;
+  }
+
+  public Long getParentSpanId() {
+    return parentSpanId;
+  }
+
+  /**
+   * Returns the start time of the client span that called this server span in microseconds since
+   * epoch, or null if it is unknown. The difference from {@link #getStartTime()} includes network
+   * transfer and clock skew.
+   */
+  public Long getParentStartTime() {
+    return parentStartTime;
+  }
+
+  public String getProtocol() {
+    return protocol;
+  }
+
+  public long getSpanId() {
+    return spanId;
+  }
+
+  /**
+   * Returns the start time of this span in microseconds since epoch.
+   */
+  public long getStartTime() {
+    return startTime;
+  }
+
+  public long getTraceId() {
+    return traceId;
+  }
+
+  public boolean isError() {
+    return isError;
+  }
+
+  @Override
+  public String toString() {
+    return kind + " " + protocol + "." + message + " trace=" + Long.toHexString(traceId)
+        + " span=" + Long.toHexString(spanId)
+        + (parentSpanId == null ? "" : " parent=" + Long.toHexString(parentSpanId))
+        + " start=" + startTime + " duration=" + duration + (isError ? " error" : "");
+  }
+
+  boolean finish(boolean isError) {
+    // Only the first end of a call is recorded.
+    if (!isFinished.compareAndSet(false, true)) {
+      return false;
+    }
+    duration = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - startNanos);
+    this.isError = isError;
+    return true;
+  }
+}
@@ -0,0 +1,91 @@
+/**
+ * Copyright 2014 Thomas Feng
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.tfeng.play.avro.tracing;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import me.tfeng.play.avro.CallContext;
+import play.mvc.Http;
+
+/**
+ * @author Thomas Feng (huining.feng@gmail.com)
+ */
+public class TracingHelper {
+
+  public static final String SPAN_ID_KEY = "span-id";
+
+  public static final String START_TIME_KEY = "span-start";
+
+  public static final String TRACE_ID_KEY = "trace-id";
+
+  private static final String CONTEXT_ARG = TracingHelper.class.getName();
+
+  public static void clearSpan() {
+    CallContext callContext = CallContext.current();
+    if (callContext != null) {
+      callContext.setSpan(null);
+      return;
+    }
+    Http.Context context = Http.Context.current.get();
+    if (context != null) {
+      context.args.remove(CONTEXT_ARG);
+    }
+  }
+
+  /**
+   * Returns the span of the call being handled, or of the current HTTP context outside of calls,
+   * or null if there is none. Calls made in it become children of this span.
+   */
+  public static Span getCurrentSpan() {
+    CallContext callContext = CallContext.current();
+    if (callContext != null) {
+      return callContext.getSpan();
+    }
+    Http.Context context = Http.Context.current.get();
+    return context == null ? null : (Span) context.args.get(CONTEXT_ARG);
+  }
+
+  public static long getCurrentTimeMicros() {
+    return TimeUnit.MILLISECONDS.toMicros(System.currentTimeMillis());
+  }
+
+  public static long newId() {
+    long id;
+    do {
+      id = ThreadLocalRandom.current().nextLong();
+    } while (id == 0);
+    return id;
+  }
+
+  public static void setCurrentSpan(Span span) {
+    CallContext callContext = CallContext.current();
+    if (callContext != null) {
+      callContext.setSpan(span);
+      return;
+    }
+    Http.Context context = Http.Context.current.get();
+    if (context == null) {
+      throw new RuntimeException("Unable to set span outside of calls or HTTP contexts");
+    }
+    context.args.put(CONTEXT_ARG, span);
+  }
+}
@@ -0,0 +1,106 @@
+/**
+ * Copyright 2014 Thomas Feng
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.tfeng.play.avro.tracing;
+
+import java.nio.ByteBuffer;
+import java.util.Map;
+
+import org.apache.avro.ipc.RPCContext;
+import org.apache.avro.ipc.RPCPlugin;
+
+import me.tfeng.play.avro.CallContext;
+import me.tfeng.play.avro.CallMetaHelper;
+import me.tfeng.play.avro.tracing.Span.Kind;
+import play.Logger;
+import play.Logger.ALogger;
+
+/**
+ * @author Thomas Feng (huining.feng@gmail.com)
+ */
+public class TracingPlugin extends RPCPlugin {
+
+  private static final ALogger LOG = Logger.of(TracingPlugin.class);
+
+  private final String protocol;
+
+  private final SpanSink sink;
+
+  public TracingPlugin(String protocol, SpanSink sink) {
+    this.protocol = protocol;
+    this.sink = sink;
+  }
+
+  @Override
+  public void clientReceiveResponse(RPCContext context) {
+    end(context);
+  }
+
+  @Override
+  public void clientSendRequest(RPCContext context) {
+    // Spans are kept on the contexts of calls, which only requestors of this plugin create.
+    if (!(context instanceof CallContext)) {
+      return;
+    }
+    // Calls made while a request is handled belong to the trace of that request.
+    Span parent = TracingHelper.getCurrentSpan();
+    long traceId = parent == null ? TracingHelper.newId() : parent.getTraceId();
+    Span span = new Span(Kind.CLIENT, protocol, context.getMessage().getName(), traceId,
+        TracingHelper.newId(), parent == null ? null : parent.getSpanId(), null,
+        TracingHelper.getCurrentTimeMicros());
+    Map<String, ByteBuffer> callMeta = context.requestCallMeta();
+    CallMetaHelper.putLong(callMeta, TracingHelper.TRACE_ID_KEY, span.getTraceId());
+    CallMetaHelper.putLong(callMeta, TracingHelper.SPAN_ID_KEY, span.getSpanId());
+    CallMetaHelper.putLong(callMeta, TracingHelper.START_TIME_KEY, span.getStartTime());
+    ((CallContext) context).setSpan(span);
+  }
+
+  @Override
+  public void serverReceiveRequest(RPCContext context) {
+    if (!(context instanceof CallContext)) {
+      return;
+    }
+    Map<String, ByteBuffer> callMeta = context.requestCallMeta();
+    Long traceId = CallMetaHelper.getLong(callMeta, TracingHelper.TRACE_ID_KEY);
+    Span span = new Span(Kind.SERVER, protocol, context.getMessage().getName(),
+        traceId == null ? TracingHelper.newId() : traceId, TracingHelper.newId(),
+        CallMetaHelper.getLong(callMeta, TracingHelper.SPAN_ID_KEY),
+        CallMetaHelper.getLong(callMeta, TracingHelper.START_TIME_KEY),
+        TracingHelper.getCurrentTimeMicros());
+    // Calls made by impl find the span on the context, which is current while impl is invoked.
+    ((CallContext) context).setSpan(span);
+  }
+
+  @Override
+  public void serverSendResponse(RPCContext context) {
+    end(context);
+  }
+
+  private void end(RPCContext context) {
+    Span span = context instanceof CallContext ? ((CallContext) context).getSpan() : null;
+    if (span != null && span.finish(context.isError())) {
+      try {
+        sink.record(span);
+      } catch (RuntimeException e) {
+        LOG.warn("Unable to record span " + span, e);
+      }
+    }
+  }
+}
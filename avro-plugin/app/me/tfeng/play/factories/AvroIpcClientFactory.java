@@ -28,6 +28,7 @@ import org.springframework.beans.factory.annotation.Required;
 
 import com.google.common.base.MoreObjects;
 
+import me.tfeng.play.avro.AvroHelper;
 import me.tfeng.play.plugins.AvroPlugin;
 
 /**
@@ -41,8 +42,8 @@ public class AvroIpcClientFactory implements FactoryBean<Object> {
 
   @Override
   public Object getObject() throws Exception {
-    return AvroPlugin.client(interfaceClass, url,
-        MoreObjects.firstNonNull(specificData, new SpecificData(interfaceClass.getClassLoader())));
+    return AvroPlugin.client(interfaceClass, url, MoreObjects.firstNonNull(specificData,
+        AvroHelper.getSpecificData(interfaceClass.getClassLoader())));
   }
 
   @Override
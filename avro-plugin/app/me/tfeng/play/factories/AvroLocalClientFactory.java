@@ -20,10 +20,15 @@
 
 package me.tfeng.play.factories;
 
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.InvocationHandler;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.lang.reflect.Proxy;
+import java.util.HashMap;
+import java.util.Map;
 
 import org.springframework.beans.factory.FactoryBean;
 import org.springframework.beans.factory.annotation.Required;
@@ -36,11 +41,32 @@ import play.libs.F.Promise;
  */
 public class AvroLocalClientFactory implements FactoryBean<Object>, InvocationHandler {
 
+  private static class LocalMethod {
+
+    // Implementations that already return promises are called directly on the caller's thread.
+    private final boolean direct;
+
+    private final MethodHandle handle;
+
+    private LocalMethod(MethodHandle handle, boolean direct) {
+      this.handle = handle;
+      this.direct = direct;
+    }
+  }
+
+  private static final Object[] NO_ARGS = new Object[0];
+
+  private static final MethodType SPREAD_TYPE = MethodType.methodType(Object.class, Object[].class);
+
   private Object bean;
   private Class<?> interfaceClass;
+  private volatile Map<Method, LocalMethod> methods;
 
   @Override
   public Object getObject() throws Exception {
+    if (methods == null) {
+      methods = createMethods();
+    }
     return Proxy.newProxyInstance(interfaceClass.getClassLoader(), new Class[] { interfaceClass },
         this);
   }
@@ -52,14 +78,27 @@ public class AvroLocalClientFactory implements FactoryBean<Object>, InvocationHa
 
   @Override
   public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
-    Method beanMethod = bean.getClass().getMethod(method.getName(), method.getParameterTypes());
-    return Promise.promise(() -> {
+    LocalMethod localMethod = methods.get(method);
+    if (localMethod == null) {
+      // Methods declared by Object, such as toString(), go to the bean as they are.
       try {
-        return beanMethod.invoke(bean, args);
+        return method.invoke(bean, args);
       } catch (InvocationTargetException e) {
         throw e.getCause();
       }
-    }, AvroPlugin.getInstance().getExecutionContext());
+    }
+
+    Object[] arguments = args == null ? NO_ARGS : args;
+    if (localMethod.direct) {
+      try {
+        return (Object) localMethod.handle.invokeExact(arguments);
+      } catch (Throwable t) {
+        return Promise.throwing(t);
+      }
+    } else {
+      return Promise.promise(() -> (Object) localMethod.handle.invokeExact(arguments),
+          AvroPlugin.getInstance().getExecutionContext());
+    }
   }
 
   @Override
@@ -70,10 +109,30 @@ public class AvroLocalClientFactory implements FactoryBean<Object>, InvocationHa
   @Required
   public void setBean(Object bean) {
     this.bean = bean;
+    methods = null;
   }
 
   @Required
   public void setInterfaceClass(Class<?> interfaceClass) {
     this.interfaceClass = interfaceClass;
+    methods = null;
+  }
+
+  private Map<Method, LocalMethod> createMethods() throws NoSuchMethodException,
+      IllegalAccessException {
+    MethodHandles.Lookup lookup = MethodHandles.lookup();
+    Map<Method, LocalMethod> methods = new HashMap<>();
+    for (Method method : interfaceClass.getMethods()) {
+      Method beanMethod = bean.getClass().getMethod(method.getName(), method.getParameterTypes());
+      // The bean's class may not be public even though the method is.
+      beanMethod.setAccessible(true);
+      MethodHandle handle = lookup.unreflect(beanMethod).bindTo(bean);
+      handle = handle.asType(handle.type().generic())
+          .asSpreader(Object[].class, method.getParameterCount())
+          .asType(SPREAD_TYPE);
+      boolean direct = Promise.class.isAssignableFrom(beanMethod.getReturnType());
+      methods.put(method, new LocalMethod(handle, direct));
+    }
+    return methods;
   }
 }
@@ -22,20 +22,47 @@ package me.tfeng.play.plugins;
 
 import java.io.IOException;
 import java.lang.reflect.Proxy;
+import java.net.InetSocketAddress;
 import java.net.URL;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.function.BiPredicate;
 
+import org.apache.avro.Protocol;
+import org.apache.avro.Protocol.Message;
+import org.apache.avro.generic.GenericData;
 import org.apache.avro.ipc.AsyncHttpTransceiver;
+import org.apache.avro.ipc.AsyncSocketTransceiver;
 import org.apache.avro.ipc.IpcRequestor;
+import org.apache.avro.ipc.Requestor;
+import org.apache.avro.ipc.Responder;
 import org.apache.avro.specific.SpecificData;
 import org.springframework.beans.factory.NoSuchBeanDefinitionException;
 import org.springframework.beans.factory.annotation.Value;
 
+import akka.dispatch.ExecutionContexts;
+import me.tfeng.play.avro.AsyncResponder;
 import me.tfeng.play.avro.AsyncTransceiver;
-import me.tfeng.play.avro.HandshakingProtocolVersionResolver;
+import me.tfeng.play.avro.AvroHelper;
+import me.tfeng.play.avro.CachingProtocolVersionResolver;
+import me.tfeng.play.avro.ConcurrencyLimiter;
+import me.tfeng.play.avro.DatumCache;
+import me.tfeng.play.avro.PriorityExecutor;
 import me.tfeng.play.avro.ProtocolVersionResolver;
+import me.tfeng.play.avro.RequestCoalescer;
+import me.tfeng.play.avro.ResponseCache;
+import me.tfeng.play.avro.SocketIpcServer;
+import me.tfeng.play.avro.metrics.JsonMetricsExporter;
+import me.tfeng.play.avro.metrics.MetricsExporter;
+import me.tfeng.play.avro.metrics.MetricsRegistry;
+import me.tfeng.play.avro.tracing.LoggingSpanSink;
+import me.tfeng.play.avro.tracing.SpanSink;
+import me.tfeng.play.avro.tracing.TracingPlugin;
 import me.tfeng.play.http.RequestPreparer;
 import play.Application;
 import play.Logger;
@@ -54,8 +81,8 @@ public class AvroPlugin extends AbstractPlugin {
 
   public static <T> T client(Class<T> interfaceClass, AsyncTransceiver transceiver,
       RequestPreparer... postRequestPreparers) {
-    return client(interfaceClass, transceiver, new SpecificData(interfaceClass.getClassLoader()),
-        postRequestPreparers);
+    return client(interfaceClass, transceiver,
+        AvroHelper.getSpecificData(interfaceClass.getClassLoader()), postRequestPreparers);
   }
 
   @SuppressWarnings("unchecked")
@@ -63,6 +90,10 @@ public class AvroPlugin extends AbstractPlugin {
       SpecificData data, RequestPreparer... postRequestPreparers) {
     try {
       IpcRequestor requestor = new IpcRequestor(interfaceClass, transceiver, data);
+      getInstance().addMetricsPlugin(requestor);
+      getInstance().addTracingPlugin(requestor);
+      requestor.setRequestCoalescer(getInstance().createRequestCoalescer(requestor.getLocal()));
+      requestor.setResponseCache(getInstance().createResponseCache(requestor.getLocal(), data));
       Arrays.stream(postRequestPreparers).forEach(requestor::addRequestPreparer);
       return (T) Proxy.newProxyInstance(data.getClassLoader(), new Class[] { interfaceClass },
           requestor);
@@ -71,38 +102,200 @@ public class AvroPlugin extends AbstractPlugin {
     }
   }
 
+  public static <T> T client(Class<T> interfaceClass, InetSocketAddress address) {
+    return client(interfaceClass, createTransceiver(interfaceClass, address));
+  }
+
+  public static <T> T client(Class<T> interfaceClass, InetSocketAddress address,
+      SpecificData data) {
+    return client(interfaceClass, createTransceiver(interfaceClass, address), data);
+  }
+
   public static <T> T client(Class<T> interfaceClass, URL url,
       RequestPreparer... postRequestPreparers) {
-    return client(interfaceClass, new AsyncHttpTransceiver(url), postRequestPreparers);
+    return client(interfaceClass, createTransceiver(interfaceClass, url), postRequestPreparers);
   }
 
   public static <T> T client(Class<T> interfaceClass, URL url, SpecificData data,
       RequestPreparer... postRequestPreparers) {
-    return client(interfaceClass, new AsyncHttpTransceiver(url), data, postRequestPreparers);
+    return client(interfaceClass, createTransceiver(interfaceClass, url), data,
+        postRequestPreparers);
   }
 
   public static AvroPlugin getInstance() {
     return Play.application().plugin(AvroPlugin.class);
   }
 
+  private static AsyncSocketTransceiver createTransceiver(Class<?> interfaceClass,
+      InetSocketAddress address) {
+    AsyncSocketTransceiver transceiver = new AsyncSocketTransceiver(address,
+        AvroHelper.getProtocol(interfaceClass), getInstance().getSocketConnections());
+    transceiver.setRequestTimeout(getInstance().getSocketRequestTimeout());
+    return transceiver;
+  }
+
+  private static AsyncHttpTransceiver createTransceiver(Class<?> interfaceClass, URL url) {
+    AsyncHttpTransceiver transceiver = new AsyncHttpTransceiver(url);
+    transceiver.setCompressionThreshold(
+        getInstance().getCompressionThreshold(interfaceClass.getName()));
+    transceiver.setInlineFraming(getInstance().isInlineFraming());
+    transceiver.setMaxResponseSize(getInstance().getMaxResponseSize());
+    return transceiver;
+  }
+
+  @Value("${avro-plugin.compression-threshold:-1}")
+  private int compressionThreshold;
+
+  private Map<String, Integer> compressionThresholds;
+
+  private DatumCache datumCache;
+
+  @Value("${avro-plugin.datum-cache-size:1000}")
+  private long datumCacheSize;
+
   private ExecutionContext executionContext;
 
   @Value("${avro-plugin.execution-context:play.akka.actor.default-dispatcher}")
   private String executionContextId;
 
+  @Value("${avro-plugin.handshake-cache-size:1000}")
+  private long handshakeCacheSize;
+
+  @Value("${avro-plugin.inline-framing:true}")
+  private boolean inlineFraming;
+
+  @Value("${avro-plugin.max-request-size:67108864}")
+  private long maxRequestSize;
+
+  private Map<String, Long> maxRequestSizes;
+
+  @Value("${avro-plugin.max-response-size:67108864}")
+  private long maxResponseSize;
+
+  @Value("${avro-plugin.metrics-enabled:true}")
+  private boolean metricsEnabled;
+
+  private MetricsExporter metricsExporter;
+
+  @Value("${avro-plugin.metrics-public:false}")
+  private boolean metricsPublic;
+
+  private final MetricsRegistry metricsRegistry = new MetricsRegistry();
+
   private Map<Class<?>, Object> protocolImplementations;
 
-  private ProtocolVersionResolver protocolVersionResolver =
-      new HandshakingProtocolVersionResolver();
+  private PriorityExecutor priorityExecutor;
+
+  @Value("${avro-plugin.priority-threads:0}")
+  private int priorityThreads;
+
+  private ProtocolVersionResolver protocolVersionResolver;
+
+  private Map<String, AsyncResponder> responders;
+
+  @Value("${avro-plugin.response-cache-size:1000}")
+  private long responseCacheSize;
+
+  @Value("${avro-plugin.response-cache-ttl-ms:60000}")
+  private long responseCacheTtl;
+
+  @Value("${avro-plugin.socket-connections:2}")
+  private int socketConnections;
+
+  @Value("${avro-plugin.socket-port:-1}")
+  private int socketPort;
+
+  @Value("${avro-plugin.socket-request-timeout-ms:60000}")
+  private long socketRequestTimeout;
+
+  private SocketIpcServer socketServer;
+
+  @Value("${avro-plugin.specialized-codecs:true}")
+  private boolean specializedCodecs;
+
+  private SpanSink spanSink;
+
+  @Value("${avro-plugin.streaming-chunk-size:65536}")
+  private int streamingChunkSize;
+
+  @Value("${avro-plugin.tracing-enabled:false}")
+  private boolean tracingEnabled;
 
   public AvroPlugin(Application application) {
     super(application);
   }
 
+  public void addMetricsPlugin(Requestor requestor) {
+    if (metricsEnabled) {
+      requestor.addRPCPlugin(metricsRegistry.getPlugin(requestor.getLocal()));
+    }
+  }
+
+  public void addMetricsPlugin(Responder responder) {
+    if (metricsEnabled) {
+      responder.addRPCPlugin(metricsRegistry.getPlugin(responder.getLocal()));
+    }
+  }
+
+  public void addTracingPlugin(Requestor requestor) {
+    if (tracingEnabled) {
+      requestor.addRPCPlugin(new TracingPlugin(
+          MetricsRegistry.getProtocolName(requestor.getLocal()), spanSink));
+    }
+  }
+
+  public void addTracingPlugin(Responder responder) {
+    if (tracingEnabled) {
+      responder.addRPCPlugin(new TracingPlugin(
+          MetricsRegistry.getProtocolName(responder.getLocal()), spanSink));
+    }
+  }
+
+  public RequestCoalescer createRequestCoalescer(Protocol protocol) {
+    if (!RequestCoalescer.hasCoalescedMessages(protocol)) {
+      return null;
+    }
+    return new RequestCoalescer(protocol, metricsEnabled ? metricsRegistry : null);
+  }
+
+  public ResponseCache createResponseCache(Protocol protocol, GenericData data) {
+    if (!ResponseCache.hasCacheableMessages(protocol)) {
+      return null;
+    }
+    return new ResponseCache(protocol, data, responseCacheSize, responseCacheTtl,
+        metricsEnabled ? metricsRegistry : null);
+  }
+
+  public int getCompressionThreshold(String protocol) {
+    Integer threshold = compressionThresholds.get(protocol);
+    return threshold == null ? compressionThreshold : threshold;
+  }
+
+  public DatumCache getDatumCache() {
+    return datumCache;
+  }
+
   public ExecutionContext getExecutionContext() {
     return HttpExecution.fromThread(executionContext);
   }
 
+  public long getMaxRequestSize(String protocol) {
+    Long size = maxRequestSizes.get(protocol);
+    return size == null ? maxRequestSize : size;
+  }
+
+  public long getMaxResponseSize() {
+    return maxResponseSize;
+  }
+
+  public MetricsExporter getMetricsExporter() {
+    return metricsExporter;
+  }
+
+  public MetricsRegistry getMetricsRegistry() {
+    return metricsRegistry;
+  }
+
   public Map<Class<?>, Object> getProtocolImplementations() {
     return protocolImplementations;
   }
@@ -111,16 +304,93 @@ public class AvroPlugin extends AbstractPlugin {
     return protocolVersionResolver;
   }
 
+  public AsyncResponder getResponder(String protocol) {
+    AsyncResponder responder = responders.get(protocol);
+    if (responder == null) {
+      throw new RuntimeException("No implementation is registered for protocol " + protocol);
+    }
+    return responder;
+  }
+
+  public int getSocketConnections() {
+    return socketConnections;
+  }
+
+  public long getSocketRequestTimeout() {
+    return socketRequestTimeout;
+  }
+
+  public SocketIpcServer getSocketServer() {
+    return socketServer;
+  }
+
+  public SpanSink getSpanSink() {
+    return spanSink;
+  }
+
+  public int getStreamingChunkSize() {
+    return streamingChunkSize;
+  }
+
+  public boolean isInlineFraming() {
+    return inlineFraming;
+  }
+
+  public boolean isMetricsPublic() {
+    return metricsPublic;
+  }
+
   @Override
   @SuppressWarnings("unchecked")
   public void onStart() {
     super.onStart();
 
+    datumCache = new DatumCache(datumCacheSize, specializedCodecs);
+
+    if (protocolVersionResolver == null) {
+      protocolVersionResolver = new CachingProtocolVersionResolver(handshakeCacheSize);
+    }
+
+    if (priorityThreads > 0) {
+      // Requests of all priorities share the threads, with higher priorities dispatched first.
+      priorityExecutor = new PriorityExecutor("avro-priority", priorityThreads);
+      executionContext =
+          createExecutionContext("avro-plugin.priority-executor", priorityExecutor);
+    } else {
+      try {
+        executionContext = Akka.system().dispatchers().lookup(executionContextId);
+      } catch (Exception e) {
+        LOG.warn("Unable to obtain execution context " + executionContextId + "; using default",
+            e);
+        executionContext = Akka.system().dispatchers().defaultGlobalDispatcher();
+      }
+    }
+
     try {
-      executionContext = Akka.system().dispatchers().lookup(executionContextId);
-    } catch (Exception e) {
-      LOG.warn("Unable to obtain execution context " + executionContextId + "; using default", e);
-      executionContext = Akka.system().dispatchers().defaultGlobalDispatcher();
+      compressionThresholds =
+          getApplicationContext().getBean("avro-plugin.compression-thresholds", Map.class);
+    } catch (NoSuchBeanDefinitionException e) {
+      compressionThresholds = Collections.emptyMap();
+    }
+
+    try {
+      maxRequestSizes =
+          getApplicationContext().getBean("avro-plugin.max-request-sizes", Map.class);
+    } catch (NoSuchBeanDefinitionException e) {
+      maxRequestSizes = Collections.emptyMap();
+    }
+
+    try {
+      metricsExporter =
+          getApplicationContext().getBean("avro-plugin.metrics-exporter", MetricsExporter.class);
+    } catch (NoSuchBeanDefinitionException e) {
+      metricsExporter = new JsonMetricsExporter();
+    }
+
+    try {
+      spanSink = getApplicationContext().getBean("avro-plugin.span-sink", SpanSink.class);
+    } catch (NoSuchBeanDefinitionException e) {
+      spanSink = new LoggingSpanSink();
     }
 
     try {
@@ -129,9 +399,132 @@ public class AvroPlugin extends AbstractPlugin {
     } catch (NoSuchBeanDefinitionException e) {
       protocolImplementations = Collections.emptyMap();
     }
+
+    Map<String, Object> concurrencyLimits;
+    try {
+      concurrencyLimits =
+          getApplicationContext().getBean("avro-plugin.concurrency-limits", Map.class);
+    } catch (NoSuchBeanDefinitionException e) {
+      concurrencyLimits = Collections.emptyMap();
+    }
+
+    Map<String, Object> executors;
+    try {
+      executors = getApplicationContext().getBean("avro-plugin.executors", Map.class);
+    } catch (NoSuchBeanDefinitionException e) {
+      executors = Collections.emptyMap();
+    }
+
+    responders = new HashMap<>(protocolImplementations.size());
+    for (Entry<Class<?>, Object> entry : protocolImplementations.entrySet()) {
+      Class<?> protocolClass = entry.getKey();
+      AsyncResponder responder = new AsyncResponder(protocolClass, entry.getValue());
+      addMetricsPlugin(responder);
+      addTracingPlugin(responder);
+      setExecutors(responder, protocolClass.getName(), executors);
+      setConcurrencyLimiter(responder, protocolClass.getName(), concurrencyLimits);
+      createCodecs(responder);
+      responders.put(protocolClass.getName(), responder);
+    }
+
+    if (socketPort >= 0) {
+      socketServer = new SocketIpcServer(new InetSocketAddress(socketPort), this::getResponder,
+          executionContext);
+      socketServer.setMaxRequestSizes(this::getMaxRequestSize);
+      try {
+        socketServer.setAuthorizer(
+            getApplicationContext().getBean("avro-plugin.socket-authorizer", BiPredicate.class));
+      } catch (NoSuchBeanDefinitionException e) {
+        LOG.warn("Avro socket server has no avro-plugin.socket-authorizer; port "
+            + socketServer.getPort() + " accepts any connection and must be kept internal");
+      }
+      LOG.info("Avro socket server listening on port " + socketServer.getPort());
+    }
+  }
+
+  @Override
+  public void onStop() {
+    super.onStop();
+
+    if (socketServer != null) {
+      socketServer.close();
+      socketServer = null;
+    }
+
+    if (priorityExecutor != null) {
+      priorityExecutor.shutdown();
+      priorityExecutor = null;
+    }
+
+    // Classes of the stopped application are reloaded in dev mode.
+    AvroHelper.clearCaches();
   }
 
   public void setProtocolVersionResolver(ProtocolVersionResolver resolver) {
     protocolVersionResolver = resolver;
   }
+
+  private void createCodecs(AsyncResponder responder) {
+    // Codecs of registered protocols are created upfront instead of on their first requests.
+    SpecificData data = responder.getSpecificData();
+    for (Message message : responder.getLocal().getMessages().values()) {
+      datumCache.getDatumReader(message.getRequest(), message.getRequest(), data);
+      datumCache.getDatumWriter(message.getResponse(), data);
+      datumCache.getDatumWriter(message.getErrors(), data);
+    }
+  }
+
+  private ExecutionContext createExecutionContext(String name, Object executor) {
+    if (executor instanceof String) {
+      return Akka.system().dispatchers().lookup((String) executor);
+    } else if (executor instanceof Executor) {
+      if (metricsEnabled && executor instanceof ThreadPoolExecutor) {
+        metricsRegistry.addExecutor(name, (ThreadPoolExecutor) executor);
+      }
+      return ExecutionContexts.fromExecutor((Executor) executor);
+    } else {
+      throw new RuntimeException("Unable to use " + executor + " as executor for " + name);
+    }
+  }
+
+  private void setConcurrencyLimiter(AsyncResponder responder, String protocol,
+      Map<String, Object> concurrencyLimits) {
+    // A limit is either a fixed number of concurrent requests or a configured limiter.
+    Object limit = concurrencyLimits.get(protocol);
+    if (limit == null) {
+      return;
+    }
+
+    ConcurrencyLimiter limiter;
+    if (limit instanceof ConcurrencyLimiter) {
+      limiter = (ConcurrencyLimiter) limit;
+    } else if (limit instanceof Number) {
+      limiter = new ConcurrencyLimiter(((Number) limit).intValue());
+    } else if (limit instanceof String) {
+      limiter = new ConcurrencyLimiter(Integer.parseInt((String) limit));
+    } else {
+      throw new RuntimeException("Unable to use " + limit + " as concurrency limit for "
+          + protocol);
+    }
+    if (metricsEnabled) {
+      metricsRegistry.addLimiter(protocol, limiter);
+    }
+    responder.setConcurrencyLimiter(limiter);
+  }
+
+  private void setExecutors(AsyncResponder responder, String protocol,
+      Map<String, Object> executors) {
+    // Executors are keyed by protocol names, or by protocol and message names separated by "#".
+    Object executor = executors.get(protocol);
+    if (executor != null) {
+      responder.setExecutionContext(createExecutionContext(protocol, executor));
+    }
+    for (String message : responder.getLocal().getMessages().keySet()) {
+      String name = protocol + "#" + message;
+      executor = executors.get(name);
+      if (executor != null) {
+        responder.setExecutionContext(message, createExecutionContext(name, executor));
+      }
+    }
+  }
 }
@@ -21,18 +21,32 @@
 package org.apache.avro.ipc;
 
 import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.URL;
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
 
 import org.apache.avro.AvroRuntimeException;
+import org.apache.avro.io.Decoder;
+import org.apache.avro.io.DecoderFactory;
+import org.apache.avro.io.Encoder;
+import org.apache.avro.io.EncoderFactory;
 import org.apache.avro.specific.SpecificRecord;
+import org.apache.avro.util.ByteBufferInputStream;
+import org.apache.avro.util.ByteBufferOutputStream;
 
 import me.tfeng.play.avro.AsyncHttpException;
 import me.tfeng.play.avro.AsyncTransceiver;
+import me.tfeng.play.avro.PayloadCompression;
+import me.tfeng.play.avro.PayloadTooLargeException;
+import me.tfeng.play.avro.StreamingResponse;
 import me.tfeng.play.http.RequestPreparer;
 import me.tfeng.play.plugins.AvroPlugin;
 import me.tfeng.play.plugins.HttpPlugin;
@@ -45,14 +59,273 @@ import play.libs.ws.WSResponse;
  */
 public class AsyncHttpTransceiver extends HttpTransceiver implements AsyncTransceiver {
 
+  private static class BufferInputStream extends InputStream {
+
+    private ByteBuffer current = ByteBuffer.allocate(0);
+
+    private final Iterator<ByteBuffer> iterator;
+
+    private BufferInputStream(List<ByteBuffer> buffers) {
+      iterator = buffers.iterator();
+    }
+
+    @Override
+    public int available() {
+      return current.remaining();
+    }
+
+    @Override
+    public int read() {
+      if (!ensureAvailable()) {
+        return -1;
+      }
+      return current.get() & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) {
+      if (len == 0) {
+        return 0;
+      }
+      if (!ensureAvailable()) {
+        return -1;
+      }
+      int length = Math.min(len, current.remaining());
+      current.get(b, off, length);
+      return length;
+    }
+
+    private boolean ensureAvailable() {
+      while (!current.hasRemaining()) {
+        if (!iterator.hasNext()) {
+          return false;
+        }
+        current = iterator.next();
+      }
+      return true;
+    }
+  }
+
+  private static class FrameInputStream extends InputStream {
+
+    private final InputStream in;
+
+    private int remaining;
+
+    private boolean finished;
+
+    private FrameInputStream(InputStream in) {
+      this.in = in;
+    }
+
+    @Override
+    public void close() throws IOException {
+      in.close();
+    }
+
+    @Override
+    public int read() throws IOException {
+      if (!ensureAvailable()) {
+        return -1;
+      }
+      int b = in.read();
+      if (b < 0) {
+        throw new EOFException("Unexpected end of frame");
+      }
+      remaining--;
+      return b;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+      if (len == 0) {
+        return 0;
+      }
+      if (!ensureAvailable()) {
+        return -1;
+      }
+      int length = in.read(b, off, Math.min(len, remaining));
+      if (length < 0) {
+        throw new EOFException("Unexpected end of frame");
+      }
+      remaining -= length;
+      return length;
+    }
+
+    private boolean ensureAvailable() throws IOException {
+      while (remaining == 0) {
+        if (finished) {
+          return false;
+        }
+        int length = 0;
+        for (int i = 0; i < 4; i++) {
+          int b = in.read();
+          if (b < 0) {
+            throw new EOFException("Unexpected end of frames");
+          }
+          length = (length << 8) | b;
+        }
+        if (length < 0) {
+          throw new IOException("Invalid frame length " + length);
+        }
+        finished = length == 0;
+        remaining = length;
+      }
+      return true;
+    }
+  }
+
+  public static final String BATCH_CONTENT_TYPE = "avro/batch";
+
+  // Batches with this header carry a handshake in their first calls only.
+  public static final String BATCH_HANDSHAKE_HEADER = "Avro-Batch-Handshake";
+
+  public static final String SHARED_HANDSHAKE = "shared";
+
+  public static int getFramedLength(List<ByteBuffer> buffers) {
+    int length = 4;
+    for (ByteBuffer buffer : buffers) {
+      if (buffer.hasRemaining()) {
+        length += 4 + buffer.remaining();
+      }
+    }
+    return length;
+  }
+
+  public static List<List<ByteBuffer>> readBatch(List<ByteBuffer> buffers) throws IOException {
+    Decoder in = DecoderFactory.get().binaryDecoder(new ByteBufferInputStream(buffers), null);
+    List<List<ByteBuffer>> batch = new ArrayList<>();
+    for (long i = in.readArrayStart(); i > 0; i = in.arrayNext()) {
+      for (long j = 0; j < i; j++) {
+        batch.add(Collections.singletonList(in.readBytes(null)));
+      }
+    }
+    return batch;
+  }
+
+  public static List<ByteBuffer> readBuffers(byte[] bytes) throws IOException {
+    return readBuffers(ByteBuffer.wrap(bytes));
+  }
+
+  public static List<ByteBuffer> readBuffers(ByteBuffer body) throws IOException {
+    // Slice frames out of the body without copying them.
+    List<ByteBuffer> buffers = new ArrayList<>();
+    while (true) {
+      if (body.remaining() < 4) {
+        throw new EOFException("Unexpected end of frames");
+      }
+      int length = body.getInt();
+      if (length == 0) {
+        return buffers;
+      } else if (length < 0 || length > body.remaining()) {
+        throw new IOException("Invalid frame length " + length);
+      }
+      ByteBuffer buffer = body.slice();
+      buffer.limit(length);
+      buffers.add(buffer);
+      body.position(body.position() + length);
+    }
+  }
+
   public static List<ByteBuffer> readBuffers(InputStream in) throws IOException {
     return HttpTransceiver.readBuffers(in);
   }
 
+  public static List<ByteBuffer> readBuffers(InputStream in, long maxLength) throws IOException {
+    // Frame lengths are checked against the limit before buffers are allocated for them.
+    DataInputStream dataIn = new DataInputStream(in);
+    List<ByteBuffer> buffers = new ArrayList<>();
+    long remaining = maxLength < 0 ? Long.MAX_VALUE : maxLength;
+    while (true) {
+      int length = dataIn.readInt();
+      if (length == 0) {
+        return buffers;
+      } else if (length < 0) {
+        throw new IOException("Invalid frame length " + length);
+      }
+      remaining -= 4L + length;
+      if (remaining < 0) {
+        throw new PayloadTooLargeException("Payload is larger than the limit of " + maxLength
+            + " bytes");
+      }
+      byte[] bytes = new byte[length];
+      dataIn.readFully(bytes);
+      buffers.add(ByteBuffer.wrap(bytes));
+    }
+  }
+
+  public static byte[] toByteArray(List<ByteBuffer> buffers) {
+    // Allocate the framed body once at its exact size.
+    ByteBuffer body = ByteBuffer.allocate(getFramedLength(buffers));
+    for (ByteBuffer buffer : buffers) {
+      if (buffer.hasRemaining()) {
+        body.putInt(buffer.remaining());
+        body.put(buffer.duplicate());
+      }
+    }
+    body.putInt(0);
+    return body.array();
+  }
+
+  public static InputStream toInputStream(List<ByteBuffer> buffers) {
+    // Only the length prefixes are allocated. The stream reads the buffers themselves.
+    List<ByteBuffer> frames = new ArrayList<>(buffers.size() * 2 + 1);
+    for (ByteBuffer buffer : buffers) {
+      if (buffer.hasRemaining()) {
+        ByteBuffer prefix = ByteBuffer.allocate(4);
+        prefix.putInt(buffer.remaining()).flip();
+        frames.add(prefix);
+        frames.add(buffer.duplicate());
+      }
+    }
+    frames.add(ByteBuffer.allocate(4));
+    return new BufferInputStream(frames);
+  }
+
+  public static List<ByteBuffer> writeBatch(List<List<ByteBuffer>> batch) throws IOException {
+    // Each element is encoded as Avro bytes, with the buffers of a call written one after another.
+    ByteBufferOutputStream stream = new ByteBufferOutputStream();
+    Encoder out = EncoderFactory.get().binaryEncoder(stream, null);
+    out.writeArrayStart();
+    out.setItemCount(batch.size());
+    for (List<ByteBuffer> buffers : batch) {
+      out.startItem();
+      long length = 0;
+      for (ByteBuffer buffer : buffers) {
+        length += buffer.remaining();
+      }
+      out.writeLong(length);
+      for (ByteBuffer buffer : buffers) {
+        out.writeFixed(buffer.duplicate());
+      }
+    }
+    out.writeArrayEnd();
+    out.flush();
+    return stream.getBufferList();
+  }
+
   public static void writeBuffers(List<ByteBuffer> buffers, OutputStream out) throws IOException {
     HttpTransceiver.writeBuffers(buffers, out);
   }
 
+  private static byte[] readFully(InputStream in) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    byte[] buffer = new byte[8192];
+    int length;
+    while ((length = in.read(buffer)) >= 0) {
+      out.write(buffer, 0, length);
+    }
+    return out.toByteArray();
+  }
+
+  private volatile int compressionThreshold = -1;
+
+  private volatile boolean inlineFraming = true;
+
+  private volatile long maxResponseSize = -1;
+
+  private volatile String remoteAcceptEncoding;
+
   private final URL url;
 
   public AsyncHttpTransceiver(URL url) {
@@ -60,12 +333,81 @@ public class AsyncHttpTransceiver extends HttpTransceiver implements AsyncTransc
     this.url = url;
   }
 
+  public int getCompressionThreshold() {
+    return compressionThreshold;
+  }
+
+  public long getMaxResponseSize() {
+    return maxResponseSize;
+  }
+
+  public boolean isInlineFraming() {
+    return inlineFraming;
+  }
+
+  public void setCompressionThreshold(int compressionThreshold) {
+    this.compressionThreshold = compressionThreshold;
+  }
+
+  public void setInlineFraming(boolean inlineFraming) {
+    this.inlineFraming = inlineFraming;
+  }
+
+  public void setMaxResponseSize(long maxResponseSize) {
+    // Limits the size of decompressed responses; negative values disable the limit.
+    this.maxResponseSize = maxResponseSize;
+  }
+
   @Override
   public Promise<List<ByteBuffer>> transceive(List<ByteBuffer> request,
       RequestPreparer postRequestPreparer) {
     return asyncReadBuffers(asyncWriteBuffers(request, postRequestPreparer));
   }
 
+  public Promise<InputStream> transceiveStreaming(List<ByteBuffer> request,
+      RequestPreparer postRequestPreparer) throws IOException {
+    byte[] body = toByteArray(request);
+    String encoding = null;
+    if (compressionThreshold >= 0 && body.length >= compressionThreshold) {
+      encoding = PayloadCompression.selectEncoding(remoteAcceptEncoding);
+    }
+    if (encoding != null) {
+      body = PayloadCompression.compress(encoding, body);
+    }
+    RequestPreparer compressionPreparer = getCompressionPreparer(encoding, postRequestPreparer);
+    RequestPreparer streamingPreparer = (builder, contentType, url) -> {
+      builder.setHeader(StreamingResponse.ACCEPT_STREAMING_HEADER, "true");
+      compressionPreparer.prepare(builder, contentType, url);
+    };
+    return HttpPlugin.getInstance()
+        .postRequestStreaming(url, getContentType(), body, streamingPreparer)
+        .transform(response -> {
+          InputStream in = response.getBody();
+          try {
+            int status = response.getStatus();
+            if (status >= 400) {
+              throw new AsyncHttpException(status, url);
+            }
+            String acceptEncoding = response.getHeader(PayloadCompression.ACCEPT_ENCODING_HEADER);
+            if (acceptEncoding != null) {
+              remoteAcceptEncoding = acceptEncoding;
+            }
+            String contentEncoding =
+                response.getHeader(PayloadCompression.CONTENT_ENCODING_HEADER);
+            if (contentEncoding != null) {
+              // The server did not stream the response.
+              in = PayloadCompression.decompress(contentEncoding, ByteBuffer.wrap(readFully(in)),
+                  maxResponseSize);
+            }
+            return new FrameInputStream(in);
+          } catch (Throwable t) {
+            in.close();
+            throw new AvroRuntimeException(t);
+          }
+        }, throwable -> throwable instanceof RuntimeException
+            ? throwable : new AvroRuntimeException(throwable));
+  }
+
   protected Promise<List<ByteBuffer>> asyncReadBuffers(Promise<WSResponse> responsePromise) {
     return responsePromise.transform(response -> {
       try {
@@ -73,8 +415,19 @@ public class AsyncHttpTransceiver extends HttpTransceiver implements AsyncTransc
         if (status >= 400) {
           throw new AsyncHttpException(status, url);
         }
-        InputStream stream = response.getBodyAsStream();
-        return readBuffers(stream);
+        String acceptEncoding = response.getHeader(PayloadCompression.ACCEPT_ENCODING_HEADER);
+        if (acceptEncoding != null) {
+          remoteAcceptEncoding = acceptEncoding;
+        }
+        byte[] body = response.asByteArray();
+        String encoding = response.getHeader(PayloadCompression.CONTENT_ENCODING_HEADER);
+        if (encoding == null) {
+          return readBuffers(body);
+        }
+        try (InputStream in = PayloadCompression.decompress(encoding, ByteBuffer.wrap(body),
+            maxResponseSize)) {
+          return readBuffers(in, maxResponseSize);
+        }
       } catch (Throwable t) {
         throw new AvroRuntimeException(t);
       }
@@ -87,13 +440,34 @@ public class AsyncHttpTransceiver extends HttpTransceiver implements AsyncTransc
     });
   }
 
-  protected Promise<WSResponse> asyncWriteBuffers(List<ByteBuffer> buffers, RequestPreparer postRequestPreparer) {
-    return Promise.promise(() -> {
-      ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
-      writeBuffers(buffers, outputStream);
-      return outputStream;
-    }, AvroPlugin.getInstance().getExecutionContext())
-        .flatMap(outputStream -> postRequest(url, outputStream.toByteArray(), postRequestPreparer));
+  protected Promise<WSResponse> asyncWriteBuffers(List<ByteBuffer> buffers,
+      RequestPreparer postRequestPreparer) {
+    if (inlineFraming) {
+      // Frame and post on the calling thread; the body is sized exactly and copied only once.
+      try {
+        return postBody(toByteArray(buffers), postRequestPreparer);
+      } catch (Throwable t) {
+        return Promise.throwing(t);
+      }
+    } else {
+      return Promise.promise(() -> toByteArray(buffers),
+          AvroPlugin.getInstance().getExecutionContext())
+          .flatMap(body -> postBody(body, postRequestPreparer));
+    }
+  }
+
+  protected RequestPreparer getCompressionPreparer(String encoding,
+      RequestPreparer postRequestPreparer) {
+    return (builder, contentType, url) -> {
+      builder.setHeader(PayloadCompression.ACCEPT_ENCODING_HEADER,
+          PayloadCompression.getAcceptEncoding());
+      if (encoding != null) {
+        builder.setHeader(PayloadCompression.CONTENT_ENCODING_HEADER, encoding);
+      }
+      if (postRequestPreparer != null) {
+        postRequestPreparer.prepare(builder, contentType, url);
+      }
+    };
   }
 
   protected String getContentType() {
@@ -104,4 +478,16 @@ public class AsyncHttpTransceiver extends HttpTransceiver implements AsyncTransc
       throws IOException {
     return HttpPlugin.getInstance().postRequest(url, getContentType(), body, postRequestPreparer);
   }
+
+  private Promise<WSResponse> postBody(byte[] body, RequestPreparer postRequestPreparer)
+      throws IOException {
+    String encoding = null;
+    if (compressionThreshold >= 0 && body.length >= compressionThreshold) {
+      encoding = PayloadCompression.selectEncoding(remoteAcceptEncoding);
+    }
+    if (encoding != null) {
+      body = PayloadCompression.compress(encoding, body);
+    }
+    return postRequest(url, body, getCompressionPreparer(encoding, postRequestPreparer));
+  }
 }
@@ -0,0 +1,368 @@
+/**
+ * Copyright 2014 Thomas Feng
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.avro.ipc;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import org.apache.avro.AvroRuntimeException;
+import org.apache.avro.Protocol;
+import org.apache.avro.Schema;
+import org.apache.avro.generic.GenericDatumWriter;
+import org.apache.avro.io.BinaryDecoder;
+import org.apache.avro.io.BinaryEncoder;
+import org.apache.avro.io.DecoderFactory;
+import org.apache.avro.io.EncoderFactory;
+import org.apache.avro.specific.SpecificDatumWriter;
+import org.apache.avro.util.ByteBufferInputStream;
+import org.apache.avro.util.ByteBufferOutputStream;
+import org.jboss.netty.bootstrap.ClientBootstrap;
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelFactory;
+import org.jboss.netty.channel.ChannelHandlerContext;
+import org.jboss.netty.channel.ChannelStateEvent;
+import org.jboss.netty.channel.Channels;
+import org.jboss.netty.channel.ExceptionEvent;
+import org.jboss.netty.channel.MessageEvent;
+import org.jboss.netty.channel.SimpleChannelUpstreamHandler;
+import org.jboss.netty.channel.socket.nio.NioClientSocketChannelFactory;
+import org.jboss.netty.util.HashedWheelTimer;
+import org.jboss.netty.util.Timeout;
+import org.jboss.netty.util.Timer;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import me.tfeng.play.avro.AsyncTransceiver;
+import me.tfeng.play.avro.DeadlineExceededException;
+import me.tfeng.play.avro.DeadlineHelper;
+import me.tfeng.play.avro.SocketFrame;
+import me.tfeng.play.common.Constants;
+import me.tfeng.play.http.RequestPreparer;
+import play.Logger;
+import play.Logger.ALogger;
+import play.libs.F.Promise;
+import play.libs.F.RedeemablePromise;
+
+/**
+ * @author Thomas Feng (huining.feng@gmail.com)
+ */
+public class AsyncSocketTransceiver extends Transceiver implements AsyncTransceiver {
+
+  private class Connection extends SimpleChannelUpstreamHandler {
+
+    private volatile Channel channel;
+
+    private final int index;
+
+    private volatile boolean isReady;
+
+    private final AtomicInteger nextSerial = new AtomicInteger(SocketFrame.BIND_SERIAL);
+
+    private final ConcurrentMap<Integer, PendingResponse> pendingResponses =
+        new ConcurrentHashMap<>();
+
+    private final Promise<Connection> promise;
+
+    private final scala.concurrent.Promise<Connection> scalaPromise =
+        scala.concurrent.Promise$.MODULE$.apply();
+
+    public Connection(int index) {
+      this.index = index;
+      promise = Promise.wrap(scalaPromise.future());
+    }
+
+    @Override
+    public void channelClosed(ChannelHandlerContext context, ChannelStateEvent event) {
+      fail(new IOException("Connection to " + address + " is closed"));
+    }
+
+    @Override
+    public void exceptionCaught(ChannelHandlerContext context, ExceptionEvent event) {
+      LOG.warn("Exception thrown from connection to " + address + "; closing connection",
+          event.getCause());
+      event.getChannel().close();
+    }
+
+    @Override
+    public void messageReceived(ChannelHandlerContext context, MessageEvent event) {
+      SocketFrame frame = (SocketFrame) event.getMessage();
+      PendingResponse response = pendingResponses.remove(frame.getSerial());
+      if (response == null) {
+        // Responses that arrive after their requests have timed out are dropped.
+        LOG.debug("Ignoring response with unknown serial " + frame.getSerial() + " from "
+            + address);
+      } else if (frame.isEmpty()) {
+        response.failure(new AvroRuntimeException("Unable to process request on " + address));
+      } else {
+        response.success(frame.getBuffers());
+      }
+    }
+
+    private void connect() {
+      ClientBootstrap bootstrap = new ClientBootstrap(CHANNEL_FACTORY);
+      bootstrap.setPipelineFactory(() -> Channels.pipeline(new SocketFrame.Decoder(),
+          new SocketFrame.Encoder(), this));
+      bootstrap.setOption("tcpNoDelay", true);
+      bootstrap.setOption("keepAlive", true);
+      bootstrap.connect(address).addListener(future -> {
+        if (future.isSuccess()) {
+          channel = future.getChannel();
+          channel.write(new SocketFrame(SocketFrame.BIND_SERIAL, Collections.singletonList(
+              ByteBuffer.wrap(protocolName.getBytes(Constants.UTF8)))));
+          Promise<Protocol> handshake = handshake(false, requestTimeout);
+          handshake.onRedeem(remoteProtocol -> {
+            remote = remoteProtocol;
+            isReady = true;
+            scalaPromise.trySuccess(this);
+          });
+          handshake.onFailure(t -> {
+            fail(t);
+            channel.close();
+          });
+        } else {
+          fail(future.getCause());
+        }
+      });
+    }
+
+    private void fail(Throwable t) {
+      connections.compareAndSet(index, this, null);
+      scalaPromise.tryFailure(t);
+      for (Integer serial : pendingResponses.keySet()) {
+        PendingResponse response = pendingResponses.remove(serial);
+        if (response != null) {
+          response.failure(t);
+        }
+      }
+    }
+
+    private Promise<Protocol> handshake(boolean includeProtocol, long timeout)
+        throws IOException {
+      // One handshake per connection; requests sent afterwards carry no handshake.
+      ByteBufferOutputStream bbo = new ByteBufferOutputStream();
+      BinaryEncoder out = EncoderFactory.get().binaryEncoder(bbo, null);
+      MD5 localHash = new MD5(local.getMD5());
+      HANDSHAKE_REQUEST_WRITER.write(new HandshakeRequest(localHash,
+          includeProtocol ? local.toString() : null, localHash, null), out);
+      META_WRITER.write(Collections.emptyMap(), out);
+      out.writeString("");
+      out.flush();
+
+      return send(bbo.getBufferList(), timeout, false).flatMap(response -> {
+        BinaryDecoder in =
+            DecoderFactory.get().binaryDecoder(new ByteBufferInputStream(response), null);
+        HandshakeResponse handshake = IpcRequestor.HANDSHAKE_RESPONSE_READER.read(null, in);
+        switch (handshake.getMatch()) {
+        case BOTH:
+          return Promise.pure(local);
+        case CLIENT:
+          return Promise.pure(Protocol.parse(handshake.getServerProtocol()));
+        default:
+          if (includeProtocol) {
+            throw new AvroRuntimeException("Unable to complete handshake with " + address);
+          }
+          return handshake(true, timeout);
+        }
+      });
+    }
+
+    private Promise<List<ByteBuffer>> send(List<ByteBuffer> request, long timeout,
+        boolean isDeadline) {
+      int serial = nextSerial.incrementAndGet();
+      PendingResponse response = new PendingResponse();
+      pendingResponses.put(serial, response);
+      if (timeout > 0) {
+        // Requests that are never answered are removed, so that their serials do not leak.
+        response.timeout = TIMER.newTimeout(handle -> {
+          if (pendingResponses.remove(serial, response)) {
+            response.failure(isDeadline
+                ? new DeadlineExceededException("Deadline expired before response from "
+                    + address)
+                : new TimeoutException("No response from " + address + " in " + timeout
+                    + " ms"));
+          }
+        }, timeout, TimeUnit.MILLISECONDS);
+      }
+      channel.write(new SocketFrame(serial, request)).addListener(future -> {
+        if (!future.isSuccess() && pendingResponses.remove(serial, response)) {
+          response.failure(future.getCause());
+        }
+      });
+      return response.promise;
+    }
+  }
+
+  private static class PendingResponse {
+
+    private final RedeemablePromise<List<ByteBuffer>> promise = RedeemablePromise.empty();
+
+    private volatile Timeout timeout;
+
+    public void failure(Throwable t) {
+      cancelTimeout();
+      promise.failure(t);
+    }
+
+    public void success(List<ByteBuffer> buffers) {
+      cancelTimeout();
+      promise.success(buffers);
+    }
+
+    private void cancelTimeout() {
+      Timeout currentTimeout = timeout;
+      if (currentTimeout != null) {
+        currentTimeout.cancel();
+      }
+    }
+  }
+
+  private static final ChannelFactory CHANNEL_FACTORY = new NioClientSocketChannelFactory(
+      Executors.newCachedThreadPool(new ThreadFactoryBuilder()
+          .setNameFormat("avro-socket-boss-%d").setDaemon(true).build()),
+      Executors.newCachedThreadPool(new ThreadFactoryBuilder()
+          .setNameFormat("avro-socket-worker-%d").setDaemon(true).build()));
+
+  private static final SpecificDatumWriter<HandshakeRequest> HANDSHAKE_REQUEST_WRITER =
+      new SpecificDatumWriter<>(HandshakeRequest.class);
+
+  private static final ALogger LOG = Logger.of(AsyncSocketTransceiver.class);
+
+  private static final GenericDatumWriter<Map<String, ByteBuffer>> META_WRITER =
+      new GenericDatumWriter<>(Schema.createMap(Schema.create(Schema.Type.BYTES)));
+
+  private static final Timer TIMER = new HashedWheelTimer(new ThreadFactoryBuilder()
+      .setNameFormat("avro-socket-timer-%d").setDaemon(true).build(), 10, TimeUnit.MILLISECONDS);
+
+  private final InetSocketAddress address;
+
+  private final AtomicReferenceArray<Connection> connections;
+
+  private final Protocol local;
+
+  private final AtomicInteger nextConnection = new AtomicInteger();
+
+  private final String protocolName;
+
+  private volatile Protocol remote;
+
+  private volatile long requestTimeout = -1;
+
+  public AsyncSocketTransceiver(InetSocketAddress address, Protocol local, int connections) {
+    this.address = address;
+    this.local = local;
+    this.connections = new AtomicReferenceArray<>(Math.max(connections, 1));
+    protocolName = local.getNamespace() == null ? local.getName()
+        : local.getNamespace() + "." + local.getName();
+  }
+
+  @Override
+  public void close() throws IOException {
+    for (int i = 0; i < connections.length(); i++) {
+      Connection connection = connections.getAndSet(i, null);
+      if (connection != null && connection.channel != null) {
+        connection.channel.close();
+      }
+    }
+  }
+
+  @Override
+  public Protocol getRemote() {
+    return remote;
+  }
+
+  @Override
+  public String getRemoteName() throws IOException {
+    return address.toString();
+  }
+
+  @Override
+  public boolean isConnected() {
+    // Handshakes are completed when connections are established, so requests never carry them.
+    return true;
+  }
+
+  public long getRequestTimeout() {
+    return requestTimeout;
+  }
+
+  @Override
+  public List<ByteBuffer> readBuffers() throws IOException {
+    throw new UnsupportedOperationException("Transceiver of " + address
+        + " only transceives asynchronously; call transceive(List, RequestPreparer) instead");
+  }
+
+  public void setRequestTimeout(long requestTimeout) {
+    this.requestTimeout = requestTimeout;
+  }
+
+  @Override
+  public Promise<List<ByteBuffer>> transceive(List<ByteBuffer> request,
+      RequestPreparer postRequestPreparer) throws IOException {
+    // Requests are sent round robin over the connections; HTTP request preparers do not apply.
+    // The deadline of the current call is read here, before the request may wait for connection.
+    Long deadline = DeadlineHelper.getDeadline();
+    long remaining =
+        deadline == null ? -1 : Math.max(DeadlineHelper.getRemainingMillis(deadline), 1);
+    long currentTimeout = requestTimeout;
+    boolean isDeadline = remaining > 0 && (currentTimeout <= 0 || remaining < currentTimeout);
+    long timeout = isDeadline ? remaining : currentTimeout;
+    Connection connection = getConnection();
+    if (connection.isReady) {
+      return connection.send(request, timeout, isDeadline);
+    } else {
+      return connection.promise.flatMap(
+          readyConnection -> readyConnection.send(request, timeout, isDeadline));
+    }
+  }
+
+  @Override
+  public void writeBuffers(List<ByteBuffer> buffers) throws IOException {
+    throw new UnsupportedOperationException("Transceiver of " + address
+        + " only transceives asynchronously; call transceive(List, RequestPreparer) instead");
+  }
+
+  private Connection getConnection() {
+    int index = (nextConnection.getAndIncrement() & Integer.MAX_VALUE) % connections.length();
+    Connection connection = connections.get(index);
+    if (connection == null) {
+      synchronized (connections) {
+        connection = connections.get(index);
+        if (connection == null) {
+          connection = new Connection(index);
+          connections.set(index, connection);
+          connection.connect();
+        }
+      }
+    }
+    return connection;
+  }
+}
@@ -20,37 +20,59 @@
 
 package org.apache.avro.ipc;
 
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
 import java.io.IOException;
+import java.io.InputStream;
 import java.lang.reflect.Method;
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.avro.AvroRuntimeException;
 import org.apache.avro.Protocol;
 import org.apache.avro.Schema;
+import org.apache.avro.generic.GenericData;
 import org.apache.avro.generic.GenericDatumReader;
 import org.apache.avro.generic.GenericDatumWriter;
 import org.apache.avro.io.BinaryDecoder;
+import org.apache.avro.io.BinaryEncoder;
 import org.apache.avro.io.DatumReader;
 import org.apache.avro.io.DatumWriter;
 import org.apache.avro.io.DecoderFactory;
+import org.apache.avro.io.EncoderFactory;
 import org.apache.avro.ipc.specific.SpecificRequestor;
 import org.apache.avro.specific.SpecificData;
 import org.apache.avro.specific.SpecificDatumReader;
 import org.apache.avro.specific.SpecificDatumWriter;
 import org.apache.avro.util.ByteBufferInputStream;
+import org.apache.avro.util.ByteBufferOutputStream;
 
 import me.tfeng.play.avro.AsyncTransceiver;
 import me.tfeng.play.avro.AuthTokenPreservingRequestPreparer;
+import me.tfeng.play.avro.AvroHelper;
+import me.tfeng.play.avro.CallContext;
+import me.tfeng.play.avro.DeadlineExceededException;
+import me.tfeng.play.avro.DeadlineHelper;
+import me.tfeng.play.avro.PriorityHelper;
+import me.tfeng.play.avro.RequestCoalescer;
+import me.tfeng.play.avro.RequestPriority;
 import me.tfeng.play.avro.RequestPreparerChain;
+import me.tfeng.play.avro.ResponseCache;
 import me.tfeng.play.avro.ResponseProcessor;
 import me.tfeng.play.http.RequestPreparer;
+import me.tfeng.play.plugins.AvroPlugin;
 import me.tfeng.play.plugins.HttpPlugin;
 import play.Logger;
 import play.Logger.ALogger;
+import play.libs.F.Callback;
 import play.libs.F.Promise;
+import play.libs.F.RedeemablePromise;
 import play.mvc.Controller;
 import play.mvc.Http;
 
@@ -59,23 +81,264 @@ import play.mvc.Http;
  */
 public class IpcRequestor extends SpecificRequestor implements ResponseProcessor {
 
+  public class Batch {
+
+    // Calls may be added from several threads, so the lists are only accessed while holding the
+    // batch's lock.
+    private final List<RedeemablePromise<Object>> promises = new ArrayList<>();
+
+    private final List<Request> requests = new ArrayList<>();
+
+    public synchronized Promise<Object> add(String message, Object[] args) {
+      RedeemablePromise<Object> promise = RedeemablePromise.empty();
+      CallContext context = new CallContext();
+      Long timeout;
+      try {
+        timeout = writeCallMeta(message, context);
+      } catch (DeadlineExceededException e) {
+        promise.failure(e);
+        return promise;
+      }
+      requests.add(new Request(message, args, context));
+      promises.add(promise);
+      return withDeadline(promise, timeout, message, null);
+    }
+
+    public synchronized Promise<List<Object>> send() throws Exception {
+      if (requests.isEmpty()) {
+        return Promise.pure(Collections.emptyList());
+      }
+      AsyncTransceiver transceiver = (AsyncTransceiver) getTransceiver();
+      if (!(transceiver instanceof AsyncHttpTransceiver)) {
+        // Only the HTTP transport has a batch endpoint. Other transports multiplex calls on their
+        // connections, so each call of the batch is sent on its own.
+        for (int i = 0; i < requests.size(); i++) {
+          sendAlone(transceiver, requests.get(i), promises.get(i));
+        }
+        return Promise.sequence(new ArrayList<Promise<Object>>(promises));
+      }
+      List<List<ByteBuffer>> batch = new ArrayList<>(requests.size());
+      for (Request request : requests) {
+        // The server keeps the handshake of the first call for the rest of the batch.
+        batch.add(batch.isEmpty() ? request.getBytes() : request.getBytesWithoutHandshake());
+      }
+      List<Request> sentRequests = new ArrayList<>(requests);
+      List<RedeemablePromise<Object>> sentPromises = new ArrayList<>(promises);
+      RequestPreparer postRequestPreparer =
+          new RequestPreparerChain(getRequestPreparer(), BATCH_REQUEST_PREPARER);
+      Promise<List<ByteBuffer>> response;
+      try {
+        response = transceiver.transceive(AsyncHttpTransceiver.writeBatch(batch),
+            postRequestPreparer);
+      } catch (Exception e) {
+        response = Promise.throwing(e);
+      }
+      response.onRedeem(buffers -> redeem(sentRequests, sentPromises, buffers));
+      response.onFailure(t -> fail(sentRequests, sentPromises, t));
+      return Promise.sequence(new ArrayList<Promise<Object>>(sentPromises));
+    }
+
+    private void fail(List<Request> requests, List<RedeemablePromise<Object>> promises,
+        Throwable t) {
+      requests.forEach(request -> notifyFailure(request, t));
+      promises.forEach(promise -> promise.failure(t));
+    }
+
+    private void redeem(List<Request> requests, List<RedeemablePromise<Object>> promises,
+        List<ByteBuffer> response) {
+      List<List<ByteBuffer>> responses;
+      ByteBuffer handshake;
+      try {
+        responses = AsyncHttpTransceiver.readBatch(response);
+        if (responses.size() != requests.size()) {
+          throw new AvroRuntimeException("Expected " + requests.size()
+              + " responses in batch; got " + responses.size());
+        }
+        handshake = readHandshake(responses.get(0));
+      } catch (Exception e) {
+        fail(requests, promises, e);
+        return;
+      }
+      for (int i = 0; i < requests.size(); i++) {
+        Request request = requests.get(i);
+        List<ByteBuffer> buffers = responses.get(i);
+        if (buffers.get(0).hasRemaining()) {
+          if (i > 0 && handshake != null) {
+            // Only the first response carries the handshake, which applies to all of them.
+            List<ByteBuffer> handshakeBuffers = new ArrayList<>(buffers.size() + 1);
+            handshakeBuffers.add(handshake.duplicate());
+            handshakeBuffers.addAll(buffers);
+            buffers = handshakeBuffers;
+          }
+          try {
+            promises.get(i).success(processResponse(request, buffers));
+          } catch (Throwable t) {
+            promises.get(i).failure(t);
+          }
+        } else {
+          AvroRuntimeException e = new AvroRuntimeException("Unable to process batched request "
+              + "for " + request.getMessageName() + " on server");
+          notifyFailure(request, e);
+          promises.get(i).failure(e);
+        }
+      }
+    }
+
+    private ByteBuffer readHandshake(List<ByteBuffer> buffers) throws IOException {
+      if (getTransceiver().isConnected() || !buffers.get(0).hasRemaining()) {
+        return null;
+      }
+      List<ByteBuffer> duplicates = new ArrayList<>(buffers.size());
+      buffers.forEach(buffer -> duplicates.add(buffer.duplicate()));
+      BinaryDecoder in =
+          DecoderFactory.get().binaryDecoder(new ByteBufferInputStream(duplicates), null);
+      HandshakeResponse handshake = HANDSHAKE_RESPONSE_READER.read(null, in);
+      if (handshake.getMatch() == HandshakeMatch.NONE) {
+        throw new AvroRuntimeException("Unable to complete handshake for batch");
+      }
+      ByteArrayOutputStream stream = new ByteArrayOutputStream();
+      BinaryEncoder out = EncoderFactory.get().directBinaryEncoder(stream, null);
+      HANDSHAKE_RESPONSE_WRITER.write(handshake, out);
+      return ByteBuffer.wrap(stream.toByteArray());
+    }
+
+    private void sendAlone(AsyncTransceiver transceiver, Request request,
+        RedeemablePromise<Object> promise) throws Exception {
+      Promise<List<ByteBuffer>> response;
+      try {
+        response = transceiver.transceive(request.getBytes(), getRequestPreparer());
+      } catch (Exception e) {
+        response = Promise.throwing(e);
+      }
+      response.onRedeem(buffers -> {
+        try {
+          promise.success(processResponse(request, buffers));
+        } catch (Throwable t) {
+          promise.failure(t);
+        }
+      });
+      response.onFailure(t -> {
+        notifyFailure(request, t);
+        promise.failure(t);
+      });
+    }
+  }
+
+  public class ResponseIterator<T> implements Iterator<T>, Closeable {
+
+    private boolean finished;
+
+    private final BinaryDecoder in;
+
+    private final DatumReader<Object> reader;
+
+    private long remaining;
+
+    private boolean started;
+
+    private final InputStream stream;
+
+    private ResponseIterator(InputStream stream, BinaryDecoder in, DatumReader<Object> reader) {
+      this.stream = stream;
+      this.in = in;
+      this.reader = reader;
+    }
+
+    @Override
+    public void close() throws IOException {
+      // Elements left in the current block are discarded along with the rest of the stream.
+      finished = true;
+      remaining = 0;
+      stream.close();
+    }
+
+    @Override
+    public boolean hasNext() {
+      if (remaining == 0 && !finished) {
+        try {
+          remaining = started ? in.arrayNext() : in.readArrayStart();
+          started = true;
+          if (remaining == 0) {
+            close();
+          }
+        } catch (IOException e) {
+          throw new AvroRuntimeException("Unable to read streamed response", e);
+        }
+      }
+      return remaining > 0;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public T next() {
+      if (!hasNext()) {
+        throw new NoSuchElementException();
+      }
+      remaining--;
+      try {
+        return (T) reader.read(null, in);
+      } catch (IOException e) {
+        throw new AvroRuntimeException("Unable to read streamed response", e);
+      }
+    }
+  }
+
   public class Request extends Requestor.Request {
 
+    private final Object request;
+
     public Request(String messageName, Object request, RPCContext context) {
       super(messageName, request, context);
+      this.request = request;
+    }
+
+    private List<ByteBuffer> getBytesWithoutHandshake() throws Exception {
+      // Same as getBytes(), except that no handshake is prepended.
+      ByteBufferOutputStream bbo = new ByteBufferOutputStream();
+      BinaryEncoder out = EncoderFactory.get().binaryEncoder(bbo, null);
+      Protocol.Message message = getMessage();
+      RPCContext context = getContext();
+      context.setMessage(message);
+      writeRequest(message.getRequest(), request, out);
+      out.flush();
+      List<ByteBuffer> payload = bbo.getBufferList();
+      context.setRequestPayload(payload);
+      for (RPCPlugin plugin : rpcMetaPlugins) {
+        plugin.clientSendRequest(context);
+      }
+      META_WRITER.write(context.requestCallMeta(), out);
+      out.writeString(message.getName());
+      out.flush();
+      bbo.append(payload);
+      return bbo.getBufferList();
     }
   }
 
   public static final SpecificDatumReader<HandshakeResponse> HANDSHAKE_RESPONSE_READER =
       new SpecificDatumReader<>(HandshakeResponse.class);
 
+  public static final SpecificDatumWriter<HandshakeResponse> HANDSHAKE_RESPONSE_WRITER =
+      new SpecificDatumWriter<>(HandshakeResponse.class);
+
   public static final GenericDatumReader<Map<String,ByteBuffer>> META_READER =
       new GenericDatumReader<>(Schema.createMap(Schema.create(Schema.Type.BYTES)));
 
+  public static final GenericDatumWriter<Map<String,ByteBuffer>> META_WRITER =
+      new GenericDatumWriter<>(Schema.createMap(Schema.create(Schema.Type.BYTES)));
+
+  private static final RequestPreparer BATCH_REQUEST_PREPARER = (builder, contentType, url) ->
+      builder.setHeader("Content-Type", AsyncHttpTransceiver.BATCH_CONTENT_TYPE)
+          .setHeader(AsyncHttpTransceiver.BATCH_HANDSHAKE_HEADER,
+              AsyncHttpTransceiver.SHARED_HANDSHAKE);
+
   private static final ALogger LOG = Logger.of(IpcRequestor.class);
 
+  private volatile RequestCoalescer requestCoalescer;
+
   private volatile RequestPreparerChain requestPreparerChain = new RequestPreparerChain();
 
+  private volatile ResponseCache responseCache;
+
   private volatile ResponseProcessor responseProcessor = this;
 
   private boolean useGenericRecord;
@@ -104,20 +367,20 @@ public class IpcRequestor extends SpecificRequestor implements ResponseProcessor
 
   @Override
   public DatumReader<Object> getDatumReader(Schema writer, Schema reader) {
-    if (useGenericRecord) {
-      return new GenericDatumReader<>(writer, reader);
-    } else {
-      return new SpecificDatumReader<>(writer, reader, getSpecificData());
-    }
+    return AvroPlugin.getInstance().getDatumCache().getDatumReader(writer, reader, getData());
   }
 
   @Override
   public DatumWriter<Object> getDatumWriter(Schema schema) {
-    if (useGenericRecord) {
-      return new GenericDatumWriter<>(schema);
-    } else {
-      return new SpecificDatumWriter<>(schema, getSpecificData());
-    }
+    return AvroPlugin.getInstance().getDatumCache().getDatumWriter(schema, getData());
+  }
+
+  public RequestCoalescer getRequestCoalescer() {
+    return requestCoalescer;
+  }
+
+  public ResponseCache getResponseCache() {
+    return responseCache;
   }
 
   public List<RPCPlugin> getRPCPlugins() {
@@ -130,23 +393,38 @@ public class IpcRequestor extends SpecificRequestor implements ResponseProcessor
     if (Promise.class.isAssignableFrom(method.getReturnType())) {
       return promise;
     } else {
-      int timeout = HttpPlugin.getInstance().getRequestTimeout();
+      long timeout = HttpPlugin.getInstance().getRequestTimeout();
+      Long deadline = DeadlineHelper.getDeadline();
+      if (deadline != null) {
+        long remaining = Math.max(DeadlineHelper.getRemainingMillis(deadline), 0);
+        timeout = timeout < 0 ? remaining : Math.min(timeout, remaining);
+      }
       return promise.get(timeout);
     }
   }
 
+  public Batch newBatch() {
+    return new Batch();
+  }
+
   @Override
   public Object process(IpcRequestor requestor, Request request, String message,
       List<ByteBuffer> response) throws Exception {
     ByteBufferInputStream bbi = new ByteBufferInputStream(response);
     BinaryDecoder in = DecoderFactory.get().binaryDecoder(bbi, null);
-    HandshakeResponse handshake = HANDSHAKE_RESPONSE_READER.read(null, in);
     Protocol localProtocol = requestor.getLocal();
     Protocol serverProtocol;
-    if (handshake.getMatch() == HandshakeMatch.BOTH) {
-      serverProtocol = localProtocol;
+    Transceiver transceiver = requestor.getTransceiver();
+    if (transceiver.isConnected()) {
+      // Connected transceivers have completed their handshakes, so responses carry none.
+      serverProtocol = transceiver.getRemote();
     } else {
-      serverProtocol = Protocol.parse(handshake.getServerProtocol());
+      HandshakeResponse handshake = HANDSHAKE_RESPONSE_READER.read(null, in);
+      if (handshake.getMatch() == HandshakeMatch.BOTH) {
+        serverProtocol = localProtocol;
+      } else {
+        serverProtocol = Protocol.parse(handshake.getServerProtocol());
+      }
     }
 
     RPCContext context = request.getContext();
@@ -155,14 +433,14 @@ public class IpcRequestor extends SpecificRequestor implements ResponseProcessor
     if (!in.readBoolean()) {
       Schema localSchema = localProtocol.getMessages().get(message).getResponse();
       Schema remoteSchema = serverProtocol.getMessages().get(message).getResponse();
-      Object responseObject = new SpecificDatumReader<>(remoteSchema, localSchema).read(null, in);
+      Object responseObject = requestor.getDatumReader(remoteSchema, localSchema).read(null, in);
       RPCContextHelper.setResponse(context, responseObject);
       requestor.getRPCPlugins().forEach(plugin -> plugin.clientReceiveResponse(context));
       return responseObject;
     } else {
       Schema localSchema = localProtocol.getMessages().get(message).getErrors();
       Schema remoteSchema = serverProtocol.getMessages().get(message).getErrors();
-      Object error = new SpecificDatumReader<>(remoteSchema, localSchema).read(null, in);
+      Object error = requestor.getDatumReader(remoteSchema, localSchema).read(null, in);
       Exception exception;
       if (error instanceof Exception) {
         exception = (Exception) error;
@@ -180,45 +458,77 @@ public class IpcRequestor extends SpecificRequestor implements ResponseProcessor
   }
 
   public Promise<Object> request(String message, Object[] args) throws Exception {
+    ResponseCache cache = responseCache;
+    RequestCoalescer coalescer = requestCoalescer;
+    boolean isCacheable = cache != null && cache.isCacheable(message);
+    boolean isCoalesced = coalescer != null && coalescer.isCoalesced(message);
+    // Responses are keyed on the arguments only, so calls carrying the Authorization header of
+    // the controller request bypass both, lest one caller get a response meant for another.
+    // Credentials added by other request preparers are not detected and must not change the
+    // responses of cacheable or coalesced messages.
+    if (!isCacheable && !isCoalesced || hasAuthToken()) {
+      return send(message, args, null);
+    }
+
+    Schema requestSchema = getLocal().getMessages().get(message).getRequest();
+    ByteBuffer key = ByteBuffer.wrap(AvroHelper.encodeArguments(requestSchema, args, getData()));
+    if (isCacheable) {
+      Object cachedResponse = cache.getIfPresent(message, key);
+      if (cachedResponse != null) {
+        // Callers may modify responses, so the cached one is never handed out.
+        return Promise.pure(copyResponse(message, cachedResponse));
+      }
+    }
+    if (isCoalesced) {
+      // Every caller of a shared request gets its own copy of the response.
+      return coalescer.coalesce(message, key,
+          () -> send(message, args, isCacheable ? key : null))
+          .map(response -> copyResponse(message, response));
+    } else {
+      return send(message, args, key);
+    }
+  }
+
+  public <T> Promise<ResponseIterator<T>> requestStreaming(String message, Object[] args)
+      throws Exception {
+    Protocol.Message localMessage = getLocal().getMessages().get(message);
+    if (localMessage == null || localMessage.getResponse().getType() != Schema.Type.ARRAY) {
+      throw new AvroRuntimeException("Message " + message + " does not return an array");
+    }
     AsyncTransceiver transceiver = (AsyncTransceiver) getTransceiver();
-    Request ipcRequest = new Request(message, args, new RPCContext());
-    CallFuture<Object> callFuture = ipcRequest.getMessage().isOneWay() ? null : new CallFuture<>();
-    RequestPreparer postRequestPreparer = null;
-    Http.Request controllerRequest = null;
+    CallContext context = new CallContext();
+    Long timeout = writeCallMeta(message, context);
+    RequestPreparer requestPreparer = getRequestPreparer();
+    Request ipcRequest = new Request(message, args, context);
+    List<ByteBuffer> requestBytes = ipcRequest.getBytes();
+    Promise<InputStream> response;
     try {
-      controllerRequest = Controller.request();
-    } catch (RuntimeException e) {
-      LOG.info("Unable to get current request; do not pass headers to downstream calls");
-      postRequestPreparer = requestPreparerChain;
-    }
-    if (controllerRequest != null) {
-      postRequestPreparer = new RequestPreparerChain(
-          new AuthTokenPreservingRequestPreparer(controllerRequest), requestPreparerChain);
+      if (transceiver instanceof AsyncHttpTransceiver) {
+        response = ((AsyncHttpTransceiver) transceiver).transceiveStreaming(requestBytes,
+            requestPreparer);
+      } else {
+        response = transceiver.transceive(requestBytes, requestPreparer)
+            .map(ByteBufferInputStream::new);
+      }
+    } catch (Exception e) {
+      // Plugins have seen the request, so they are told that it failed.
+      response = Promise.throwing(e);
     }
+    Promise<ResponseIterator<T>> iterator = response.transform(
+        stream -> processStreamingResponse(ipcRequest, stream),
+        t -> {
+          notifyFailure(ipcRequest, t);
+          return t;
+        });
+    return withDeadline(iterator, timeout, message, ResponseIterator::close);
+  }
 
-    return transceiver.transceive(ipcRequest.getBytes(), postRequestPreparer).map(
-        response -> {
-          Object responseObject;
-          try {
-            responseObject = responseProcessor.process(this, ipcRequest, message, response);
-            if (callFuture != null) {
-              callFuture.handleResult(responseObject);
-            }
-          } catch (Exception e) {
-            if (callFuture != null) {
-              callFuture.handleError(e);
-            }
-          }
+  public void setRequestCoalescer(RequestCoalescer requestCoalescer) {
+    this.requestCoalescer = requestCoalescer;
+  }
 
-          // transceiverCallback.handleResult(response);
-          if (callFuture == null) {
-            return null;
-          } else if (callFuture.getError() == null) {
-            return callFuture.getResult();
-          } else {
-            throw callFuture.getError();
-          }
-        });
+  public void setResponseCache(ResponseCache responseCache) {
+    this.responseCache = responseCache;
   }
 
   public void setResponseProcessor(ResponseProcessor processor) {
@@ -232,4 +542,176 @@ public class IpcRequestor extends SpecificRequestor implements ResponseProcessor
   public boolean useGenericRecord() {
     return useGenericRecord;
   }
+
+  private Object copyResponse(String message, Object response) {
+    return getData().deepCopy(getLocal().getMessages().get(message).getResponse(), response);
+  }
+
+  private GenericData getData() {
+    return useGenericRecord ? GenericData.get() : getSpecificData();
+  }
+
+  private RequestPreparer getRequestPreparer() {
+    Http.Request controllerRequest;
+    try {
+      controllerRequest = Controller.request();
+    } catch (RuntimeException e) {
+      LOG.info("Unable to get current request; do not pass headers to downstream calls");
+      return requestPreparerChain;
+    }
+    return new RequestPreparerChain(new AuthTokenPreservingRequestPreparer(controllerRequest),
+        requestPreparerChain);
+  }
+
+  private boolean hasAuthToken() {
+    Http.Context context = Http.Context.current.get();
+    return context != null && context.request().getHeader("Authorization") != null;
+  }
+
+  private void notifyFailure(Request request, Throwable t) {
+    RPCContext context = request.getContext();
+    if (t instanceof Exception) {
+      RPCContextHelper.setError(context, (Exception) t);
+    } else {
+      RPCContextHelper.setError(context, new AvroRuntimeException(t));
+    }
+    getRPCPlugins().forEach(plugin -> plugin.clientReceiveResponse(context));
+  }
+
+  private <T> ResponseIterator<T> processStreamingResponse(Request request, InputStream stream)
+      throws Exception {
+    // Only the response header is read here; elements are decoded as the iterator advances.
+    String message = request.getMessageName();
+    RPCContext context = request.getContext();
+    context.setResponsePayload(Collections.emptyList());
+    BinaryDecoder in = DecoderFactory.get().binaryDecoder(stream, null);
+    try {
+      Protocol localProtocol = getLocal();
+      Protocol serverProtocol;
+      Transceiver transceiver = getTransceiver();
+      if (transceiver.isConnected()) {
+        serverProtocol = transceiver.getRemote();
+      } else {
+        HandshakeResponse handshake = HANDSHAKE_RESPONSE_READER.read(null, in);
+        if (handshake.getMatch() == HandshakeMatch.BOTH) {
+          serverProtocol = localProtocol;
+        } else {
+          serverProtocol = Protocol.parse(handshake.getServerProtocol());
+        }
+      }
+      RPCContextHelper.setResponseCallMeta(context, META_READER.read(null, in));
+
+      if (!in.readBoolean()) {
+        Schema localSchema = localProtocol.getMessages().get(message).getResponse();
+        Schema remoteSchema = serverProtocol.getMessages().get(message).getResponse();
+        DatumReader<Object> reader =
+            getDatumReader(remoteSchema.getElementType(), localSchema.getElementType());
+        getRPCPlugins().forEach(plugin -> plugin.clientReceiveResponse(context));
+        return new ResponseIterator<>(stream, in, reader);
+      } else {
+        Schema localSchema = localProtocol.getMessages().get(message).getErrors();
+        Schema remoteSchema = serverProtocol.getMessages().get(message).getErrors();
+        Object error = getDatumReader(remoteSchema, localSchema).read(null, in);
+        Exception exception;
+        if (error instanceof Exception) {
+          exception = (Exception) error;
+        } else {
+          exception = new AvroRuntimeException(error.toString());
+        }
+        RPCContextHelper.setError(context, exception);
+        getRPCPlugins().forEach(plugin -> plugin.clientReceiveResponse(context));
+        throw exception;
+      }
+    } catch (Exception e) {
+      stream.close();
+      throw e;
+    }
+  }
+
+  private Object processResponse(Request request, List<ByteBuffer> response) throws Exception {
+    request.getContext().setResponsePayload(response);
+    try {
+      Object responseObject =
+          responseProcessor.process(this, request, request.getMessageName(), response);
+      return request.getMessage().isOneWay() ? null : responseObject;
+    } catch (Exception e) {
+      if (request.getMessage().isOneWay()) {
+        return null;
+      } else {
+        throw e;
+      }
+    }
+  }
+
+  private Promise<Object> send(String message, Object[] args, ByteBuffer cacheKey)
+      throws Exception {
+    AsyncTransceiver transceiver = (AsyncTransceiver) getTransceiver();
+    CallContext context = new CallContext();
+    Long timeout;
+    try {
+      timeout = writeCallMeta(message, context);
+    } catch (DeadlineExceededException e) {
+      return Promise.throwing(e);
+    }
+    RequestPreparer requestPreparer = getRequestPreparer();
+    Request ipcRequest = new Request(message, args, context);
+    List<ByteBuffer> requestBytes = ipcRequest.getBytes();
+    Promise<List<ByteBuffer>> responsePromise;
+    try {
+      responsePromise = transceiver.transceive(requestBytes, requestPreparer);
+    } catch (Exception e) {
+      // Plugins have seen the request, so they are told that it failed.
+      responsePromise = Promise.throwing(e);
+    }
+    Promise<Object> result = responsePromise.transform(
+        response -> {
+          Object responseObject = processResponse(ipcRequest, response);
+          ResponseCache cache = responseCache;
+          if (cacheKey != null && cache != null && responseObject != null) {
+            cache.put(message, cacheKey, copyResponse(message, responseObject));
+          }
+          return responseObject;
+        },
+        t -> {
+          notifyFailure(ipcRequest, t);
+          return t;
+        });
+    return withDeadline(result, timeout, message, null);
+  }
+
+  private <T> Promise<T> withDeadline(Promise<T> promise, Long timeout, String message,
+      Callback<T> discard) {
+    // Transports cannot time out single requests, so callers stop waiting at the deadline and
+    // responses arriving afterwards are discarded.
+    if (timeout == null) {
+      return promise;
+    }
+    return promise.or(Promise.<Void>timeout(null, timeout, TimeUnit.MILLISECONDS)).map(result -> {
+      if (result.left.isDefined()) {
+        return result.left.get();
+      }
+      if (discard != null) {
+        promise.onRedeem(discard);
+      }
+      throw new DeadlineExceededException("Deadline of " + message + " expired before response");
+    });
+  }
+
+  private Long writeCallMeta(String message, RPCContext context) {
+    RequestPriority priority = PriorityHelper.getPriority();
+    if (priority != null) {
+      PriorityHelper.writePriority(context.requestCallMeta(), priority);
+    }
+
+    Long deadline = DeadlineHelper.getDeadline();
+    if (deadline == null) {
+      return null;
+    }
+    long timeout = DeadlineHelper.getRemainingMillis(deadline);
+    if (timeout <= 0) {
+      throw new DeadlineExceededException("Deadline of " + message + " expired before sending");
+    }
+    DeadlineHelper.writeTimeout(context.requestCallMeta(), timeout);
+    return timeout;
+  }
 }
@@ -0,0 +1,159 @@
+/**
+ * Copyright 2014 Thomas Feng
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import static org.fest.assertions.Assertions.assertThat;
+
+import java.io.IOException;
+import java.lang.reflect.Proxy;
+import java.net.InetSocketAddress;
+import java.net.MalformedURLException;
+import java.net.ServerSocket;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.avro.Protocol;
+import org.apache.avro.ipc.AsyncSocketTransceiver;
+import org.apache.avro.ipc.IpcRequestor;
+import org.junit.rules.ExternalResource;
+
+import me.tfeng.play.avro.AsyncResponder;
+import me.tfeng.play.avro.AsyncTransceiver;
+import me.tfeng.play.avro.AvroHelper;
+import me.tfeng.play.avro.BinaryIpcController;
+import me.tfeng.play.avro.SocketIpcServer;
+import me.tfeng.play.plugins.AvroPlugin;
+import play.GlobalSettings;
+import play.api.mvc.Handler;
+import play.core.Router;
+import play.libs.F;
+import play.libs.F.Promise;
+import play.mvc.Http;
+import play.mvc.Result;
+import play.test.Helpers;
+import play.test.TestServer;
+import scala.collection.JavaConversions;
+import scala.runtime.AbstractFunction0;
+
+/**
+ * @author Thomas Feng (huining.feng@gmail.com)
+ */
+public class IpcFixture extends ExternalResource {
+
+  private static class Global extends GlobalSettings {
+
+    @Override
+    public Handler onRouteRequest(Http.RequestHeader request) {
+      // There is no routes file in the plugin, so requests are routed here as a routes file would.
+      String path = request.path();
+      if ("POST".equals(request.method()) && path.startsWith(BINARY_PATH)) {
+        String protocol = path.substring(BINARY_PATH.length());
+        return createHandler(BinaryIpcController.class, "post", BINARY_PATH + "$protocol<[^/]+>",
+            () -> BinaryIpcController.post(protocol));
+      }
+      return super.onRouteRequest(request);
+    }
+
+    private Handler createHandler(Class<?> controller, String method, String pattern,
+        F.Function0<Promise<Result>> invocation) {
+      Router.HandlerDef handlerDef = new Router.HandlerDef(controller.getClassLoader(), "",
+          controller.getName(), method,
+          JavaConversions.asScalaBuffer(Collections.<Class<?>>singletonList(String.class)),
+          "POST", "", pattern);
+      AbstractFunction0<Promise<Result>> call = new AbstractFunction0<Promise<Result>>() {
+        @Override
+        public Promise<Result> apply() {
+          try {
+            return invocation.apply();
+          } catch (Throwable t) {
+            return Promise.throwing(t);
+          }
+        }
+      };
+      return Router.HandlerInvokerFactory$.MODULE$.wrapJavaPromise().createInvoker(call, handlerDef)
+          .call(call);
+    }
+  }
+
+  private static final String BINARY_PATH = "/avro/";
+
+  private int httpPort;
+
+  private final List<SocketIpcServer> servers = new ArrayList<>();
+
+  private TestServer testServer;
+
+  public AsyncSocketTransceiver createTransceiver(Class<?> interfaceClass,
+      SocketIpcServer server) {
+    return new AsyncSocketTransceiver(new InetSocketAddress("127.0.0.1", server.getPort()),
+        AvroHelper.getProtocol(interfaceClass), AvroPlugin.getInstance().getSocketConnections());
+  }
+
+  public IpcRequestor getHttpRequestor(Class<?> interfaceClass) throws MalformedURLException {
+    return (IpcRequestor) Proxy.getInvocationHandler(
+        AvroPlugin.client(interfaceClass, getHttpUrl(interfaceClass)));
+  }
+
+  public URL getHttpUrl(Class<?> interfaceClass) throws MalformedURLException {
+    return new URL("http", "127.0.0.1", httpPort, BINARY_PATH + interfaceClass.getName());
+  }
+
+  public IpcRequestor getRequestor(Class<?> interfaceClass, AsyncTransceiver transceiver) {
+    return (IpcRequestor) Proxy.getInvocationHandler(
+        AvroPlugin.client(interfaceClass, transceiver));
+  }
+
+  public IpcRequestor getRequestor(Class<?> interfaceClass, SocketIpcServer server) {
+    return getRequestor(interfaceClass, createTransceiver(interfaceClass, server));
+  }
+
+  public SocketIpcServer startServer(AsyncResponder responder) {
+    return startServer(0, responder);
+  }
+
+  public SocketIpcServer startServer(int port, AsyncResponder responder) {
+    Protocol local = responder.getLocal();
+    String protocolName = local.getNamespace() + "." + local.getName();
+    SocketIpcServer server = new SocketIpcServer(new InetSocketAddress("127.0.0.1", port),
+        protocol -> {
+          assertThat(protocol).isEqualTo(protocolName);
+          return responder;
+        }, AvroPlugin.getInstance().getExecutionContext());
+    servers.add(server);
+    return server;
+  }
+
+  @Override
+  protected void after() {
+    servers.forEach(SocketIpcServer::close);
+    Helpers.stop(testServer);
+  }
+
+  @Override
+  protected void before() throws IOException {
+    try (ServerSocket socket = new ServerSocket(0)) {
+      httpPort = socket.getLocalPort();
+    }
+    testServer = Helpers.testServer(httpPort,
+        Helpers.fakeApplication(Collections.emptyMap(), new Global()));
+    Helpers.start(testServer);
+  }
+}
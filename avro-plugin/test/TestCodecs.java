@@ -0,0 +1,179 @@
+/**
+ * Copyright 2014 Thomas Feng
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import static org.fest.assertions.Assertions.assertThat;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.avro.Schema;
+import org.apache.avro.generic.GenericData;
+import org.apache.avro.io.BinaryEncoder;
+import org.apache.avro.io.DatumReader;
+import org.apache.avro.io.DatumWriter;
+import org.apache.avro.io.DecoderFactory;
+import org.apache.avro.io.EncoderFactory;
+import org.apache.avro.specific.SpecificData;
+import org.apache.avro.specific.SpecificDatumReader;
+import org.apache.avro.specific.SpecificDatumWriter;
+import org.junit.Test;
+
+import me.tfeng.play.avro.codec.SpecializedDatumReader;
+import me.tfeng.play.avro.codec.SpecializedDatumWriter;
+import test.Color;
+import test.Node;
+import test.Required;
+import test.Values;
+
+/**
+ * @author Thomas Feng (huining.feng@gmail.com)
+ */
+public class TestCodecs {
+
+  private static final SpecificData DATA = SpecificData.get();
+
+  @Test
+  public void testEnums() throws Exception {
+    for (Color color : Color.values()) {
+      assertRoundTrip(Values.SCHEMA$, createValues(color));
+    }
+  }
+
+  @Test
+  public void testGenericRecordWithJavaStrings() throws Exception {
+    Schema schema = new Schema.Parser().parse("{\"type\": \"record\", \"name\": \"Strings\", "
+        + "\"fields\": [{\"name\": \"names\", \"type\": {\"type\": \"map\", "
+        + "\"avro.java.string\": \"String\", \"values\": {\"type\": \"string\", "
+        + "\"avro.java.string\": \"String\"}}}]}");
+    GenericData.Record record = new GenericData.Record(schema);
+    Map<String, String> names = new HashMap<>();
+    names.put("a", "x");
+    names.put("b", "y");
+    record.put("names", names);
+
+    Object result = assertRoundTrip(schema, record);
+    Map<?, ?> map = (Map<?, ?>) ((GenericData.Record) result).get("names");
+    assertThat(map.keySet().iterator().next()).isInstanceOf(String.class);
+    assertThat(map.values().iterator().next()).isInstanceOf(String.class);
+  }
+
+  @Test
+  public void testNullField() throws Exception {
+    Required record = new Required(null, 1, null, 3);
+    NullPointerException expected = null;
+    try {
+      encode(new SpecificDatumWriter<>(Required.SCHEMA$, DATA), record);
+    } catch (NullPointerException e) {
+      expected = e;
+    }
+    NullPointerException actual = null;
+    try {
+      encode(new SpecializedDatumWriter<>(Required.SCHEMA$, DATA), record);
+    } catch (NullPointerException e) {
+      actual = e;
+    }
+    assertThat(expected).isNotNull();
+    assertThat(actual).isNotNull();
+    assertThat(expected.getMessage()).endsWith(" of string in field name of test.Required");
+    assertThat(actual.getMessage()).endsWith(" of string in field name of test.Required");
+  }
+
+  @Test
+  public void testRecursiveRecords() throws Exception {
+    Node node = null;
+    for (int i = 0; i < 100; i++) {
+      node = new Node(i, node, Collections.emptyList());
+    }
+    Node tree = new Node(-1, null, Arrays.asList(node, new Node(-2, node, Arrays.asList(node))));
+    assertRoundTrip(Node.SCHEMA$, tree);
+  }
+
+  @Test
+  public void testReservedWords() throws Exception {
+    Values values = createValues(Color.RED);
+    values.setClass$(42);
+    values.setDefault$("default");
+    Values result = (Values) assertRoundTrip(Values.SCHEMA$, values);
+    assertThat(result.getClass$()).isEqualTo(42);
+    assertThat(result.getDefault$().toString()).isEqualTo("default");
+  }
+
+  @Test
+  public void testUnions() throws Exception {
+    for (Object choice : Arrays.asList(null, 1, "choice", Color.BLUE,
+        new Node(1, new Node(2, null, Collections.emptyList()), Collections.emptyList()))) {
+      Values values = createValues(Color.GREEN);
+      values.setChoice(choice);
+      assertRoundTrip(Values.SCHEMA$, values);
+    }
+  }
+
+  private Object assertRoundTrip(Schema schema, Object datum) throws IOException {
+    byte[] expected = encode(new SpecificDatumWriter<>(schema, DATA), datum);
+    byte[] actual = encode(new SpecializedDatumWriter<>(schema, DATA), datum);
+    assertThat(actual).isEqualTo(expected);
+
+    Object expectedResult = decode(new SpecificDatumReader<>(schema, schema, DATA), expected);
+    Object actualResult = decode(new SpecializedDatumReader<>(schema, DATA), expected);
+    assertThat(actualResult).isEqualTo(expectedResult);
+    assertThat(encode(new SpecificDatumWriter<>(schema, DATA), actualResult))
+        .isEqualTo(expected);
+    return actualResult;
+  }
+
+  private Values createValues(Color color) {
+    Map<CharSequence, Long> counts = new HashMap<>();
+    counts.put("a", 1L);
+    counts.put("b", Long.MAX_VALUE);
+    return Values.newBuilder()
+        .setFlag(true)
+        .setI(Integer.MIN_VALUE)
+        .setL(Long.MIN_VALUE)
+        .setF(1.5f)
+        .setD(Double.MAX_VALUE)
+        .setData(ByteBuffer.wrap(new byte[] { 1, 2, 3 }))
+        .setText("text")
+        .setColor(color)
+        .setChoice(null)
+        .setCounts(counts)
+        .setValues(Arrays.asList(1.0, null, -1.0))
+        .setClass$(0)
+        .setDefault$("")
+        .setTree(new Node(0, null, Collections.emptyList()))
+        .build();
+  }
+
+  private Object decode(DatumReader<Object> reader, byte[] bytes) throws IOException {
+    return reader.read(null, DecoderFactory.get().binaryDecoder(bytes, null));
+  }
+
+  private byte[] encode(DatumWriter<Object> writer, Object datum) throws IOException {
+    ByteArrayOutputStream stream = new ByteArrayOutputStream();
+    BinaryEncoder encoder = EncoderFactory.get().binaryEncoder(stream, null);
+    writer.write(datum, encoder);
+    encoder.flush();
+    return stream.toByteArray();
+  }
+}
@@ -0,0 +1,104 @@
+/**
+ * Copyright 2014 Thomas Feng
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import static org.fest.assertions.Assertions.assertThat;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.avro.AvroRuntimeException;
+import org.apache.avro.ipc.IpcRequestor;
+import org.junit.Rule;
+import org.junit.Test;
+
+import me.tfeng.play.avro.AsyncResponder;
+import me.tfeng.play.avro.ConcurrencyLimiter;
+import me.tfeng.play.avro.SocketIpcServer;
+import test.TestService;
+
+/**
+ * @author Thomas Feng (huining.feng@gmail.com)
+ */
+public class TestConcurrencyLimiter {
+
+  @Rule
+  public final IpcFixture fixture = new IpcFixture();
+
+  @Test
+  public void testErrorsAreNotSampled() throws Exception {
+    ConcurrencyLimiter limiter = createLimiter();
+    AsyncResponder responder = new AsyncResponder(TestService.class, new TestServiceImpl());
+    responder.setConcurrencyLimiter(limiter);
+    SocketIpcServer server = fixture.startServer(responder);
+    IpcRequestor requestor = fixture.getRequestor(TestService.class, server);
+
+    try {
+      requestor.request("fail", new Object[] { "Failure" }).get(10000);
+      throw new AssertionError("Error is not returned");
+    } catch (AvroRuntimeException e) {
+      // Expected.
+    }
+    assertThat(limiter.getInFlight()).isEqualTo(0);
+    assertThat(limiter.getLimit()).isEqualTo(2);
+
+    assertThat(requestor.request("echo", new Object[] { 1, 0 }).get(10000)).isEqualTo(1);
+    assertThat(limiter.getInFlight()).isEqualTo(0);
+    assertThat(limiter.getLimit()).isEqualTo(3);
+  }
+
+  @Test
+  public void testRejection() {
+    ConcurrencyLimiter limiter = new ConcurrencyLimiter(1);
+    assertThat(limiter.tryAcquire()).isTrue();
+    assertThat(limiter.tryAcquire()).isFalse();
+    assertThat(limiter.getInFlight()).isEqualTo(1);
+    assertThat(limiter.getAcceptedCount()).isEqualTo(1);
+    assertThat(limiter.getRejectedCount()).isEqualTo(1);
+    limiter.release();
+    assertThat(limiter.getInFlight()).isEqualTo(0);
+    assertThat(limiter.tryAcquire()).isTrue();
+  }
+
+  @Test
+  public void testReleaseWithoutSample() {
+    ConcurrencyLimiter limiter = createLimiter();
+    assertThat(limiter.tryAcquire()).isTrue();
+    limiter.release();
+    assertThat(limiter.getInFlight()).isEqualTo(0);
+    assertThat(limiter.getLimit()).isEqualTo(2);
+
+    assertThat(limiter.tryAcquire()).isTrue();
+    limiter.release(0);
+    assertThat(limiter.getInFlight()).isEqualTo(0);
+    assertThat(limiter.getLimit()).isEqualTo(3);
+  }
+
+  @Test
+  public void testSlowCallsReduceLimit() {
+    ConcurrencyLimiter limiter = new ConcurrencyLimiter(10, 1, 10, 1, TimeUnit.MILLISECONDS);
+    assertThat(limiter.tryAcquire()).isTrue();
+    limiter.release(TimeUnit.SECONDS.toNanos(1));
+    assertThat(limiter.getLimit()).isEqualTo(9);
+  }
+
+  private ConcurrencyLimiter createLimiter() {
+    // Every sampled call is fast, so each one raises the limit while it is half utilized.
+    return new ConcurrencyLimiter(2, 1, 10, 1, TimeUnit.HOURS);
+  }
+}
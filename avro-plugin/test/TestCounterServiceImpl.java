@@ -0,0 +1,61 @@
+/**
+ * Copyright 2014 Thomas Feng
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import test.TestCounterService;
+
+/**
+ * @author Thomas Feng (huining.feng@gmail.com)
+ */
+public class TestCounterServiceImpl implements TestCounterService {
+
+  private final AtomicInteger count = new AtomicInteger();
+
+  @Override
+  public int cached(CharSequence key) {
+    return count.incrementAndGet();
+  }
+
+  @Override
+  public int coalesced(CharSequence key, int delay) {
+    sleep(delay);
+    return count.incrementAndGet();
+  }
+
+  @Override
+  public int coalescedFail(CharSequence message, int delay) {
+    sleep(delay);
+    count.incrementAndGet();
+    throw new RuntimeException(message.toString());
+  }
+
+  public int getCount() {
+    return count.get();
+  }
+
+  private void sleep(int delay) {
+    try {
+      Thread.sleep(delay);
+    } catch (InterruptedException e) {
+      throw new RuntimeException(e);
+    }
+  }
+}
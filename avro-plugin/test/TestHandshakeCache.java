@@ -0,0 +1,119 @@
+/**
+ * Copyright 2014 Thomas Feng
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import static org.fest.assertions.Assertions.assertThat;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import org.apache.avro.Protocol;
+import org.apache.avro.io.BinaryEncoder;
+import org.apache.avro.io.DecoderFactory;
+import org.apache.avro.io.EncoderFactory;
+import org.apache.avro.ipc.HandshakeMatch;
+import org.apache.avro.ipc.HandshakeRequest;
+import org.apache.avro.ipc.HandshakeResponse;
+import org.apache.avro.ipc.MD5;
+import org.apache.avro.specific.SpecificDatumReader;
+import org.apache.avro.specific.SpecificDatumWriter;
+import org.junit.Test;
+
+import me.tfeng.play.avro.AsyncResponder;
+import me.tfeng.play.avro.CachingProtocolVersionResolver;
+import test.TestService;
+
+/**
+ * @author Thomas Feng (huining.feng@gmail.com)
+ */
+public class TestHandshakeCache {
+
+  private static final Protocol CLIENT_PROTOCOL = Protocol.parse(
+      "{\"protocol\": \"TestService\", \"namespace\": \"test\", \"messages\": {}}");
+
+  private static final Protocol UPDATED_CLIENT_PROTOCOL = Protocol.parse(
+      "{\"protocol\": \"TestService\", \"namespace\": \"test\", \"doc\": \"Updated\", "
+      + "\"messages\": {}}");
+
+  private final AsyncResponder responder =
+      new AsyncResponder(TestService.class, new TestServiceImpl());
+
+  private final CachingProtocolVersionResolver resolver = new CachingProtocolVersionResolver(100);
+
+  private HandshakeResponse response;
+
+  @Test
+  public void testFullHandshakeIsSentOnce() throws Exception {
+    byte[] serverHash = responder.getLocal().getMD5();
+
+    // The server does not know the client protocol yet, so the client has to send it.
+    assertThat(handshake(CLIENT_PROTOCOL, false, serverHash)).isNull();
+    assertThat(response.getMatch()).isEqualTo(HandshakeMatch.NONE);
+    assertThat(handshake(CLIENT_PROTOCOL, true, serverHash)).isEqualTo(CLIENT_PROTOCOL);
+    assertThat(response.getMatch()).isEqualTo(HandshakeMatch.BOTH);
+
+    // Later exchanges of the same client protocol only carry its hash.
+    for (int i = 0; i < 3; i++) {
+      assertThat(handshake(CLIENT_PROTOCOL, false, serverHash)).isEqualTo(CLIENT_PROTOCOL);
+      assertThat(response.getMatch()).isEqualTo(HandshakeMatch.BOTH);
+      assertThat(response.getServerProtocol()).isNull();
+    }
+    assertThat(resolver.getRemoteProtocolStats().hitCount()).isEqualTo(3);
+    assertThat(resolver.getResponseStats().hitCount()).isEqualTo(3);
+  }
+
+  @Test
+  public void testProtocolMismatchTriggersHandshake() throws Exception {
+    byte[] serverHash = responder.getLocal().getMD5();
+    handshake(CLIENT_PROTOCOL, true, serverHash);
+
+    // A client with an outdated hash of the server protocol is sent the current protocol.
+    assertThat(handshake(CLIENT_PROTOCOL, false, new byte[16])).isEqualTo(CLIENT_PROTOCOL);
+    assertThat(response.getMatch()).isEqualTo(HandshakeMatch.CLIENT);
+    assertThat(response.getServerProtocol()).isEqualTo(responder.getLocal().toString());
+    assertThat(response.getServerHash().bytes()).isEqualTo(serverHash);
+
+    // A changed client protocol has a new hash, which is not resolved from the cache.
+    assertThat(handshake(UPDATED_CLIENT_PROTOCOL, false, serverHash)).isNull();
+    assertThat(response.getMatch()).isEqualTo(HandshakeMatch.NONE);
+    assertThat(handshake(UPDATED_CLIENT_PROTOCOL, true, serverHash))
+        .isEqualTo(UPDATED_CLIENT_PROTOCOL);
+    assertThat(response.getMatch()).isEqualTo(HandshakeMatch.BOTH);
+  }
+
+  private Protocol handshake(Protocol clientProtocol, boolean sendProtocol, byte[] serverHash)
+      throws IOException {
+    HandshakeRequest request = new HandshakeRequest(new MD5(clientProtocol.getMD5()),
+        sendProtocol ? clientProtocol.toString() : null, new MD5(serverHash), null);
+    ByteArrayOutputStream requestStream = new ByteArrayOutputStream();
+    BinaryEncoder requestEncoder = EncoderFactory.get().binaryEncoder(requestStream, null);
+    new SpecificDatumWriter<>(HandshakeRequest.class).write(request, requestEncoder);
+    requestEncoder.flush();
+
+    ByteArrayOutputStream responseStream = new ByteArrayOutputStream();
+    BinaryEncoder responseEncoder = EncoderFactory.get().binaryEncoder(responseStream, null);
+    Protocol remote = resolver.resolve(responder,
+        DecoderFactory.get().binaryDecoder(requestStream.toByteArray(), null), responseEncoder,
+        null);
+    responseEncoder.flush();
+    response = new SpecificDatumReader<>(HandshakeResponse.class).read(null,
+        DecoderFactory.get().binaryDecoder(responseStream.toByteArray(), null));
+    return remote;
+  }
+}
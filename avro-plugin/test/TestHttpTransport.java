@@ -0,0 +1,171 @@
+/**
+ * Copyright 2014 Thomas Feng
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import static org.fest.assertions.Assertions.assertThat;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.avro.AvroRuntimeException;
+import org.apache.avro.ipc.AsyncHttpTransceiver;
+import org.apache.avro.ipc.IpcRequestor;
+import org.apache.avro.ipc.RPCContext;
+import org.apache.commons.lang3.StringUtils;
+import org.junit.Rule;
+import org.junit.Test;
+
+import me.tfeng.play.avro.AsyncHttpException;
+import me.tfeng.play.http.RequestPreparer;
+import me.tfeng.play.plugins.AvroPlugin;
+import me.tfeng.play.plugins.HttpPlugin;
+import play.libs.F.Promise;
+import play.libs.ws.WSResponse;
+import play.mvc.Http;
+import test.TestService;
+
+/**
+ * @author Thomas Feng (huining.feng@gmail.com)
+ */
+public class TestHttpTransport {
+
+  @Rule
+  public final IpcFixture fixture = new IpcFixture();
+
+  @Test
+  public void testBatch() throws Exception {
+    IpcRequestor requestor = fixture.getHttpRequestor(TestService.class);
+    IpcRequestor.Batch batch = requestor.newBatch();
+    Promise<Object> echo1 = batch.add("echo", new Object[] { 1, 0 });
+    Promise<Object> fail = batch.add("fail", new Object[] { "Failure" });
+    Promise<Object> echo2 = batch.add("echo", new Object[] { 2, 0 });
+    batch.send();
+    assertThat(echo1.get(10000)).isEqualTo(1);
+    assertThat(echo2.get(10000)).isEqualTo(2);
+    try {
+      fail.get(10000);
+      throw new AssertionError("Error is not returned");
+    } catch (AvroRuntimeException e) {
+      // The failure of a call is returned as its Avro error, without failing the others.
+      assertThat(e.getMessage()).contains("Failure");
+    }
+  }
+
+  @Test
+  public void testBatchCallFailure() throws Exception {
+    // Without a shared handshake, each call carries its own. A call whose handshake cannot be read
+    // cannot be answered in Avro, so an empty response is returned for it.
+    IpcRequestor requestor = fixture.getHttpRequestor(TestService.class);
+    IpcRequestor.Request echo1 = requestor.new Request("echo", new Object[] { 1, 0 },
+        new RPCContext());
+    IpcRequestor.Request echo2 = requestor.new Request("echo", new Object[] { 2, 0 },
+        new RPCContext());
+    List<List<ByteBuffer>> calls = Arrays.asList(echo1.getBytes(),
+        Collections.singletonList(ByteBuffer.allocate(1)), echo2.getBytes());
+    WSResponse response = HttpPlugin.getInstance().postRequest(
+        fixture.getHttpUrl(TestService.class), AsyncHttpTransceiver.BATCH_CONTENT_TYPE,
+        AsyncHttpTransceiver.toByteArray(AsyncHttpTransceiver.writeBatch(calls))).get(10000);
+    assertThat(response.getStatus()).isEqualTo(Http.Status.OK);
+
+    List<List<ByteBuffer>> responses = AsyncHttpTransceiver.readBatch(
+        AsyncHttpTransceiver.readBuffers(response.asByteArray()));
+    assertThat(responses).hasSize(3);
+    assertThat(responses.get(1).get(0).hasRemaining()).isFalse();
+    assertThat(requestor.process(requestor, echo1, "echo", responses.get(0))).isEqualTo(1);
+    assertThat(requestor.process(requestor, echo2, "echo", responses.get(2))).isEqualTo(2);
+  }
+
+  @Test
+  public void testBatchSharedHandshake() throws Exception {
+    List<List<ByteBuffer>> calls = new ArrayList<>();
+    AsyncHttpTransceiver transceiver =
+        new AsyncHttpTransceiver(fixture.getHttpUrl(TestService.class)) {
+          @Override
+          public Promise<List<ByteBuffer>> transceive(List<ByteBuffer> request,
+              RequestPreparer postRequestPreparer) {
+            List<ByteBuffer> duplicates = new ArrayList<>(request.size());
+            request.forEach(buffer -> duplicates.add(buffer.duplicate()));
+            try {
+              calls.addAll(readBatch(duplicates));
+            } catch (IOException e) {
+              throw new UncheckedIOException(e);
+            }
+            return super.transceive(request, postRequestPreparer);
+          }
+        };
+    IpcRequestor requestor = fixture.getRequestor(TestService.class, transceiver);
+    IpcRequestor.Batch batch = requestor.newBatch();
+    Promise<Object> echo1 = batch.add("echo", new Object[] { 1, 0 });
+    Promise<Object> echo2 = batch.add("echo", new Object[] { 2, 0 });
+    batch.send();
+    assertThat(echo1.get(10000)).isEqualTo(1);
+    assertThat(echo2.get(10000)).isEqualTo(2);
+
+    // Handshake requests start with the hash of the client protocol, which only the first call
+    // carries. The server answers the second call with the handshake of the first.
+    byte[] hash = requestor.getLocal().getMD5();
+    assertThat(calls).hasSize(2);
+    assertThat(startsWith(calls.get(0), hash)).isTrue();
+    assertThat(startsWith(calls.get(1), hash)).isFalse();
+  }
+
+  @Test
+  public void testLargeResponse() throws Exception {
+    // Responses larger than the streaming chunk size are sent in chunks.
+    IpcRequestor requestor = fixture.getHttpRequestor(TestService.class);
+    int length = AvroPlugin.getInstance().getStreamingChunkSize() * 4;
+    assertThat(requestor.request("generate", new Object[] { length }).get(10000).toString())
+        .isEqualTo(StringUtils.repeat('x', length));
+  }
+
+  @Test
+  public void testMaxRequestSize() throws Exception {
+    // Requests of test.TestService are limited to 1MB in avro-plugin-test.xml. Bodies beyond the
+    // 100KB default of Play are accepted up to that limit.
+    IpcRequestor requestor = fixture.getHttpRequestor(TestService.class);
+    String value = StringUtils.repeat('x', 200 * 1024);
+    assertThat(requestor.request("length", new Object[] { value }).get(10000))
+        .isEqualTo(value.length());
+
+    try {
+      requestor.request("length", new Object[] { StringUtils.repeat('x', 2 * 1024 * 1024) })
+          .get(10000);
+      throw new AssertionError("Oversized request is accepted");
+    } catch (AvroRuntimeException e) {
+      assertThat(e.getCause()).isInstanceOf(AsyncHttpException.class);
+      assertThat(((AsyncHttpException) e.getCause()).getStatusCode())
+          .isEqualTo(Http.Status.REQUEST_ENTITY_TOO_LARGE);
+    }
+  }
+
+  private boolean startsWith(List<ByteBuffer> buffers, byte[] prefix) {
+    ByteBuffer buffer = buffers.get(0).duplicate();
+    if (buffer.remaining() < prefix.length) {
+      return false;
+    }
+    byte[] bytes = new byte[prefix.length];
+    buffer.get(bytes);
+    return Arrays.equals(bytes, prefix);
+  }
+}
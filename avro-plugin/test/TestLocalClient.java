@@ -0,0 +1,116 @@
+/**
+ * Copyright 2014 Thomas Feng
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import static org.fest.assertions.Assertions.assertThat;
+
+import org.junit.Rule;
+import org.junit.Test;
+
+import me.tfeng.play.factories.AvroLocalClientFactory;
+import play.libs.F.Promise;
+
+/**
+ * @author Thomas Feng (huining.feng@gmail.com)
+ */
+public class TestLocalClient {
+
+  public interface Client {
+
+    Promise<Integer> echo(int value, int delay);
+
+    Promise<Integer> fail(CharSequence message);
+  }
+
+  private static class PromiseServiceImpl {
+
+    private volatile Thread thread;
+
+    public Promise<Integer> echo(int value, int delay) {
+      thread = Thread.currentThread();
+      return Promise.pure(value);
+    }
+
+    public Promise<Integer> fail(CharSequence message) {
+      throw new IllegalArgumentException(message.toString());
+    }
+
+    @Override
+    public String toString() {
+      return "PromiseServiceImpl";
+    }
+  }
+
+  @Rule
+  public final IpcFixture fixture = new IpcFixture();
+
+  @Test
+  public void testCall() throws Exception {
+    Client client = createClient(new TestServiceImpl());
+    assertThat(client.echo(1, 0).get(10000)).isEqualTo(1);
+    assertThat(client.echo(2, 0).get(10000)).isEqualTo(2);
+  }
+
+  @Test
+  public void testDirectCall() throws Exception {
+    // Implementations returning promises are called on the caller's thread.
+    PromiseServiceImpl impl = new PromiseServiceImpl();
+    Client client = createClient(impl);
+    assertThat(client.echo(1, 0).get(10000)).isEqualTo(1);
+    assertThat(impl.thread).isSameAs(Thread.currentThread());
+  }
+
+  @Test
+  public void testDirectCallFailure() throws Exception {
+    Client client = createClient(new PromiseServiceImpl());
+    Promise<Integer> promise = client.fail("Failure");
+    try {
+      promise.get(10000);
+      throw new AssertionError("Error is not returned");
+    } catch (IllegalArgumentException e) {
+      assertThat(e.getMessage()).isEqualTo("Failure");
+    }
+  }
+
+  @Test
+  public void testFailure() throws Exception {
+    // Exceptions thrown by the implementation are not wrapped.
+    Client client = createClient(new TestServiceImpl());
+    try {
+      client.fail("Failure").get(10000);
+      throw new AssertionError("Error is not returned");
+    } catch (RuntimeException e) {
+      assertThat(e.getClass()).isEqualTo(RuntimeException.class);
+      assertThat(e.getMessage()).isEqualTo("Failure");
+    }
+  }
+
+  @Test
+  public void testObjectMethods() throws Exception {
+    Client client = createClient(new PromiseServiceImpl());
+    assertThat(client.toString()).isEqualTo("PromiseServiceImpl");
+  }
+
+  private Client createClient(Object bean) throws Exception {
+    AvroLocalClientFactory factory = new AvroLocalClientFactory();
+    factory.setInterfaceClass(Client.class);
+    factory.setBean(bean);
+    return (Client) factory.getObject();
+  }
+}
@@ -0,0 +1,52 @@
+/**
+ * Copyright 2014 Thomas Feng
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import org.apache.avro.AvroRemoteException;
+import org.apache.avro.ipc.IpcRequestor;
+
+import test.TestNestedService;
+
+/**
+ * @author Thomas Feng (huining.feng@gmail.com)
+ */
+public class TestNestedServiceImpl implements TestNestedService {
+
+  private IpcRequestor requestor;
+
+  @Override
+  public int call(int depth) throws AvroRemoteException {
+    onCall(depth);
+    if (depth == 0) {
+      return 0;
+    }
+    try {
+      return (Integer) requestor.request("call", new Object[] { depth - 1 }).get(10000) + 1;
+    } catch (Exception e) {
+      throw new AvroRemoteException(e);
+    }
+  }
+
+  public void setRequestor(IpcRequestor requestor) {
+    this.requestor = requestor;
+  }
+
+  protected void onCall(int depth) {
+  }
+}
@@ -0,0 +1,101 @@
+/**
+ * Copyright 2014 Thomas Feng
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import static org.fest.assertions.Assertions.assertThat;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Test;
+
+import me.tfeng.play.avro.PayloadCompression;
+import me.tfeng.play.avro.PayloadTooLargeException;
+
+/**
+ * @author Thomas Feng (huining.feng@gmail.com)
+ */
+public class TestPayloadCompression {
+
+  private static final byte[] DATA = new byte[1024 * 1024];
+
+  static {
+    for (int i = 0; i < DATA.length; i++) {
+      DATA[i] = (byte) (i % 7);
+    }
+  }
+
+  @Test(expected = PayloadTooLargeException.class)
+  public void testDeflateBomb() throws IOException {
+    byte[] compressed = PayloadCompression.compress(PayloadCompression.DEFLATE, DATA);
+    try (InputStream in = PayloadCompression.decompress(PayloadCompression.DEFLATE,
+        ByteBuffer.wrap(compressed), 1024)) {
+      read(in);
+    }
+  }
+
+  @Test
+  public void testDeflateWithinLimit() throws IOException {
+    byte[] compressed = PayloadCompression.compress(PayloadCompression.DEFLATE, DATA);
+    try (InputStream in = PayloadCompression.decompress(PayloadCompression.DEFLATE,
+        ByteBuffer.wrap(compressed), DATA.length)) {
+      assertThat(Arrays.equals(read(in), DATA)).isTrue();
+    }
+  }
+
+  @Test(expected = PayloadTooLargeException.class)
+  public void testSnappyBomb() throws IOException {
+    byte[] compressed = PayloadCompression.compress(PayloadCompression.SNAPPY, DATA);
+    PayloadCompression.decompress(PayloadCompression.SNAPPY, ByteBuffer.wrap(compressed), 1024);
+  }
+
+  @Test
+  public void testSnappyDirectBuffer() throws IOException {
+    byte[] compressed = PayloadCompression.compress(PayloadCompression.SNAPPY, DATA);
+    ByteBuffer buffer = ByteBuffer.allocateDirect(compressed.length);
+    buffer.put(compressed).flip();
+    try (InputStream in =
+        PayloadCompression.decompress(PayloadCompression.SNAPPY, buffer, DATA.length)) {
+      assertThat(Arrays.equals(read(in), DATA)).isTrue();
+    }
+  }
+
+  @Test
+  public void testSnappyHeapBufferSlice() throws IOException {
+    // Compressed data in the middle of a larger array is read in place.
+    byte[] compressed = PayloadCompression.compress(PayloadCompression.SNAPPY, DATA);
+    byte[] array = new byte[compressed.length + 20];
+    System.arraycopy(compressed, 0, array, 10, compressed.length);
+    ByteBuffer buffer = ByteBuffer.wrap(array, 10, compressed.length).slice();
+    try (InputStream in =
+        PayloadCompression.decompress(PayloadCompression.SNAPPY, buffer, DATA.length)) {
+      assertThat(Arrays.equals(read(in), DATA)).isTrue();
+    }
+  }
+
+  private byte[] read(InputStream in) throws IOException {
+    // Avro's ByteBufferInputStream fails rather than returning -1 at the end of its data.
+    byte[] data = new byte[DATA.length];
+    IOUtils.readFully(in, data);
+    return data;
+  }
+}
@@ -0,0 +1,83 @@
+/**
+ * Copyright 2014 Thomas Feng
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import static org.fest.assertions.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.avro.ipc.IpcRequestor;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import me.tfeng.play.avro.AsyncResponder;
+import me.tfeng.play.avro.CallContext;
+import me.tfeng.play.avro.PriorityHelper;
+import me.tfeng.play.avro.RequestPriority;
+import me.tfeng.play.avro.SocketIpcServer;
+import test.TestNestedService;
+
+/**
+ * @author Thomas Feng (huining.feng@gmail.com)
+ */
+public class TestPriority {
+
+  @Rule
+  public final IpcFixture fixture = new IpcFixture();
+
+  private final List<RequestPriority> priorities = Collections.synchronizedList(new ArrayList<>());
+
+  private IpcRequestor requestor;
+
+  @Before
+  public void beforeTest() {
+    TestNestedServiceImpl impl = new TestNestedServiceImpl() {
+      @Override
+      protected void onCall(int depth) {
+        priorities.add(PriorityHelper.getPriority());
+      }
+    };
+    SocketIpcServer server =
+        fixture.startServer(new AsyncResponder(TestNestedService.class, impl));
+    requestor = fixture.getRequestor(TestNestedService.class, server);
+    impl.setRequestor(requestor);
+  }
+
+  @Test
+  public void testNestedCallsInheritPriority() throws Exception {
+    CallContext context = new CallContext();
+    context.setPriority(RequestPriority.BATCH);
+    assertThat(context.call(() -> requestor.request("call", new Object[] { 2 })).get(10000))
+        .isEqualTo(2);
+    assertThat(priorities).containsExactly(RequestPriority.BATCH, RequestPriority.BATCH,
+        RequestPriority.BATCH);
+  }
+
+  @Test
+  public void testPriorityIsScopedToCall() throws Exception {
+    CallContext context = new CallContext();
+    context.setPriority(RequestPriority.INTERACTIVE);
+    context.call(() -> requestor.request("call", new Object[] { 0 })).get(10000);
+    requestor.request("call", new Object[] { 1 }).get(10000);
+    assertThat(priorities).containsExactly(RequestPriority.INTERACTIVE, null, null);
+  }
+}
@@ -0,0 +1,90 @@
+/**
+ * Copyright 2014 Thomas Feng
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import static org.fest.assertions.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.avro.AvroRuntimeException;
+import org.apache.avro.ipc.IpcRequestor;
+import org.junit.Rule;
+import org.junit.Test;
+
+import me.tfeng.play.avro.AsyncResponder;
+import me.tfeng.play.avro.SocketIpcServer;
+import play.libs.F.Promise;
+import test.TestCounterService;
+
+/**
+ * @author Thomas Feng (huining.feng@gmail.com)
+ */
+public class TestRequestCoalescer {
+
+  @Rule
+  public final IpcFixture fixture = new IpcFixture();
+
+  private final TestCounterServiceImpl impl = new TestCounterServiceImpl();
+
+  @Test
+  public void testConcurrentRequests() throws Exception {
+    IpcRequestor requestor = getRequestor();
+    List<Promise<Object>> promises = new ArrayList<>();
+    for (int i = 0; i < 10; i++) {
+      promises.add(requestor.request("coalesced", new Object[] { "a", 200 }));
+    }
+    Promise<Object> other = requestor.request("coalesced", new Object[] { "b", 200 });
+    assertThat(requestor.getRequestCoalescer().getInFlightCount()).isEqualTo(2);
+    for (Promise<Object> promise : promises) {
+      assertThat(promise.get(10000)).isEqualTo(promises.get(0).get(10000));
+    }
+    assertThat(other.get(10000)).isNotEqualTo(promises.get(0).get(10000));
+    assertThat(impl.getCount()).isEqualTo(2);
+    assertThat(requestor.getRequestCoalescer().getInFlightCount()).isEqualTo(0);
+
+    // Requests sent after the shared one completes are not coalesced with it.
+    assertThat(requestor.request("coalesced", new Object[] { "a", 0 }).get(10000)).isEqualTo(3);
+  }
+
+  @Test
+  public void testFailure() throws Exception {
+    IpcRequestor requestor = getRequestor();
+    List<Promise<Object>> promises = new ArrayList<>();
+    for (int i = 0; i < 10; i++) {
+      promises.add(requestor.request("coalescedFail", new Object[] { "Failure", 200 }));
+    }
+    for (Promise<Object> promise : promises) {
+      try {
+        promise.get(10000);
+        throw new AssertionError("Error is not returned");
+      } catch (AvroRuntimeException e) {
+        assertThat(e.getMessage()).contains("Failure");
+      }
+    }
+    assertThat(impl.getCount()).isEqualTo(1);
+    assertThat(requestor.getRequestCoalescer().getInFlightCount()).isEqualTo(0);
+  }
+
+  private IpcRequestor getRequestor() {
+    SocketIpcServer server =
+        fixture.startServer(new AsyncResponder(TestCounterService.class, impl));
+    return fixture.getRequestor(TestCounterService.class, server);
+  }
+}
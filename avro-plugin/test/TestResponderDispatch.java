@@ -0,0 +1,121 @@
+/**
+ * Copyright 2014 Thomas Feng
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import static org.fest.assertions.Assertions.assertThat;
+
+import org.apache.avro.AvroRuntimeException;
+import org.apache.avro.Protocol;
+import org.apache.avro.Protocol.Message;
+import org.apache.avro.generic.GenericData;
+import org.apache.avro.ipc.IpcRequestor;
+import org.apache.avro.ipc.specific.SpecificResponder;
+import org.junit.Rule;
+import org.junit.Test;
+
+import me.tfeng.play.avro.AsyncResponder;
+import me.tfeng.play.avro.SocketIpcServer;
+import test.TestError;
+import test.TestService;
+
+/**
+ * @author Thomas Feng (huining.feng@gmail.com)
+ */
+public class TestResponderDispatch {
+
+  private static final Protocol MISSING_PROTOCOL = Protocol.parse("{\"protocol\": "
+      + "\"TestService\", \"namespace\": \"test\", \"messages\": {\"missing\": "
+      + "{\"request\": [{\"name\": \"value\", \"type\": \"int\"}], \"response\": \"int\"}}}");
+
+  @Rule
+  public final IpcFixture fixture = new IpcFixture();
+
+  @Test
+  public void testDeclaredError() throws Exception {
+    Object error = assertSameResult(TestService.PROTOCOL, "reject", "Failure");
+    assertThat(error).isInstanceOf(TestError.class);
+    assertThat(((TestError) error).getReason().toString()).isEqualTo("Failure");
+  }
+
+  @Test
+  public void testDeclaredErrorOverSocket() throws Exception {
+    SocketIpcServer server =
+        fixture.startServer(new AsyncResponder(TestService.class, new TestServiceImpl()));
+    IpcRequestor requestor = fixture.getRequestor(TestService.class, server);
+    try {
+      requestor.request("reject", new Object[] { "Failure" }).get(10000);
+      throw new AssertionError("Error is not returned");
+    } catch (TestError e) {
+      assertThat(e.getReason().toString()).isEqualTo("Failure");
+    }
+  }
+
+  @Test
+  public void testMissingMethod() throws Exception {
+    // Messages without implementations fall back to reflection, which reports the error.
+    Object error = assertSameResult(MISSING_PROTOCOL, "missing", 1);
+    assertThat(error).isInstanceOf(AvroRuntimeException.class);
+  }
+
+  @Test
+  public void testResults() throws Exception {
+    assertThat(assertSameResult(TestService.PROTOCOL, "echo", 1, 0)).isEqualTo(1);
+    assertThat(assertSameResult(TestService.PROTOCOL, "generate", 3).toString())
+        .isEqualTo("xxx");
+    assertThat(assertSameResult(TestService.PROTOCOL, "length", "abc")).isEqualTo(3);
+    assertThat(assertSameResult(TestService.PROTOCOL, "range", 3)).isEqualTo(
+        new TestServiceImpl().range(3));
+  }
+
+  @Test
+  public void testUndeclaredError() throws Exception {
+    Object error = assertSameResult(TestService.PROTOCOL, "fail", "Failure");
+    assertThat(error.getClass()).isEqualTo(RuntimeException.class);
+    assertThat(((Throwable) error).getMessage()).isEqualTo("Failure");
+  }
+
+  private Object assertSameResult(Protocol protocol, String messageName, Object... args) {
+    // Method handles dispatch to the same method as reflection, and throw the same exceptions.
+    TestServiceImpl impl = new TestServiceImpl();
+    Object expected = respond(new SpecificResponder(protocol, impl), protocol, messageName, args);
+    Object actual = respond(new AsyncResponder(protocol, impl), protocol, messageName, args);
+    if (expected instanceof Throwable) {
+      assertThat(actual.getClass()).isEqualTo(expected.getClass());
+      assertThat(((Throwable) actual).getMessage())
+          .isEqualTo(((Throwable) expected).getMessage());
+    } else {
+      assertThat(actual).isEqualTo(expected);
+    }
+    return actual;
+  }
+
+  private Object respond(SpecificResponder responder, Protocol protocol, String messageName,
+      Object... args) {
+    Message message = protocol.getMessages().get(messageName);
+    GenericData.Record request = new GenericData.Record(message.getRequest());
+    for (int i = 0; i < args.length; i++) {
+      request.put(i, args[i]);
+    }
+    try {
+      return responder.respond(message, request);
+    } catch (Exception e) {
+      return e;
+    }
+  }
+}
@@ -0,0 +1,84 @@
+/**
+ * Copyright 2014 Thomas Feng
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import static org.fest.assertions.Assertions.assertThat;
+
+import org.apache.avro.ipc.IpcRequestor;
+import org.junit.Rule;
+import org.junit.Test;
+
+import com.google.common.cache.CacheStats;
+
+import me.tfeng.play.avro.AsyncResponder;
+import me.tfeng.play.avro.SocketIpcServer;
+import play.core.j.JavaHelpers$;
+import play.mvc.Http;
+import play.test.FakeRequest;
+import test.TestCounterService;
+
+/**
+ * @author Thomas Feng (huining.feng@gmail.com)
+ */
+public class TestResponseCache {
+
+  @Rule
+  public final IpcFixture fixture = new IpcFixture();
+
+  @Test
+  public void testAuthTokenBypassesCache() throws Exception {
+    IpcRequestor requestor = getRequestor();
+    assertThat(requestor.request("cached", new Object[] { "a" }).get(10000)).isEqualTo(1);
+    Http.Context.current.set(JavaHelpers$.MODULE$.createJavaContext(
+        new FakeRequest().withHeader("Authorization", "Bearer token").getWrappedRequest()));
+    try {
+      assertThat(requestor.request("cached", new Object[] { "a" }).get(10000)).isEqualTo(2);
+    } finally {
+      Http.Context.current.remove();
+    }
+    // The response to the authorized call is not cached either.
+    assertThat(requestor.request("cached", new Object[] { "a" }).get(10000)).isEqualTo(1);
+  }
+
+  @Test
+  public void testCacheExpiry() throws Exception {
+    IpcRequestor requestor = getRequestor();
+    assertThat(requestor.request("cached", new Object[] { "a" }).get(10000)).isEqualTo(1);
+    Thread.sleep(400);
+    assertThat(requestor.request("cached", new Object[] { "a" }).get(10000)).isEqualTo(2);
+    assertThat(requestor.request("cached", new Object[] { "a" }).get(10000)).isEqualTo(2);
+  }
+
+  @Test
+  public void testCacheHit() throws Exception {
+    IpcRequestor requestor = getRequestor();
+    assertThat(requestor.request("cached", new Object[] { "a" }).get(10000)).isEqualTo(1);
+    assertThat(requestor.request("cached", new Object[] { "a" }).get(10000)).isEqualTo(1);
+    assertThat(requestor.request("cached", new Object[] { "b" }).get(10000)).isEqualTo(2);
+    CacheStats stats = requestor.getResponseCache().getStats("cached");
+    assertThat(stats.hitCount()).isEqualTo(1);
+    assertThat(stats.missCount()).isEqualTo(2);
+  }
+
+  private IpcRequestor getRequestor() {
+    SocketIpcServer server = fixture.startServer(
+        new AsyncResponder(TestCounterService.class, new TestCounterServiceImpl()));
+    return fixture.getRequestor(TestCounterService.class, server);
+  }
+}
@@ -0,0 +1,69 @@
+/**
+ * Copyright 2014 Thomas Feng
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import org.apache.commons.lang3.StringUtils;
+
+import test.TestError;
+import test.TestService;
+
+/**
+ * @author Thomas Feng (huining.feng@gmail.com)
+ */
+public class TestServiceImpl implements TestService {
+
+  @Override
+  public int echo(int value, int delay) {
+    try {
+      Thread.sleep(delay);
+    } catch (InterruptedException e) {
+      throw new RuntimeException(e);
+    }
+    return value;
+  }
+
+  @Override
+  public int fail(CharSequence message) {
+    throw new RuntimeException(message.toString());
+  }
+
+  @Override
+  public CharSequence generate(int length) {
+    return StringUtils.repeat('x', length);
+  }
+
+  @Override
+  public int length(CharSequence value) {
+    return value.length();
+  }
+
+  @Override
+  public List<Integer> range(int count) {
+    return IntStream.range(0, count).boxed().collect(Collectors.toList());
+  }
+
+  @Override
+  public int reject(CharSequence reason) throws TestError {
+    throw TestError.newBuilder().setReason(reason).build();
+  }
+}
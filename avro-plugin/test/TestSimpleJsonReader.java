@@ -0,0 +1,57 @@
+/**
+ * Copyright 2014 Thomas Feng
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import static org.fest.assertions.Assertions.assertThat;
+
+import org.apache.avro.AvroTypeException;
+import org.junit.Test;
+
+import me.tfeng.play.avro.AvroHelper;
+import test.Required;
+
+/**
+ * @author Thomas Feng (huining.feng@gmail.com)
+ */
+public class TestSimpleJsonReader {
+
+  @Test
+  public void testMissingFieldWithDefault() throws Exception {
+    Required record = AvroHelper.toRecord(Required.class, "{\"name\": \"a\", \"count\": 1}");
+    assertThat(record.getName().toString()).isEqualTo("a");
+    assertThat(record.getCount()).isEqualTo(1);
+    assertThat(record.getSize()).isEqualTo(3);
+  }
+
+  @Test
+  public void testMissingNullableField() throws Exception {
+    Required record = AvroHelper.toRecord(Required.class, "{\"name\": \"a\", \"count\": 1}");
+    assertThat(record.getNote()).isNull();
+  }
+
+  @Test(expected = AvroTypeException.class)
+  public void testMissingRequiredField() throws Exception {
+    AvroHelper.toRecord(Required.class, "{\"name\": \"a\"}");
+  }
+
+  @Test(expected = AvroTypeException.class)
+  public void testMissingRequiredStringField() throws Exception {
+    AvroHelper.toRecord(Required.class, "{\"count\": 1}");
+  }
+}
@@ -0,0 +1,188 @@
+/**
+ * Copyright 2014 Thomas Feng
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import static org.fest.assertions.Assertions.assertThat;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.apache.avro.AvroRuntimeException;
+import org.apache.avro.ipc.AsyncSocketTransceiver;
+import org.apache.avro.ipc.IpcRequestor;
+import org.apache.avro.ipc.Transceiver;
+import org.apache.commons.lang3.StringUtils;
+import org.junit.Rule;
+import org.junit.Test;
+
+import me.tfeng.play.avro.AsyncResponder;
+import me.tfeng.play.avro.CallContext;
+import me.tfeng.play.avro.DeadlineExceededException;
+import me.tfeng.play.avro.SocketIpcServer;
+import play.libs.F.Promise;
+import test.TestService;
+
+/**
+ * @author Thomas Feng (huining.feng@gmail.com)
+ */
+public class TestSocketTransport {
+
+  private static final String PROTOCOL_NAME =
+      TestService.PROTOCOL.getNamespace() + "." + TestService.PROTOCOL.getName();
+
+  @Rule
+  public final IpcFixture fixture = new IpcFixture();
+
+  @Test
+  public void testAuthorizer() throws Exception {
+    SocketIpcServer server = startServer();
+    server.setAuthorizer((address, protocol) -> !protocol.equals(PROTOCOL_NAME));
+    try {
+      fixture.getRequestor(TestService.class, server).request("echo", new Object[] { 1, 0 })
+          .get(10000);
+      throw new AssertionError("Unauthorized connection is not closed");
+    } catch (IOException e) {
+      assertThat(e.getMessage()).contains("is closed");
+    }
+  }
+
+  @Test
+  public void testBatch() throws Exception {
+    SocketIpcServer server = startServer();
+    IpcRequestor requestor = fixture.getRequestor(TestService.class, server);
+    IpcRequestor.Batch batch = requestor.newBatch();
+    Promise<Object> echo = batch.add("echo", new Object[] { 1, 0 });
+    Promise<Object> fail = batch.add("fail", new Object[] { "Failure" });
+    batch.send();
+    assertThat(echo.get(10000)).isEqualTo(1);
+    try {
+      fail.get(10000);
+      throw new AssertionError("Error is not returned");
+    } catch (AvroRuntimeException e) {
+      assertThat(e.getMessage()).contains("Failure");
+    }
+  }
+
+  @Test
+  public void testDeadline() throws Exception {
+    SocketIpcServer server = startServer();
+    IpcRequestor requestor = fixture.getRequestor(TestService.class, server);
+    CallContext context = new CallContext();
+    context.setDeadline(System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(100));
+    try {
+      context.call(() -> requestor.request("echo", new Object[] { 1, 5000 })).get(10000);
+      throw new AssertionError("Deadline is not enforced");
+    } catch (DeadlineExceededException e) {
+      // Expected.
+    }
+  }
+
+  @Test
+  public void testErrorResponse() throws Exception {
+    AsyncResponder responder = new AsyncResponder(TestService.class, new TestServiceImpl()) {
+      @Override
+      public Promise<List<ByteBuffer>> asyncRespond(List<ByteBuffer> buffers,
+          Transceiver connection) throws Exception {
+        if (connection.isConnected()) {
+          throw new IllegalStateException("Responder is broken");
+        }
+        return super.asyncRespond(buffers, connection);
+      }
+    };
+    SocketIpcServer server = fixture.startServer(responder);
+    IpcRequestor requestor = fixture.getRequestor(TestService.class, server);
+    try {
+      requestor.request("echo", new Object[] { 1, 0 }).get(10000);
+      throw new AssertionError("Error is not returned");
+    } catch (AvroRuntimeException e) {
+      assertThat(e.getMessage()).contains("Responder is broken");
+    }
+  }
+
+  @Test
+  public void testMaxRequestSize() throws Exception {
+    SocketIpcServer server = startServer();
+    server.setMaxRequestSizes(protocol -> 100);
+    IpcRequestor requestor = fixture.getRequestor(TestService.class, server);
+    try {
+      requestor.request("fail", new Object[] { StringUtils.repeat('x', 1000) }).get(10000);
+      throw new AssertionError("Oversized request is accepted");
+    } catch (IOException e) {
+      assertThat(e.getMessage()).contains("is closed");
+    }
+    assertThat(requestor.request("echo", new Object[] { 1, 0 }).get(10000)).isEqualTo(1);
+  }
+
+  @Test
+  public void testMultiplexing() throws Exception {
+    SocketIpcServer server = startServer();
+    IpcRequestor requestor = fixture.getRequestor(TestService.class, server);
+    // Later requests complete earlier, so responses arrive out of the order of their requests.
+    List<Promise<Object>> promises = new ArrayList<>();
+    for (int i = 0; i < 50; i++) {
+      promises.add(requestor.request("echo", new Object[] { i, (50 - i) * 5 }));
+    }
+    for (int i = 0; i < 50; i++) {
+      assertThat(promises.get(i).get(10000)).isEqualTo(i);
+    }
+  }
+
+  @Test
+  public void testReconnect() throws Exception {
+    AsyncResponder responder = new AsyncResponder(TestService.class, new TestServiceImpl());
+    SocketIpcServer server = fixture.startServer(responder);
+    int port = server.getPort();
+    IpcRequestor requestor = fixture.getRequestor(TestService.class, server);
+    assertThat(requestor.request("echo", new Object[] { 1, 0 }).get(10000)).isEqualTo(1);
+
+    server.close();
+    try {
+      requestor.request("echo", new Object[] { 2, 0 }).get(10000);
+      throw new AssertionError("Request is sent to a closed server");
+    } catch (Exception e) {
+      // Connections to the closed server are dropped.
+    }
+
+    fixture.startServer(port, responder);
+    assertThat(requestor.request("echo", new Object[] { 3, 0 }).get(10000)).isEqualTo(3);
+  }
+
+  @Test
+  public void testRequestTimeout() throws Exception {
+    SocketIpcServer server = startServer();
+    AsyncSocketTransceiver transceiver = fixture.createTransceiver(TestService.class, server);
+    transceiver.setRequestTimeout(100);
+    IpcRequestor requestor = fixture.getRequestor(TestService.class, transceiver);
+    try {
+      requestor.request("echo", new Object[] { 1, 5000 }).get(10000);
+      throw new AssertionError("Request is not timed out");
+    } catch (TimeoutException e) {
+      assertThat(e.getMessage()).contains("100 ms");
+    }
+    assertThat(requestor.request("echo", new Object[] { 2, 0 }).get(10000)).isEqualTo(2);
+  }
+
+  private SocketIpcServer startServer() {
+    return fixture.startServer(new AsyncResponder(TestService.class, new TestServiceImpl()));
+  }
+}
@@ -0,0 +1,93 @@
+/**
+ * Copyright 2014 Thomas Feng
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import static org.fest.assertions.Assertions.assertThat;
+
+import org.apache.avro.AvroRuntimeException;
+import org.apache.avro.ipc.IpcRequestor;
+import org.apache.avro.ipc.IpcRequestor.ResponseIterator;
+import org.junit.Rule;
+import org.junit.Test;
+
+import me.tfeng.play.avro.AsyncResponder;
+import me.tfeng.play.avro.SocketIpcServer;
+import test.TestService;
+
+/**
+ * @author Thomas Feng (huining.feng@gmail.com)
+ */
+public class TestStreamingResponse {
+
+  @Rule
+  public final IpcFixture fixture = new IpcFixture();
+
+  @Test
+  public void testClose() throws Exception {
+    IpcRequestor requestor = fixture.getHttpRequestor(TestService.class);
+    ResponseIterator<Integer> iterator =
+        requestor.<Integer>requestStreaming("range", new Object[] { 1000000 }).get(10000);
+    for (int i = 0; i < 10; i++) {
+      assertThat(iterator.next()).isEqualTo(i);
+    }
+    iterator.close();
+    assertThat(iterator.hasNext()).isFalse();
+    assertThat(requestor.request("echo", new Object[] { 1, 0 }).get(10000)).isEqualTo(1);
+  }
+
+  @Test
+  public void testNonArrayMessage() throws Exception {
+    IpcRequestor requestor = fixture.getHttpRequestor(TestService.class);
+    try {
+      requestor.requestStreaming("echo", new Object[] { 1, 0 });
+      throw new AssertionError("Non-array response is streamed");
+    } catch (AvroRuntimeException e) {
+      assertThat(e.getMessage()).contains("does not return an array");
+    }
+  }
+
+  @Test
+  public void testStreamingOverHttp() throws Exception {
+    // The response spans many chunks of the streaming chunk size.
+    IpcRequestor requestor = fixture.getHttpRequestor(TestService.class);
+    assertRange(requestor, 100000);
+    assertRange(requestor, 0);
+  }
+
+  @Test
+  public void testStreamingOverSocket() throws Exception {
+    // Socket transports read the whole response before it is iterated.
+    SocketIpcServer server =
+        fixture.startServer(new AsyncResponder(TestService.class, new TestServiceImpl()));
+    IpcRequestor requestor = fixture.getRequestor(TestService.class, server);
+    assertRange(requestor, 100000);
+    assertRange(requestor, 0);
+  }
+
+  private void assertRange(IpcRequestor requestor, int count) throws Exception {
+    try (ResponseIterator<Integer> iterator =
+        requestor.<Integer>requestStreaming("range", new Object[] { count }).get(10000)) {
+      int expected = 0;
+      while (iterator.hasNext()) {
+        assertThat(iterator.next()).isEqualTo(expected++);
+      }
+      assertThat(expected).isEqualTo(count);
+    }
+  }
+}
@@ -0,0 +1,98 @@
+/**
+ * Copyright 2014 Thomas Feng
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import static org.fest.assertions.Assertions.assertThat;
+
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import org.apache.avro.ipc.IpcRequestor;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import me.tfeng.play.avro.AsyncResponder;
+import me.tfeng.play.avro.SocketIpcServer;
+import me.tfeng.play.avro.tracing.InMemorySpanSink;
+import me.tfeng.play.avro.tracing.Span;
+import me.tfeng.play.avro.tracing.Span.Kind;
+import me.tfeng.play.avro.tracing.TracingPlugin;
+import test.TestNestedService;
+
+/**
+ * @author Thomas Feng (huining.feng@gmail.com)
+ */
+public class TestTracing {
+
+  @Rule
+  public final IpcFixture fixture = new IpcFixture();
+
+  private IpcRequestor requestor;
+
+  private final InMemorySpanSink sink = new InMemorySpanSink(100);
+
+  @Before
+  public void beforeTest() {
+    TestNestedServiceImpl impl = new TestNestedServiceImpl();
+    AsyncResponder responder = new AsyncResponder(TestNestedService.class, impl);
+    responder.addRPCPlugin(new TracingPlugin("test.TestNestedService", sink));
+    SocketIpcServer server = fixture.startServer(responder);
+    requestor = fixture.getRequestor(TestNestedService.class, server);
+    requestor.addRPCPlugin(new TracingPlugin("test.TestNestedService", sink));
+    impl.setRequestor(requestor);
+  }
+
+  @Test
+  public void testNestedCallsJoinTrace() throws Exception {
+    assertThat(requestor.request("call", new Object[] { 2 }).get(10000)).isEqualTo(2);
+
+    List<Span> spans = sink.getSpans();
+    assertThat(spans).hasSize(6);
+    assertThat(spans.stream().map(Span::getTraceId).distinct().count()).isEqualTo(1);
+    Map<Long, Span> spansById =
+        spans.stream().collect(Collectors.toMap(Span::getSpanId, Function.identity()));
+
+    // Each server span is the child of a client span, and each client span except the first is
+    // the child of the server span that made the call.
+    List<Span> roots = spans.stream().filter(span -> span.getParentSpanId() == null)
+        .collect(Collectors.toList());
+    assertThat(roots).hasSize(1);
+    assertThat(roots.get(0).getKind()).isEqualTo(Kind.CLIENT);
+    for (Span span : spans) {
+      if (span.getParentSpanId() != null) {
+        Span parent = spansById.get(span.getParentSpanId());
+        assertThat(parent).isNotNull();
+        assertThat(parent.getKind()).isNotEqualTo(span.getKind());
+      }
+    }
+  }
+
+  @Test
+  public void testTraceIsScopedToCall() throws Exception {
+    requestor.request("call", new Object[] { 1 }).get(10000);
+    requestor.request("call", new Object[] { 1 }).get(10000);
+
+    List<Span> spans = sink.getSpans();
+    assertThat(spans).hasSize(8);
+    assertThat(spans.stream().map(Span::getTraceId).distinct().count()).isEqualTo(2);
+  }
+}
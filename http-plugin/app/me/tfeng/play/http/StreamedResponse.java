@@ -0,0 +1,55 @@
+/**
+ * Copyright 2014 Thomas Feng
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.tfeng.play.http;
+
+import java.io.InputStream;
+
+import com.ning.http.client.FluentCaseInsensitiveStringsMap;
+
+/**
+ * @author Thomas Feng (huining.feng@gmail.com)
+ */
+public class StreamedResponse {
+
+  private final InputStream body;
+
+  private final FluentCaseInsensitiveStringsMap headers;
+
+  private final int status;
+
+  public StreamedResponse(int status, FluentCaseInsensitiveStringsMap headers, InputStream body) {
+    this.status = status;
+    this.headers = headers;
+    this.body = body;
+  }
+
+  public InputStream getBody() {
+    return body;
+  }
+
+  public String getHeader(String name) {
+    return headers.getFirstValue(name);
+  }
+
+  public int getStatus() {
+    return status;
+  }
+}
@@ -0,0 +1,179 @@
+/**
+ * Copyright 2014 Thomas Feng
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package me.tfeng.play.http;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import com.ning.http.client.AsyncHandler;
+import com.ning.http.client.FluentCaseInsensitiveStringsMap;
+import com.ning.http.client.HttpResponseBodyPart;
+import com.ning.http.client.HttpResponseHeaders;
+import com.ning.http.client.HttpResponseStatus;
+
+import play.libs.F.Promise;
+
+/**
+ * @author Thomas Feng (huining.feng@gmail.com)
+ */
+public class StreamingAsyncHandler implements AsyncHandler<Void> {
+
+  private class BodyInputStream extends InputStream {
+
+    private byte[] current = new byte[0];
+
+    private int position;
+
+    @Override
+    public int available() {
+      return current.length - position;
+    }
+
+    @Override
+    public void close() {
+      closed = true;
+      parts.clear();
+    }
+
+    @Override
+    public int read() throws IOException {
+      if (!ensureAvailable()) {
+        return -1;
+      }
+      return current[position++] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+      if (len == 0) {
+        return 0;
+      }
+      if (!ensureAvailable()) {
+        return -1;
+      }
+      int length = Math.min(len, current.length - position);
+      System.arraycopy(current, position, b, off, length);
+      position += length;
+      return length;
+    }
+
+    private boolean ensureAvailable() throws IOException {
+      while (position == current.length) {
+        if (current == END) {
+          if (error != null) {
+            throw new IOException("Unable to read response body", error);
+          }
+          return false;
+        }
+        try {
+          current = parts.take();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          throw new IOException("Interrupted while reading response body", e);
+        }
+        position = 0;
+      }
+      return true;
+    }
+  }
+
+  private static final byte[] END = new byte[0];
+
+  private final BodyInputStream body = new BodyInputStream();
+
+  private volatile boolean closed;
+
+  private volatile Throwable error;
+
+  private final int maxBufferedParts;
+
+  private final BlockingQueue<byte[]> parts = new LinkedBlockingQueue<>();
+
+  private final scala.concurrent.Promise<StreamedResponse> promise =
+      scala.concurrent.Promise$.MODULE$.apply();
+
+  private int status;
+
+  public StreamingAsyncHandler(int maxBufferedParts) {
+    this.maxBufferedParts = maxBufferedParts;
+  }
+
+  public Promise<StreamedResponse> getResponse() {
+    return Promise.wrap(promise.future());
+  }
+
+  @Override
+  public STATE onBodyPartReceived(HttpResponseBodyPart bodyPart) throws Exception {
+    byte[] bytes = bodyPart.getBodyPartBytes();
+    if (bytes.length == 0) {
+      return STATE.CONTINUE;
+    }
+    if (closed) {
+      return STATE.ABORT;
+    }
+    // This runs on the I/O thread, which must never wait for the reader. A reader that falls
+    // behind by more than maxBufferedParts parts fails the stream instead.
+    if (parts.size() >= maxBufferedParts) {
+      error = new IOException("Reader fell behind by more than " + maxBufferedParts
+          + " body parts");
+      parts.add(END);
+      return STATE.ABORT;
+    }
+    parts.add(bytes);
+    return STATE.CONTINUE;
+  }
+
+  @Override
+  public Void onCompleted() throws Exception {
+    if (!promise.isCompleted()) {
+      promise.success(
+          new StreamedResponse(status, new FluentCaseInsensitiveStringsMap(), body));
+    }
+    parts.add(END);
+    return null;
+  }
+
+  @Override
+  public STATE onHeadersReceived(HttpResponseHeaders headers) throws Exception {
+    promise.success(new StreamedResponse(status, headers.getHeaders(), body));
+    return STATE.CONTINUE;
+  }
+
+  @Override
+  public STATE onStatusReceived(HttpResponseStatus responseStatus) throws Exception {
+    status = responseStatus.getStatusCode();
+    return STATE.CONTINUE;
+  }
+
+  @Override
+  public void onThrowable(Throwable t) {
+    if (promise.isCompleted()) {
+      if (error == null) {
+        error = t;
+      }
+      parts.add(END);
+    } else {
+      promise.failure(t);
+    }
+  }
+}
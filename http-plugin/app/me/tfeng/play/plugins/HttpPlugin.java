@@ -29,10 +29,13 @@ import org.springframework.beans.factory.annotation.Value;
 import com.ning.http.client.AsyncCompletionHandler;
 import com.ning.http.client.AsyncHttpClient;
 import com.ning.http.client.AsyncHttpClient.BoundRequestBuilder;
+import com.ning.http.client.AsyncHttpClientConfig;
 import com.ning.http.client.AsyncHttpClientConfigBean;
 import com.ning.http.client.Response;
 
 import me.tfeng.play.http.RequestPreparer;
+import me.tfeng.play.http.StreamedResponse;
+import me.tfeng.play.http.StreamingAsyncHandler;
 import play.Application;
 import play.Logger;
 import play.Logger.ALogger;
@@ -66,12 +69,20 @@ public class HttpPlugin extends AbstractPlugin {
   @Value("${http-plugin.connection-timeout-ms:60000}")
   private int connectionTimeoutMs;
 
+  @Value("${http-plugin.max-buffered-body-parts:1024}")
+  private int maxBufferedBodyParts;
+
   @Value("${http-plugin.max-total-connections:200}")
   private int maxTotalConnections;
 
   @Value("${http-plugin.request-timeout-ms:10000}")
   private int requestTimeoutInMs;
 
+  private AsyncHttpClient streamingAsyncHttpClient;
+
+  @Value("${http-plugin.streaming-request-timeout-ms:600000}")
+  private int streamingRequestTimeoutInMs;
+
   public HttpPlugin(Application application) {
     super(application);
   }
@@ -96,9 +107,23 @@ public class HttpPlugin extends AbstractPlugin {
             + "ignoring explicit properties");
       }
       asyncHttpClient = new AsyncHttpClient(asyncHttpClientConfig);
+      // The request timeout covers the whole body, so streams get a client with a longer one.
+      streamingAsyncHttpClient = new AsyncHttpClient(
+          new AsyncHttpClientConfig.Builder(asyncHttpClientConfig)
+              .setRequestTimeoutInMs(streamingRequestTimeoutInMs)
+              .build());
     } else {
       LOG.info("Async http client is provided through Spring wiring; ignoring configuration");
+      streamingAsyncHttpClient = asyncHttpClient;
+    }
+  }
+
+  @Override
+  public void onStop() {
+    if (streamingAsyncHttpClient != null && streamingAsyncHttpClient != asyncHttpClient) {
+      streamingAsyncHttpClient.close();
     }
+    super.onStop();
   }
 
   public Promise<WSResponse> postRequest(URL url, String contentType, byte[] body)
@@ -130,4 +155,18 @@ public class HttpPlugin extends AbstractPlugin {
     });
     return Promise.wrap(scalaPromise.future());
   }
+
+  public Promise<StreamedResponse> postRequestStreaming(URL url, String contentType, byte[] body,
+      RequestPreparer postRequestPreparer) throws IOException {
+    BoundRequestBuilder builder = streamingAsyncHttpClient.preparePost(url.toString())
+        .setHeader("Content-Type", contentType)
+        .setContentLength(body.length)
+        .setBody(body);
+    if (postRequestPreparer != null) {
+      postRequestPreparer.prepare(builder, contentType, url);
+    }
+    StreamingAsyncHandler handler = new StreamingAsyncHandler(maxBufferedBodyParts);
+    builder.execute(handler);
+    return handler.getResponse();
+  }
 }